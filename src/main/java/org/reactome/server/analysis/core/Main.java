@@ -17,6 +17,7 @@ import org.reactome.server.graph.service.GeneralService;
 import org.reactome.server.graph.service.InteractionsService;
 import org.reactome.server.graph.utils.ReactomeGraphCore;
 
+import java.io.IOException;
 import java.util.Set;
 
 /**
@@ -39,6 +40,7 @@ public class Main {
                         , new FlaggedOption("password", JSAP.STRING_PARSER, "neo4jj", JSAP.REQUIRED, 'k', "password", "The neo4j password")
                         , new FlaggedOption("output", JSAP.STRING_PARSER, JSAP.NO_DEFAULT, JSAP.REQUIRED, 'o', "output", "The file where the results are written to")
                         , new QualifiedSwitch("test", JSAP.BOOLEAN_PARSER, null, JSAP.NOT_REQUIRED, 't', "test", "Test main species")
+                        , new QualifiedSwitch("index", JSAP.BOOLEAN_PARSER, null, JSAP.NOT_REQUIRED, 'x', "index", "Stores the identifiers in memory mapped index files next to the output")
                         , new QualifiedSwitch("verbose", JSAP.BOOLEAN_PARSER, null, JSAP.NOT_REQUIRED, 'v', "verbose", "Requests verbose output")
                 }
         );
@@ -81,6 +83,14 @@ public class Main {
                 entitiesBuilder.getEntitiesContainer(),
                 entitiesBuilder.getEntitiesMap(),
                 interactorsBuilder.getInteractorsMap());
+        if (config.getBoolean("index")) {
+            try {
+                container.createIdentifiersIndexes(fileName);
+            } catch (IOException e) {
+                System.err.println("The identifiers index could not be created: " + e.getMessage());
+                System.exit(1);
+            }
+        }
         AnalysisDataUtils.kryoSerialisation(container, fileName);
         Long end = System.currentTimeMillis();
 
@@ -101,7 +111,7 @@ public class Main {
         EntitiesContainer entitiesContainer = entitiesBuilder.getEntitiesContainer();
         IdentifiersMap<InteractorNode> interactorsMap = interactorsBuilder.getInteractorsMap();
 
-        for (EntityNode physicalEntityNode : entitiesContainer.getAllNodes()) {
+        for (EntityNode physicalEntityNode : entitiesContainer.nodes()) {
             MainIdentifier mainIdentifier = physicalEntityNode.getIdentifier();
             if (mainIdentifier != null) {
                 for (Long pathwayId : physicalEntityNode.getPathwayIds()) {
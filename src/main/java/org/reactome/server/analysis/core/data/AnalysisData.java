@@ -1,6 +1,7 @@
 package org.reactome.server.analysis.core.data;
 
 import org.reactome.server.analysis.core.model.*;
+import org.reactome.server.analysis.core.result.utils.Tokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Scope;
@@ -16,8 +17,10 @@ import java.util.Map;
  * <p/>
  * *** IMPORTANT ***
  * Please note that every time that getHierarchiesData method is called, it retrieves a
- * clone of the HierarchiesData contained in DataContainer so the changes in it doesn't
- * happen to other instances of HierarchiesData
+ * new instance of HierarchiesData so the changes in it doesn't happen to other instances
+ * of HierarchiesData. By default the pathway hierarchies are shared and the analysis result
+ * is kept in an overlay. When overlay is set to false, a clone of the hierarchies (taken from
+ * the HierarchiesDataContainer pool) is retrieved instead
  * <p/>
  * *** NOTE ****
  * AnalysisData is the object to be used in the code, PLEASE avoid using the DataContainer
@@ -34,6 +37,10 @@ public class AnalysisData {
 
     private static DataContainer container = null;
 
+    private static boolean overlay = true;
+
+    private static int parallelResolutionThreshold = 1000;
+
     private IntermediateDataLoader intermediateDataLoader = null;
 
     private DataContainer getContainer() {
@@ -47,6 +54,36 @@ public class AnalysisData {
         return container;
     }
 
+    /**
+     * Waits for the content file to be loaded (see setFileName), including the sections that are deserialised in
+     * the background. When a section cannot be loaded, the container is discarded
+     *
+     * @return true if the content has been loaded or false if it could not be loaded
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean waitForContainer() throws InterruptedException {
+        DataContainer aux;
+        synchronized (LOADER_SEMAPHORE) {
+            while (container == null && intermediateDataLoader != null && intermediateDataLoader.isAlive()) {
+                LOADER_SEMAPHORE.wait(1000);
+            }
+            aux = container;
+        }
+        if (aux == null) return false;
+        try {
+            aux.waitForSections();
+            return true;
+        } catch (IllegalStateException e) {
+            //waitForSections restores the interrupted status when the wait (not the loading) is interrupted
+            if (Thread.interrupted()) throw new InterruptedException(e.getMessage());
+            logger.error("The content file could not be loaded", e);
+            synchronized (LOADER_SEMAPHORE) {
+                if (container == aux) container = null;
+            }
+            return false;
+        }
+    }
+
     /**
      * Returns the object containing the database information
      * 
@@ -83,6 +120,20 @@ public class AnalysisData {
         return getContainer().getInteractorsMap();
     }
 
+    /**
+     * Returns a new HierarchiesData object to keep the result of an analysis
+     *
+     * @return a new HierarchiesData object to keep the result of an analysis
+     */
+    public HierarchiesData getHierarchiesData() {
+        if (overlay) {
+            return this.getContainer().getHierarchiesData();
+        }
+        HierarchiesData data = HierarchiesDataContainer.take();
+        if (data != null) data.setIdentifierDictionary(this.getContainer().getIdentifierDictionary());
+        return data;
+    }
+
     public Map<SpeciesNode, PathwayHierarchy> getPathwayHierarchies() {
         return this.getContainer().getHierarchiesData().getPathwayHierarchies();
     }
@@ -102,11 +153,68 @@ public class AnalysisData {
         }
     }
 
+    /**
+     * Sets whether the pathway hierarchies are shared between analysis (overlay) or cloned per analysis.
+     * Please note this has to be set before the content file is loaded
+     *
+     * @param overlay true (default) to share the pathway hierarchies between analysis
+     */
+    @SuppressWarnings("unused")
+    public void setOverlay(boolean overlay) {
+        AnalysisData.overlay = overlay;
+    }
+
+    /**
+     * Sets the maximum number of cloned hierarchies kept in the pool (only used when overlay is false)
+     *
+     * @param poolSize the maximum number of cloned hierarchies kept in the pool
+     */
+    @SuppressWarnings("unused")
+    public void setPoolSize(int poolSize) {
+        HierarchiesDataContainer.setPoolSize(poolSize);
+    }
+
+    /**
+     * Sets the minimum number of hit pathways for the result statistics to be calculated in parallel
+     *
+     * @param parallelThreshold minimum number of hit pathways (0 to always calculate them sequentially)
+     */
+    @SuppressWarnings("unused")
+    public void setParallelStatisticsThreshold(int parallelThreshold) {
+        HierarchiesData.setParallelThreshold(parallelThreshold);
+    }
+
+    /**
+     * Sets whether the hits are aggregated up the pathway hierarchies once per analysis (default) or added
+     * to every ancestor of a hit pathway each time an identifier is processed
+     *
+     * @param bottomUp true (default) to aggregate the hits once per analysis
+     */
+    @SuppressWarnings("unused")
+    public void setBottomUpPropagation(boolean bottomUp) {
+        HierarchiesData.setBottomUpPropagation(bottomUp);
+    }
+
+    /**
+     * Sets the minimum number of submitted identifiers for them to be resolved in parallel
+     *
+     * @param parallelResolutionThreshold minimum number of identifiers (0 to always resolve them sequentially)
+     */
+    @SuppressWarnings("unused")
+    public void setParallelResolutionThreshold(int parallelResolutionThreshold) {
+        AnalysisData.parallelResolutionThreshold = parallelResolutionThreshold;
+    }
+
+    public int getParallelResolutionThreshold() {
+        return parallelResolutionThreshold;
+    }
+
     public void interrupt(){
         if(intermediateDataLoader!=null && intermediateDataLoader.isAlive()){
             intermediateDataLoader.interrupt();
         }
-        HierarchiesDataProducer.interruptProducer();
+        if (!overlay) HierarchiesDataProducer.interruptProducer();
+        HierarchiesDataContainer.clear();
         container = null;
         System.gc();
     }
@@ -125,8 +233,10 @@ public class AnalysisData {
             synchronized (LOADER_SEMAPHORE) {
                 try {
                     container = AnalysisDataUtils.getDataContainer(fileName);
+                    Tokenizer.setDatabaseVersion(container.getDatabaseInfo().getVersion());
                     //Note: HierarchiesDataProducer.getHierarchiesData is also sync with LOADER_SEMAPHORE
-                    HierarchiesDataProducer.initializeProducer(container);
+                    //The pool of cloned hierarchies is only needed when they are not shared between analysis
+                    if (!overlay) HierarchiesDataProducer.initializeProducer(container);
                 } catch (InterruptedException e) {
                     logger.warn("The thread has been interrupted");
                 } catch (Exception e){
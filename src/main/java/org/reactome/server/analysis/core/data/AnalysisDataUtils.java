@@ -1,22 +1,17 @@
 package org.reactome.server.analysis.core.data;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
-import com.esotericsoftware.kryo.serializers.FieldSerializer;
-import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
-import com.googlecode.concurrenttrees.radix.node.util.AtomicReferenceArrayListAdapter;
-import org.objenesis.strategy.StdInstantiatorStrategy;
 import org.reactome.server.analysis.core.Main;
 import org.reactome.server.analysis.core.model.*;
 import org.reactome.server.analysis.core.util.FormatUtils;
+import org.reactome.server.analysis.core.util.KryoPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.OutputStream;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 
 /**
@@ -25,28 +20,44 @@ import java.io.OutputStream;
 public class AnalysisDataUtils {
     private static Logger logger = LoggerFactory.getLogger("analysisDataLogger");
 
+    //Data files split in sections that are memory mapped and deserialised in the background:
+    //[MAGIC][VERSION][#sections][offset, length per section] followed by the database info, hierarchies and entities
+    private static final int SECTIONS_MAGIC = 0x52444353; //"RDCS"
+    private static final int SECTIONS_VERSION = 2;
+    private static final int CROSS_LINKED_VERSION = 2; //From this version the orthologies cross links are in the file
+    private static final int INFO = 0;
+    private static final int HIERARCHIES = 1;
+    private static final int ENTITIES = 2;
+    private static final int SECTIONS = 3;
+    private static final int HEADER = 3 * Integer.BYTES + SECTIONS * 2 * Long.BYTES;
+
     static DataContainer getDataContainer(String fileName) throws Exception {
         String clazz = DataContainer.class.getSimpleName();
         logger.info(String.format("%s: Loading %s file...", clazz, fileName));
         long start = System.currentTimeMillis();
-        DataContainer container = (DataContainer) AnalysisDataUtils.read(fileName);
-        if(container == null){
-            throw new Exception(String.format("%s: It was not possible to load %s", clazz, fileName));
+        if (getMagic(fileName) != SECTIONS_MAGIC) {
+            //Files written before the sections (and the compact serialisation) are not supported anymore
+            throw new Exception(String.format("%s: %s is not a sectioned data file. Please regenerate the data file with this version of the analysis core", clazz, fileName));
         }
-        container.initialize();
-        long end = System.currentTimeMillis();
-        logger.info(String.format("Loading %s file >> Done (%s)", DataContainer.class.getSimpleName(), FormatUtils.getTimeFormatted(end - start)));
+        DataContainer container = readSections(fileName);
+        logger.info(String.format("%s: Sections of %s mapped, loading them in the background", clazz, fileName));
+        Thread monitor = new Thread(() -> {
+            try {
+                container.waitForSections();
+                long end = System.currentTimeMillis();
+                logger.info(String.format("Loading %s file >> Done (%s)", clazz, FormatUtils.getTimeFormatted(end - start)));
+            } catch (IllegalStateException e) {
+                logger.error(String.format("%s: It was not possible to load %s", clazz, fileName), e);
+            }
+        }, "DataContainerLoaderMonitor");
+        monitor.setDaemon(true);
+        monitor.start();
         return container;
     }
 
     public static <T> T kryoCopy(T object) {
         long start = System.currentTimeMillis();
-        Kryo kryo = new Kryo();
-        kryo.setRegistrationRequired(false);
-        kryo.setReferences(true);
-        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
-        kryo.register(AtomicReferenceArrayListAdapter.class, new FieldSerializer<>(kryo, AtomicReferenceArrayListAdapter.class));
-        T rtn = kryo.copy(object);
+        T rtn = KryoPool.copy(object);
         long end = System.currentTimeMillis();
         logger.trace(String.format("%s cloned in %d ms", object.getClass().getSimpleName(), end - start));
         return rtn;
@@ -55,47 +66,69 @@ public class AnalysisDataUtils {
     public static void kryoSerialisation(DataContainer container, String fileName) {
         String msgPrefix = String.format("\rStoring %s data into file %s", container.getClass().getSimpleName(), fileName);
         if (Main.VERBOSE) System.out.print(msgPrefix + " >> Please wait...");
-        try {
-            Kryo kryo = new Kryo();
-            kryo.setRegistrationRequired(false);
-            kryo.setReferences(true);
-            kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
-            // Kryo's default registration for AtomicReferenceArrayListAdapter is CollectionSerializer(it implements List).
-            // CollectionSerializer doesn't know how to create a valid new instance of AtomicReferenceArrayListAdapter.
-            // Overrides Kryo's default registration and tells it to use FieldSerializer instead of CollectionSerializer.
-            // FieldSerializer uses reflection to read/write all fields of the class.
-            kryo.register(AtomicReferenceArrayListAdapter.class, new FieldSerializer<>(kryo, AtomicReferenceArrayListAdapter.class));
-            OutputStream file = new FileOutputStream(fileName);
-            Output output = new Output(file);
-            kryo.writeClassAndObject(output, container);
-            output.close();
-            container.initialize(); //At the end the data structure remains the same
+        try (FileOutputStream fos = new FileOutputStream(fileName);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.write(new byte[HEADER]);
+            //Stored cross linked so it is not done every time the file is loaded
+            container.getEntitiesContainer().setOrthologiesCrossLinks();
+            long[][] sections = new long[SECTIONS][];
+            sections[INFO] = writeSection(fos, out, container.getDatabaseInfo());
+            sections[HIERARCHIES] = writeSection(fos, out, container.getHierarchiesSection());
+            sections[ENTITIES] = writeSection(fos, out, container.getEntitiesSection());
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(SECTIONS_MAGIC).putInt(SECTIONS_VERSION).putInt(SECTIONS);
+            for (long[] section : sections) header.putLong(section[0]).putLong(section[1]);
+            header.flip();
+            fos.getChannel().write(header, 0);
+            container.initialize(true); //At the end the data structure remains the same
             if (Main.VERBOSE) System.out.println(msgPrefix + " >> Done.");
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             if (Main.VERBOSE) System.err.println(msgPrefix + " >> An error has occurred: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
-    private static Object read(String fileName) {
-        Object rtn = null;
-        Input input = null;
-        try {
-            System.gc();
-            Kryo kryo = new Kryo();
-            kryo.setRegistrationRequired(false);
-            kryo.setReferences(true);
-            kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
-            kryo.register(AtomicReferenceArrayListAdapter.class, new FieldSerializer<>(kryo, AtomicReferenceArrayListAdapter.class));
-            input = new Input(new FileInputStream(fileName));
-            rtn = kryo.readClassAndObject(input);
-        } catch (RuntimeException ex){
-            logger.error(String.format("There was a problem loading the intermediate data file. %s", ex.getMessage()));
+    private static long[] writeSection(FileOutputStream fos, DataOutputStream out, Object section) throws IOException {
+        out.flush();
+        long start = fos.getChannel().position();
+        KryoPool.write(out, section);
+        out.flush();
+        return new long[]{start, fos.getChannel().position() - start};
+    }
+
+    private static int getMagic(String fileName) throws FileNotFoundException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            return in.readInt();
         } catch (FileNotFoundException e) {
-            logger.error(String.format("%s has not been found. Please check the settings", fileName));
-        } finally {
-            if(input!=null) input.close();;
+            throw new FileNotFoundException(String.format("%s has not been found. Please check the settings", fileName));
+        } catch (IOException e) {
+            return 0; //Too short to be a data file
         }
-        return rtn;
+    }
+
+    /*
+     * Each section is mapped on its own (so they can be bigger than 2GB altogether). Note the sections are still
+     * deserialised into the Java heap, only the raw bytes (in the page cache) are shared with other processes
+     */
+    private static DataContainer readSections(String fileName) throws IOException {
+        ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+        int version;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            version = header.getInt(Integer.BYTES);
+            if (version > SECTIONS_VERSION || header.getInt(2 * Integer.BYTES) != SECTIONS) {
+                throw new IOException(String.format("%s is not a valid data file", fileName));
+            }
+            for (int i = 0; i < SECTIONS; i++) {
+                int pos = 3 * Integer.BYTES + i * 2 * Long.BYTES;
+                sections[i] = channel.map(FileChannel.MapMode.READ_ONLY, header.getLong(pos), header.getLong(pos + Long.BYTES));
+            }
+        }
+        DatabaseInfo databaseInfo = (DatabaseInfo) KryoPool.read(sections[INFO]);
+        return new DataContainer(databaseInfo,
+                () -> (Object[]) KryoPool.read(sections[HIERARCHIES]),
+                () -> (Object[]) KryoPool.read(sections[ENTITIES]),
+                fileName,
+                version >= CROSS_LINKED_VERSION);
     }
 }
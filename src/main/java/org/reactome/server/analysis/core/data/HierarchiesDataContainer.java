@@ -4,75 +4,214 @@ import org.reactome.server.analysis.core.model.HierarchiesData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
+ * Lock-free bounded pool of cloned HierarchiesData objects. The pool is only used when the pathway
+ * hierarchies are NOT shared between analysis (see AnalysisData.setOverlay).
+ * <p>
+ * The pool keeps track of the hits, misses and the time taken to clone a new HierarchiesData object
+ * (refill). Together with the observed request rate, these are used by the HierarchiesDataProducer to
+ * decide how many objects have to be kept in the pool (see getTargetSize)
+ *
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
  */
 public abstract class HierarchiesDataContainer {
 
     private static Logger logger = LoggerFactory.getLogger("analysisDataLogger");
 
-    private static final Object READER_SEMAPHORE = new Object();
+    static final int DEFAULT_POOL_SIZE = 5;
+
+    //Smoothing factor for the exponentially weighted moving average of the request rate
+    private static final double RATE_ALPHA = 0.2;
+
+    private static volatile int poolSize = DEFAULT_POOL_SIZE;
 
-    static int POOL_SIZE = 5;
-    private static HierarchiesData[] pool = new HierarchiesData[POOL_SIZE];
+    private static final Queue<HierarchiesData> pool = new ConcurrentLinkedQueue<>();
+    //Kept separately because ConcurrentLinkedQueue.size is not a constant-time operation
+    private static final AtomicInteger size = new AtomicInteger(0);
 
-    private static int read_pos = 0;
-    private static int write_pos = 0;
+    //Metrics
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder refills = new LongAdder();
+    private static final LongAdder refillTime = new LongAdder();
+    private static final AtomicLong maxRefillTime = new AtomicLong(0L);
+    //Objects cloned by the requests when the pool is empty (not counted as refills)
+    private static final LongAdder onDemand = new LongAdder();
+    private static final LongAdder onDemandTime = new LongAdder();
 
+    //Request rate (requests per second) stored as the raw bits of a double to be updated with CAS
+    private static final AtomicLong requestRate = new AtomicLong(Double.doubleToLongBits(0d));
+    private static final AtomicLong lastRequest = new AtomicLong(0L);
+
+    /**
+     * Adds a HierarchiesData object to the pool if there is room for it
+     *
+     * @param data the HierarchiesData object to be added to the pool
+     * @return true if the object has been added to the pool, false otherwise
+     */
     public static boolean put(HierarchiesData data) {
-        synchronized (READER_SEMAPHORE) {
-            if (!isFull()) {
-                pool[write_pos] = data;
-                write_pos = next(write_pos);
-            }
-            logger.trace(String.format("%s written in the pool", HierarchiesData.class.getSimpleName()));
-            READER_SEMAPHORE.notify();
-        }
+        if (data == null) return false;
+        int current;
+        do {
+            current = size.get();
+            if (current >= poolSize) return false;
+        } while (!size.compareAndSet(current, current + 1));
+        pool.offer(data);
+        logger.trace(String.format("%s written in the pool", HierarchiesData.class.getSimpleName()));
         return true;
     }
 
+    /**
+     * Takes a HierarchiesData object from the pool. If the pool is empty, the object is created on demand
+     *
+     * @return a HierarchiesData object ready to be used in an analysis
+     */
     public static HierarchiesData take() {
-        if (isEmpty()) {
-            return HierarchiesDataProducer.getHierarchiesData();
-        }
-
-        HierarchiesData data;
-        synchronized (READER_SEMAPHORE) {
-            data = pool[read_pos];
-            pool[read_pos] = null; //Garbage collector purposes
-            read_pos = next(read_pos);
+        registerRequest();
+        HierarchiesData data = pool.poll();
+        if (data != null) {
+            size.decrementAndGet();
+            hits.increment();
             logger.trace(String.format("%s taken from the pool", HierarchiesData.class.getSimpleName()));
+        } else {
+            misses.increment();
+            logger.trace(String.format("%s pool is empty, creating it on demand", HierarchiesData.class.getSimpleName()));
+            data = HierarchiesDataProducer.getHierarchiesData();
         }
-
+        HierarchiesDataProducer.signalProducer();
         return data;
     }
 
-    public static synchronized boolean isEmpty() {
-        return size() == 0;
+    /**
+     * Discards all the objects in the pool (e.g. when the data container is released, so its clones can be
+     * garbage collected)
+     */
+    public static void clear() {
+        while (pool.poll() != null) {
+            size.decrementAndGet();
+        }
+        logger.trace(String.format("%s pool cleared", HierarchiesData.class.getSimpleName()));
     }
 
-    static synchronized boolean isFull() {
-        return size() == POOL_SIZE;
+    public static boolean isEmpty() {
+        return size() == 0;
     }
 
-    private static int next(int pos) {
-        return (pos + 1) % POOL_SIZE;
+    public static int size() {
+        return size.get();
     }
 
-    private static int prev(int pos) {
-        return pos == 0 ? POOL_SIZE - 1 : pos - 1;
+    public static int getPoolSize() {
+        return poolSize;
     }
 
-    private static synchronized int size() {
-        if (read_pos == write_pos) {
-            if (pool[prev(write_pos)] == null) {
-                return 0;
-            }
-            return POOL_SIZE;
-        }
-        if (read_pos < write_pos) {
-            return write_pos - read_pos;
+    /**
+     * Resizes the pool. When the new size is smaller than the current number of objects in the pool,
+     * the exceeding ones are discarded
+     *
+     * @param poolSize the maximum number of objects to be kept in the pool
+     */
+    public static void setPoolSize(int poolSize) {
+        HierarchiesDataContainer.poolSize = Math.max(0, poolSize);
+        while (size.get() > HierarchiesDataContainer.poolSize && pool.poll() != null) {
+            size.decrementAndGet();
         }
-        return POOL_SIZE - (read_pos - write_pos);
+        logger.info(String.format("%s pool size set to %d", HierarchiesData.class.getSimpleName(), HierarchiesDataContainer.poolSize));
+    }
+
+    /**
+     * Returns the number of objects that should be ready in the pool to cope with the observed request
+     * rate: the number of requests expected while a new object is being produced plus one spare
+     *
+     * @return the number of objects that should be ready in the pool
+     */
+    static int getTargetSize() {
+        if (poolSize == 0) return 0;
+        double expected = getRequestRate() * (getAverageRefillTime() / 1000d);
+        int target = (int) Math.ceil(expected) + 1;
+        return Math.max(1, Math.min(poolSize, target));
+    }
+
+    static void registerRefill(long millis) {
+        refills.increment();
+        refillTime.add(millis);
+        maxRefillTime.accumulateAndGet(millis, Math::max);
+    }
+
+    static void registerOnDemand(long millis) {
+        onDemand.increment();
+        onDemandTime.add(millis);
+    }
+
+    private static void registerRequest() {
+        long now = System.nanoTime();
+        long last = lastRequest.getAndSet(now);
+        if (last == 0L) return;
+        double elapsed = Math.max(now - last, 1L) / (double) TimeUnit.SECONDS.toNanos(1);
+        double instant = 1d / elapsed;
+        long prev, next;
+        do {
+            prev = requestRate.get();
+            double rate = Double.longBitsToDouble(prev);
+            next = Double.doubleToLongBits(rate == 0d ? instant : RATE_ALPHA * instant + (1 - RATE_ALPHA) * rate);
+        } while (!requestRate.compareAndSet(prev, next));
+    }
+
+    /**
+     * Returns the request rate (requests per second) smoothed over the last requests. The rate decays
+     * when there are no requests, so the pool is not kept unnecessarily big when the server is idle
+     *
+     * @return the observed request rate in requests per second
+     */
+    public static double getRequestRate() {
+        double rate = Double.longBitsToDouble(requestRate.get());
+        long last = lastRequest.get();
+        if (last == 0L || rate == 0d) return 0d;
+        double idle = (System.nanoTime() - last) / (double) TimeUnit.SECONDS.toNanos(1);
+        //No request in longer than the average interval means the rate is lower than the recorded one
+        return idle > 1d / rate ? Math.min(rate, 1d / idle) : rate;
+    }
+
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    public static long getRefills() {
+        return refills.sum();
+    }
+
+    public static double getAverageRefillTime() {
+        long n = refills.sum();
+        return n == 0 ? 0d : refillTime.sum() / (double) n;
+    }
+
+    public static long getMaxRefillTime() {
+        return maxRefillTime.get();
+    }
+
+    public static long getOnDemand() {
+        return onDemand.sum();
+    }
+
+    public static double getAverageOnDemandTime() {
+        long n = onDemand.sum();
+        return n == 0 ? 0d : onDemandTime.sum() / (double) n;
+    }
+
+    public static String getStatistics() {
+        return String.format("size: %d/%d, target: %d, hits: %d, misses: %d, refills: %d (avg: %.1f ms, max: %d ms), on demand: %d (avg: %.1f ms), rate: %.2f req/s",
+                size(), poolSize, getTargetSize(), getHits(), getMisses(), getRefills(), getAverageRefillTime(), getMaxRefillTime(),
+                getOnDemand(), getAverageOnDemandTime(), getRequestRate());
     }
 }
@@ -1,11 +1,13 @@
 package org.reactome.server.analysis.core.data;
 
-import org.reactome.server.analysis.core.methods.EnrichmentAnalysis;
 import org.reactome.server.analysis.core.model.DataContainer;
 import org.reactome.server.analysis.core.model.HierarchiesData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
  */
@@ -14,17 +16,21 @@ public class HierarchiesDataProducer {
 
     private static Logger logger = LoggerFactory.getLogger("analysisDataLogger");
 
+    //Maximum time the background producer sleeps before re-evaluating the target size of the pool
+    private static final long IDLE_CHECK_MILLIS = 1000L;
+
     private static HierarchiesDataProducer producer;
-    private static Thread backgroundProducer;
+    private static volatile Thread backgroundProducer;
 
     private DataContainer data;
 
     private HierarchiesDataProducer(DataContainer data) {
         this.data = data;
-        if (HierarchiesDataContainer.POOL_SIZE > 1) {
+        if (HierarchiesDataContainer.getPoolSize() > 0) {
             logger.trace("Initialising the background producer...");
             backgroundProducer = new Thread(new BackgroundProducer());
             backgroundProducer.setName(BackgroundProducer.class.getSimpleName());
+            backgroundProducer.setDaemon(true);
             backgroundProducer.start();
             logger.info("Hierarchy content background producer initialised");
         } else {
@@ -46,15 +52,24 @@ public class HierarchiesDataProducer {
         } else {
             logger.warn("The producer has not previously been initialized.");
         }
+        HierarchiesDataContainer.clear();
+    }
+
+    /**
+     * Wakes up the background producer so it checks whether the pool needs to be refilled
+     */
+    static void signalProducer() {
+        Thread thread = backgroundProducer;
+        if (thread != null) LockSupport.unpark(thread);
     }
 
     static HierarchiesData getHierarchiesData() {
         if (producer != null) {
-            return producer.data.getHierarchiesData();
+            return producer.produceOnDemand();
         }
         synchronized (AnalysisData.LOADER_SEMAPHORE) {
             if (producer != null) {
-                return producer.data.getHierarchiesData();
+                return producer.produceOnDemand();
             } else {
                 logger.error("This class needs to be initialised with the data structure to perform the analysis with");
                 return null;
@@ -62,34 +77,46 @@ public class HierarchiesDataProducer {
         }
     }
 
+    //Only the objects produced by the background producer are counted as refills (used to size the pool)
+    private HierarchiesData produce() {
+        long start = System.currentTimeMillis();
+        HierarchiesData rtn = this.data.getHierarchiesDataCopy();
+        HierarchiesDataContainer.registerRefill(System.currentTimeMillis() - start);
+        return rtn;
+    }
+
+    private HierarchiesData produceOnDemand() {
+        long start = System.currentTimeMillis();
+        HierarchiesData rtn = this.data.getHierarchiesDataCopy();
+        HierarchiesDataContainer.registerOnDemand(System.currentTimeMillis() - start);
+        return rtn;
+    }
+
     /**
-     * When running just checks when the server is lazy ( EnrichmentAnalysis.ANALYSIS_COUNT equals zero ) and produces
-     * the data needed to the analysis until the container pool is full (NOTE: It stops as soon as there are analysis
-     * running).
+     * Keeps the pool filled up to the target size calculated by the HierarchiesDataContainer based on the observed
+     * request rate and the time it takes to produce a new object. It is woken up every time an object is taken from
+     * the pool and otherwise it periodically re-evaluates the target size.
      * <p>
-     * IMPORTANT: When there are more analysis running than the size of the POOL of objects, new analysis while produce
-     * the data object by demand
+     * IMPORTANT: When there are more analysis running than objects in the pool, new analysis will produce the data
+     * object on demand
      */
     class BackgroundProducer implements Runnable {
-        private boolean active = true;
 
         @Override
         public void run() {
             logger.info(Thread.currentThread().getName() + " thread started");
-            while (active) {
-                try {
-                    synchronized (EnrichmentAnalysis.ANALYSIS_SEMAPHORE) {
-                        if (HierarchiesDataContainer.isFull() || EnrichmentAnalysis.getAnalysisCount() > 0) {
-                            EnrichmentAnalysis.ANALYSIS_SEMAPHORE.wait();
-                        }
-                    }
-                    HierarchiesDataContainer.put(data.getHierarchiesData());
-                } catch (InterruptedException e) {
-                    active = false;
-                    data = null; System.gc();
-                    logger.info(Thread.currentThread().getName() + ": data has been cleaned up and thread interrupted");
+            while (!Thread.currentThread().isInterrupted()) {
+                while (HierarchiesDataContainer.size() < HierarchiesDataContainer.getTargetSize()) {
+                    if (!HierarchiesDataContainer.put(produce())) break;
+                    if (Thread.currentThread().isInterrupted()) break;
                 }
+                logger.trace(HierarchiesDataContainer.getStatistics());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(IDLE_CHECK_MILLIS));
             }
+            //An object produced while being interrupted might have been added after the pool was cleared
+            HierarchiesDataContainer.clear();
+            data = null; System.gc();
+            logger.info(Thread.currentThread().getName() + ": data has been cleaned up and thread interrupted");
         }
     }
 }
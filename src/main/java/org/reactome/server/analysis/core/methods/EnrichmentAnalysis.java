@@ -2,7 +2,6 @@ package org.reactome.server.analysis.core.methods;
 
 
 import org.reactome.server.analysis.core.data.AnalysisData;
-import org.reactome.server.analysis.core.data.HierarchiesDataContainer;
 import org.reactome.server.analysis.core.model.*;
 import org.reactome.server.analysis.core.model.identifier.Identifier;
 import org.reactome.server.analysis.core.model.identifier.InteractorIdentifier;
@@ -16,10 +15,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 /**
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
@@ -32,6 +30,9 @@ public class EnrichmentAnalysis {
     public static final Object ANALYSIS_SEMAPHORE = new Object();
     private static long ANALYSIS_COUNT = 0L;
 
+    //Dedicated pool for the identifiers resolution so it does not compete with other tasks in the common pool
+    private static final ForkJoinPool RESOLUTION_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
     private final AnalysisData analysisData;
 
     @Autowired
@@ -42,7 +43,7 @@ public class EnrichmentAnalysis {
     @SuppressWarnings("WeakerAccess")
     public HierarchiesData overRepresentation(Set<AnalysisIdentifier> identifiers, SpeciesNode speciesNode, boolean includeInteractors) {
         this.increaseCounter();
-        HierarchiesData hierarchiesData = HierarchiesDataContainer.take();
+        HierarchiesData hierarchiesData = analysisData.getHierarchiesData();
         this.analyse(hierarchiesData, identifiers, speciesNode, includeInteractors);
         this.decreaseCounter();
         return hierarchiesData;
@@ -62,58 +63,35 @@ public class EnrichmentAnalysis {
 
 	long start = System.currentTimeMillis();
 
-        Set<MainIdentifier> newSample = new HashSet<>();
-        for (AnalysisIdentifier identifier : identifiers) {
-            MapSet<Resource, EntityNode> resourceEntities = entitiesMap.get(identifier);
-            boolean found = false;
-            for (Resource resource : resourceEntities.keySet()) {
-                Identifier otherIdentifier = new OtherIdentifier(resource, identifier);
-                for (EntityNode node : resourceEntities.getElements(resource)) {
-                    if (speciesNode != null) node = node.getProjection(speciesNode);
-                    if (node == null) continue;
-                    found = true;
-                    MainIdentifier mainAux = node.getIdentifier();
-                    if (mainAux != null) {
-                        //Create a copy of the main identifier and add to it the expression values of the analysed one
-                        AnalysisIdentifier ai = new AnalysisIdentifier(mainAux.getValue().getId(), otherIdentifier.getValue().getExp());
-                        MainIdentifier mainIdentifier = new MainIdentifier(mainAux.getResource(), ai);
-                        newSample.add(mainIdentifier);
-                        for (Long pathwayId : node.getPathwayIds()) {
-                            Set<PathwayNode> pNodes = hierarchies.getPathwayLocation().getElements(pathwayId);
-                            if (pNodes == null) continue;
-                            for (PathwayNode pNode : pNodes) {
-                                Set<AnalysisReaction> reactions = node.getReactions(pathwayId);
-                                pNode.process(otherIdentifier, mainIdentifier, reactions);
-                            }
-                        }
-                    }
-                }
+        //Resolution phase: the identifiers are resolved against the (immutable) identifiers maps and entities graph
+        List<AnalysisIdentifier> sample = new ArrayList<>(identifiers);
+        List<Resolution> resolutions;
+        int threshold = analysisData.getParallelResolutionThreshold();
+        if (threshold > 0 && sample.size() >= threshold) {
+            resolutions = RESOLUTION_POOL.submit(() -> sample.parallelStream()
+                    .map(identifier -> resolve(hierarchies, entitiesMap, interactorsMap, identifier, speciesNode, includeInteractors))
+                    .collect(Collectors.toList())
+            ).join();
+        } else {
+            resolutions = new ArrayList<>(sample.size());
+            for (AnalysisIdentifier identifier : sample) {
+                resolutions.add(resolve(hierarchies, entitiesMap, interactorsMap, identifier, speciesNode, includeInteractors));
             }
+        }
 
-            if (includeInteractors) {
-                MapSet<Resource, InteractorNode> interactors = interactorsMap.get(identifier);
-                for (Resource resource : interactors.keySet()) {
-                    //Note: It goes only once
-                    for (InteractorNode interactor : interactors.getElements(resource)) {
-                        InteractorIdentifier interactorIdentifier = new InteractorIdentifier(identifier, interactor.getAccession());
-                        MapSet<Long, AnalysisReaction> pathwayReactions = interactor.getPathwayReactions();
-                        for (Long pathwayId : pathwayReactions.keySet()) {
-                            for (MainIdentifier mainIdentifier : interactor.getInteractsWith(pathwayId)) {
-                                found = true;
-                                newSample.add(new MainIdentifier(mainIdentifier.getResource(), interactor.getAccession(), identifier.getExp()));
-                                Set<AnalysisReaction> reactions = pathwayReactions.getElements(pathwayId);
-                                Set<PathwayNode> pNodes = hierarchies.getPathwayLocation().getElements(pathwayId);
-                                for (PathwayNode pNode : pNodes) {
-                                    pNode.processInteractor(interactorIdentifier, mainIdentifier, reactions);
-                                }
-                            }
-                        }
-                    }
+        //Merge phase: the hits are applied to the pathway data in the original order
+        Set<MainIdentifier> newSample = new HashSet<>();
+        for (Resolution resolution : resolutions) {
+            newSample.addAll(resolution.sample);
+            for (Hit hit : resolution.hits) {
+                if (hit.interactorIdentifier != null) {
+                    hierarchies.processInteractor(hit.pNode, hit.interactorIdentifier, hit.mainIdentifier, hit.reactions);
+                } else {
+                    hierarchies.process(hit.pNode, hit.identifier, hit.mainIdentifier, hit.reactions);
                 }
             }
-
-            if (!found) {
-                hierarchies.addNotFound(identifier);
+            if (!resolution.found) {
+                hierarchies.addNotFound(resolution.identifier);
             }
         }
         //IMPORTANT: For the statistics the sample is the projection we find (newSample) plus the not found identifiers
@@ -133,11 +111,63 @@ public class EnrichmentAnalysis {
 
     }
 
+    //Only reads the shared data structures so it can be executed in parallel for different identifiers
+    private Resolution resolve(HierarchiesData hierarchies, IdentifiersMap<EntityNode> entitiesMap, IdentifiersMap<InteractorNode> interactorsMap,
+                               AnalysisIdentifier identifier, SpeciesNode speciesNode, boolean includeInteractors) {
+        Resolution resolution = new Resolution(identifier);
+        MapSet<Resource, EntityNode> resourceEntities = entitiesMap.get(identifier);
+        for (Resource resource : resourceEntities.keySet()) {
+            Identifier otherIdentifier = new OtherIdentifier(resource, identifier);
+            for (EntityNode node : resourceEntities.getElements(resource)) {
+                if (speciesNode != null) node = node.getProjection(speciesNode);
+                if (node == null) continue;
+                resolution.found = true;
+                MainIdentifier mainAux = node.getIdentifier();
+                if (mainAux != null) {
+                    //Create a copy of the main identifier and add to it the expression values of the analysed one
+                    AnalysisIdentifier ai = new AnalysisIdentifier(mainAux.getValue().getId(), otherIdentifier.getValue().getExpValues());
+                    MainIdentifier mainIdentifier = new MainIdentifier(mainAux.getResource(), ai);
+                    resolution.sample.add(mainIdentifier);
+                    for (Long pathwayId : node.getPathwayIds()) {
+                        Set<PathwayNode> pNodes = hierarchies.getPathwayLocation().getElements(pathwayId);
+                        if (pNodes == null) continue;
+                        for (PathwayNode pNode : pNodes) {
+                            Set<AnalysisReaction> reactions = node.getReactions(pathwayId);
+                            resolution.hits.add(new Hit(pNode, otherIdentifier, mainIdentifier, reactions));
+                        }
+                    }
+                }
+            }
+        }
+
+        if (includeInteractors) {
+            MapSet<Resource, InteractorNode> interactors = interactorsMap.get(identifier);
+            for (Resource resource : interactors.keySet()) {
+                //Note: It goes only once
+                for (InteractorNode interactor : interactors.getElements(resource)) {
+                    InteractorIdentifier interactorIdentifier = new InteractorIdentifier(identifier, interactor.getAccession());
+                    MapSet<Long, AnalysisReaction> pathwayReactions = interactor.getPathwayReactions();
+                    for (Long pathwayId : pathwayReactions.keySet()) {
+                        for (MainIdentifier mainIdentifier : interactor.getInteractsWith(pathwayId)) {
+                            resolution.found = true;
+                            resolution.sample.add(new MainIdentifier(mainIdentifier.getResource(), interactor.getAccession(), identifier.getExpValues()));
+                            Set<AnalysisReaction> reactions = pathwayReactions.getElements(pathwayId);
+                            Set<PathwayNode> pNodes = hierarchies.getPathwayLocation().getElements(pathwayId);
+                            if (pNodes == null) continue;
+                            for (PathwayNode pNode : pNodes) {
+                                resolution.hits.add(new Hit(pNode, interactorIdentifier, mainIdentifier, reactions));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return resolution;
+    }
+
     private void decreaseCounter() {
         synchronized (ANALYSIS_SEMAPHORE) {
-            if (--ANALYSIS_COUNT == 0) {
-                ANALYSIS_SEMAPHORE.notify(); //Only one background producer should be using this semaphore
-            }
+            --ANALYSIS_COUNT;
         }
     }
 
@@ -146,4 +176,41 @@ public class EnrichmentAnalysis {
             ++ANALYSIS_COUNT;
         }
     }
+
+    //The result of resolving one of the submitted identifiers
+    private static class Resolution {
+        final AnalysisIdentifier identifier;
+        final List<MainIdentifier> sample = new ArrayList<>();
+        final List<Hit> hits = new ArrayList<>();
+        boolean found = false;
+
+        Resolution(AnalysisIdentifier identifier) {
+            this.identifier = identifier;
+        }
+    }
+
+    //A pathway to be processed with the identifier (or interactor) that hit it
+    private static class Hit {
+        final PathwayNode pNode;
+        final Identifier identifier;
+        final InteractorIdentifier interactorIdentifier;
+        final MainIdentifier mainIdentifier;
+        final Set<AnalysisReaction> reactions;
+
+        Hit(PathwayNode pNode, Identifier identifier, MainIdentifier mainIdentifier, Set<AnalysisReaction> reactions) {
+            this(pNode, identifier, null, mainIdentifier, reactions);
+        }
+
+        Hit(PathwayNode pNode, InteractorIdentifier interactorIdentifier, MainIdentifier mainIdentifier, Set<AnalysisReaction> reactions) {
+            this(pNode, null, interactorIdentifier, mainIdentifier, reactions);
+        }
+
+        private Hit(PathwayNode pNode, Identifier identifier, InteractorIdentifier interactorIdentifier, MainIdentifier mainIdentifier, Set<AnalysisReaction> reactions) {
+            this.pNode = pNode;
+            this.identifier = identifier;
+            this.interactorIdentifier = interactorIdentifier;
+            this.mainIdentifier = mainIdentifier;
+            this.reactions = reactions;
+        }
+    }
 }
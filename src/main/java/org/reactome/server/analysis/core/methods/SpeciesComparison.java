@@ -3,14 +3,23 @@ package org.reactome.server.analysis.core.methods;
 import org.reactome.server.analysis.core.data.AnalysisData;
 import org.reactome.server.analysis.core.exception.SpeciesNotFoundException;
 import org.reactome.server.analysis.core.model.*;
+import org.reactome.server.analysis.core.result.AnalysisStoredResult;
+import org.reactome.server.analysis.core.result.exception.ResourceGoneException;
+import org.reactome.server.analysis.core.result.exception.ResourceNotFoundException;
+import org.reactome.server.analysis.core.result.model.AnalysisSummary;
+import org.reactome.server.analysis.core.result.utils.TokenUtils;
+import org.reactome.server.analysis.core.result.utils.Tokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
@@ -24,6 +33,9 @@ public class SpeciesComparison {
     private final AnalysisData analysisData;
     private final EnrichmentAnalysis enrichmentAnalysis;
 
+    //Comparisons being analysed (by faked MD5), so concurrent requests for the same one wait for it instead of repeating it
+    private final ConcurrentMap<String, CompletableFuture<AnalysisStoredResult>> running = new ConcurrentHashMap<>();
+
     @Autowired
     public SpeciesComparison(AnalysisData analysisData, EnrichmentAnalysis enrichmentAnalysis) {
         this.analysisData = analysisData;
@@ -35,19 +47,110 @@ public class SpeciesComparison {
         return enrichmentAnalysis.overRepresentation(ud.getIdentifiers(), speciesTo, false);
     }
 
-    public UserData getSyntheticUserData(SpeciesNode species) throws SpeciesNotFoundException {
-        EntitiesContainer graph = analysisData.getPhysicalEntityContainer();
+    /**
+     * Returns the stored result of the comparison between the two species, analysing them when needed. The result is
+     * associated to the token of the faked MD5 (see TokenUtils.getFakedMD5) so, once stored, it is served from there
+     *
+     * @param tokenUtils  where the results are stored
+     * @param speciesFrom the species whose identifiers are analysed
+     * @param speciesTo   the species the identifiers are projected to
+     * @param server      the server name kept in the summary of the result
+     * @return the stored result of the species comparison
+     */
+    public AnalysisStoredResult getSpeciesComparisonResult(TokenUtils tokenUtils, SpeciesNode speciesFrom, SpeciesNode speciesTo, String server) throws SpeciesNotFoundException {
+        return getSpeciesComparisonResult(tokenUtils, getSyntheticUserData(speciesFrom), speciesFrom, speciesTo, server);
+    }
+
+    private AnalysisStoredResult getSpeciesComparisonResult(TokenUtils tokenUtils, UserData ud, SpeciesNode speciesFrom, SpeciesNode speciesTo, String server) {
+        String md5 = tokenUtils.getFakedMD5(speciesFrom, speciesTo);
+        CompletableFuture<AnalysisStoredResult> comparison = new CompletableFuture<>();
+        CompletableFuture<AnalysisStoredResult> current = running.putIfAbsent(md5, comparison);
+        if (current != null) {
+            try {
+                //The results are modified when filtered, so every caller gets its own copy
+                return new AnalysisStoredResult(current.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            AnalysisStoredResult result = getOrAnalyse(tokenUtils, ud, md5, speciesFrom, speciesTo, server);
+            comparison.complete(result);
+            return new AnalysisStoredResult(result);
+        } catch (RuntimeException e) {
+            comparison.completeExceptionally(e);
+            throw e;
+        } finally {
+            running.remove(md5, comparison);
+        }
+    }
 
+    private AnalysisStoredResult getOrAnalyse(TokenUtils tokenUtils, UserData ud, String md5, SpeciesNode speciesFrom, SpeciesNode speciesTo, String server) {
+        AtomicBoolean created = new AtomicBoolean(false);
+        String token = Tokenizer.getOrCreateToken(md5, false, false, created);
+        if (!created.get()) {
+            try {
+                return tokenUtils.getFromToken(token);
+            } catch (ResourceNotFoundException | ResourceGoneException e) {
+                //The result is not available anymore (it has expired), so it is analysed again
+            }
+        }
+        HierarchiesData hierarchiesData = enrichmentAnalysis.overRepresentation(ud.getIdentifiers(), speciesTo, false);
+        AnalysisStoredResult result = new AnalysisStoredResult(ud, hierarchiesData);
+        result.setHitPathways(hierarchiesData.getUniqueHitPathways(speciesTo));
+        result.setSummary(new AnalysisSummary(token, false, false, speciesFrom.getName(), AnalysisType.SPECIES_COMPARISON, speciesFrom.getSpeciesID(), server, true));
+        tokenUtils.saveResult(result);
+        return result;
+    }
+
+    /**
+     * Compares in the background every species with the given one (human when null) once the content file has
+     * been loaded and stores the results, so the species comparisons are served from their token without
+     * performing the analysis per request. The results that are already stored are not analysed again
+     *
+     * @param tokenUtils where the results are stored
+     * @param speciesTo  the species the rest are compared with (human when null)
+     * @param server     the server name kept in the summary of the results
+     */
+    public void precompute(TokenUtils tokenUtils, SpeciesNode speciesTo, String server) {
+        Thread precomputer = new Thread(() -> {
+            try {
+                if (!analysisData.waitForContainer()) return;
+                long start = System.currentTimeMillis();
+                SpeciesNode target = speciesTo != null ? speciesTo : SpeciesNodeFactory.getHumanNode();
+                int n = 0;
+                for (SpeciesNode species : analysisData.getPathwayHierarchies().keySet()) {
+                    if (species.equals(target)) continue;
+                    getSpeciesComparisonResult(tokenUtils, getSpeciesUserData(species), species, target, server);
+                    n++;
+                }
+                long end = System.currentTimeMillis();
+                logger.info(String.format("%d species comparisons with %s available in %d ms", n, target.getName(), end - start));
+            } catch (InterruptedException e) {
+                logger.warn("The species comparisons precomputation has been interrupted");
+            } catch (RuntimeException e) {
+                logger.error("The species comparisons could not be precomputed", e);
+            }
+        }, "SpeciesComparisonPrecomputer");
+        precomputer.setDaemon(true);
+        precomputer.start();
+    }
+
+    public UserData getSyntheticUserData(SpeciesNode species) throws SpeciesNotFoundException {
         if(!analysisData.getPathwayHierarchies().keySet().contains(species)){
             throw new SpeciesNotFoundException(species.getSpeciesID() + " does not correspond to any of the current species");
         }
+        return getSpeciesUserData(species);
+    }
+
+    //Only the nodes of the species are traversed (see EntitiesContainer.getSpeciesNodes)
+    private UserData getSpeciesUserData(SpeciesNode species) {
+        EntitiesContainer graph = analysisData.getPhysicalEntityContainer();
 
         Set<AnalysisIdentifier> speciesToIdentifiers = new HashSet<>();
-        for (EntityNode node : graph.getAllNodes()) {
-            if(species.equals(node.getSpecies())){
-                if(node.getIdentifier()!=null){
-                    speciesToIdentifiers.add(node.getIdentifier().getValue());
-                }
+        for (EntityNode node : graph.getSpeciesNodes(species)) {
+            if(node.getIdentifier()!=null){
+                speciesToIdentifiers.add(node.getIdentifier().getValue());
             }
         }
         return new UserData(new LinkedList<>(), speciesToIdentifiers, null);
@@ -58,12 +161,10 @@ public class SpeciesComparison {
         EntitiesContainer graph = analysisData.getPhysicalEntityContainer();
 
         Set<AnalysisIdentifier> speciesToIdentifiers = new HashSet<>();
-        for (EntityNode node : graph.getAllNodes()) {
-            if(speciesFrom.equals(node.getSpecies())){
-                EntityNode eq = node.getProjection(speciesTo);
-                if(eq!=null && node.getIdentifier()!=null){
-                    speciesToIdentifiers.add(node.getIdentifier().getValue());
-                }
+        for (EntityNode node : graph.getSpeciesNodes(speciesFrom)) {
+            EntityNode eq = node.getProjection(speciesTo);
+            if(eq!=null && node.getIdentifier()!=null){
+                speciesToIdentifiers.add(node.getIdentifier().getValue());
             }
         }
         return new UserData(new LinkedList<>(), speciesToIdentifiers, null);
@@ -1,42 +1,57 @@
 package org.reactome.server.analysis.core.model;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import org.reactome.server.analysis.core.result.external.ExternalIdentifier;
+import org.reactome.server.analysis.core.util.ExpressionValues;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
  */
-public class AnalysisIdentifier implements Comparable<AnalysisIdentifier> {
+public class AnalysisIdentifier implements Comparable<AnalysisIdentifier>, KryoSerializable {
 
     private String id;
-    private List<Double> exp;
+    //Missing values are NaN. The array is shared (NOT copied) between the identifier and its mappings
+    private double[] exp;
 
     public AnalysisIdentifier(AnalysisIdentifier aux){
-        this(aux.getId());
-        for (Double ev : aux.getExp()) {
-            this.add(ev);
-        }
+        this(aux.getId(), aux.exp);
     }
 
     public AnalysisIdentifier(String id) {
+        this(id, ExpressionValues.EMPTY);
+    }
+
+    public AnalysisIdentifier(String id, double[] exp) {
         this.id = id;
-        this.exp = new LinkedList<>();
+        this.exp = exp == null ? ExpressionValues.EMPTY : exp;
     }
 
     public AnalysisIdentifier(String id, List<Double> exp) {
-        this.id = id;
-        this.exp = exp;
+        this(id, ExpressionValues.toArray(exp));
     }
 
     public AnalysisIdentifier(ExternalIdentifier identifier){
-        this.id = identifier.getId();
-        this.exp = identifier.getExp();
+        this(identifier.getId(), identifier.getExp());
     }
 
+    //Please note the array is replaced (it might be shared) so it is better to create the identifier with all its values
     public boolean add(Double value){
-        return this.exp.add(value);
+        double[] aux = Arrays.copyOf(this.exp, this.exp.length + 1);
+        aux[this.exp.length] = value == null ? Double.NaN : value;
+        this.exp = aux;
+        return true;
+    }
+
+    //Only used by the LegacySerializers (the identifier has to be created before its content is read)
+    void set(String id, double[] exp) {
+        this.id = id;
+        this.exp = exp == null ? ExpressionValues.EMPTY : exp;
     }
 
     public String getId() {
@@ -44,6 +59,10 @@ public class AnalysisIdentifier implements Comparable<AnalysisIdentifier> {
     }
 
     public List<Double> getExp() {
+        return ExpressionValues.asList(exp);
+    }
+
+    public double[] getExpValues() {
         return exp;
     }
 
@@ -74,4 +93,18 @@ public class AnalysisIdentifier implements Comparable<AnalysisIdentifier> {
     public int compareTo(AnalysisIdentifier o) {
         return this.id.compareTo(o.id);
     }
-}
\ No newline at end of file
+
+    @Override
+    public void write(Kryo kryo, Output output) {
+        output.writeString(id);
+        //The expression values are shared between identifiers, so they are written as a reference
+        kryo.writeObjectOrNull(output, exp, double[].class);
+    }
+
+    @Override
+    public void read(Kryo kryo, Input input) {
+        this.id = input.readString();
+        double[] exp = kryo.readObjectOrNull(input, double[].class);
+        this.exp = exp == null || exp.length == 0 ? ExpressionValues.EMPTY : exp;
+    }
+}
@@ -1,12 +1,17 @@
 package org.reactome.server.analysis.core.model;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import org.neo4j.driver.Value;
 import org.reactome.server.analysis.core.result.external.ExternalAnalysisReaction;
+import org.reactome.server.analysis.core.util.KryoPool;
 
 /**
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
  */
-public class AnalysisReaction {
+public class AnalysisReaction implements KryoSerializable {
     private Long dbId;
     private String stId;
 
@@ -63,4 +68,16 @@ public class AnalysisReaction {
     public static AnalysisReaction build(Value value) {
         return new AnalysisReaction(value.get("dbId").asLong(), value.get("stId").asString());
     }
+
+    @Override
+    public void write(Kryo kryo, Output output) {
+        KryoPool.writeLong(output, dbId);
+        output.writeString(stId);
+    }
+
+    @Override
+    public void read(Kryo kryo, Input input) {
+        this.dbId = KryoPool.readLong(input);
+        this.stId = input.readString();
+    }
 }
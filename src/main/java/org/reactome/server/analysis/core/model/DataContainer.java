@@ -3,8 +3,13 @@ package org.reactome.server.analysis.core.model;
 import org.reactome.server.analysis.core.data.AnalysisDataUtils;
 import org.reactome.server.analysis.core.util.MapSet;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Contains the different data structures for the binary data and also provides
@@ -38,6 +43,14 @@ public class DataContainer implements Serializable {
     //A double link graph with the representation of the physical entities
     EntitiesContainer entitiesContainer;
 
+    //Dense ids for the main identifiers and reactions (created when the container is initialised)
+    transient volatile IdentifierDictionary identifierDictionary;
+
+    //Only set when the container is read from a sectioned data file (see AnalysisDataUtils)
+    private transient Future<?> hierarchiesLoader;
+    private transient Future<?> entitiesLoader;
+    private transient Future<?> dictionaryLoader;
+
     public DataContainer(DatabaseInfo databaseInfo,
                          Map<SpeciesNode, PathwayHierarchy> pathwayHierarchies,
                          MapSet<Long, PathwayNode> pathwayLocation,
@@ -52,35 +65,198 @@ public class DataContainer implements Serializable {
         this.interactorsMap = interactorsMap;
     }
 
+    /**
+     * Creates a container whose hierarchies and entities are deserialised in the background (in parallel) from
+     * the sections of a data file. The getters wait only for the section they need, so the container is available
+     * straight away instead of after the whole file has been loaded and initialised
+     *
+     * @param databaseInfo the database information
+     * @param hierarchies  provides the pathway hierarchies and the pathway location map (see getHierarchiesSection)
+     * @param entities     provides the entities container and the entities and interactors maps (see getEntitiesSection)
+     * @param fileName     the data file (used to map the identifiers indexes)
+     * @param crossLinked  whether the orthologies cross links were set before storing the entities
+     */
+    @SuppressWarnings("unchecked")
+    public DataContainer(DatabaseInfo databaseInfo, Callable<Object[]> hierarchies, Callable<Object[]> entities, String fileName, boolean crossLinked) {
+        this.databaseInfo = databaseInfo;
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "DataContainerLoader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.hierarchiesLoader = executor.submit(() -> {
+            Object[] section = hierarchies.call();
+            this.pathwayHierarchies = (Map<SpeciesNode, PathwayHierarchy>) section[0];
+            this.pathwayLocation = (MapSet<Long, PathwayNode>) section[1];
+            return null;
+        });
+        Future<?> entitiesLoader = executor.submit(() -> {
+            Object[] section = entities.call();
+            this.entitiesContainer = (EntitiesContainer) section[0];
+            this.entitiesMap = (IdentifiersMap<EntityNode>) section[1];
+            this.interactorsMap = (IdentifiersMap<InteractorNode>) section[2];
+            mapIdentifiersIndexes(fileName);
+            initializeEntities(crossLinked);
+            return null;
+        });
+        this.entitiesLoader = entitiesLoader;
+        //The dictionary is not needed to analyse (see getHierarchiesData) so the entities are available before it
+        this.dictionaryLoader = executor.submit(() -> {
+            entitiesLoader.get();
+            this.identifierDictionary = new IdentifierDictionary(this.entitiesContainer, this.interactorsMap);
+            return null;
+        });
+        executor.shutdown();
+    }
+
+    private static void waitFor(Future<?> loader) {
+        if (loader == null) return;
+        try {
+            loader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the data file to be loaded", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("The data file could not be loaded", e.getCause());
+        }
+    }
+
+    /**
+     * Waits until the whole content of the container is available
+     */
+    public void waitForSections() {
+        waitFor(hierarchiesLoader);
+        waitFor(entitiesLoader);
+        waitFor(dictionaryLoader);
+    }
+
+    /**
+     * The objects stored together in the hierarchies section of a data file (they share the pathway nodes)
+     *
+     * @return the pathway hierarchies and the pathway location map
+     */
+    public Object[] getHierarchiesSection() {
+        waitFor(hierarchiesLoader);
+        return new Object[]{pathwayHierarchies, pathwayLocation};
+    }
+
+    /**
+     * The objects stored together in the entities section of a data file (they share the entity nodes)
+     *
+     * @return the entities container and the entities and interactors maps
+     */
+    public Object[] getEntitiesSection() {
+        waitFor(entitiesLoader);
+        return new Object[]{entitiesContainer, entitiesMap, interactorsMap};
+    }
+
     public DatabaseInfo getDatabaseInfo() {
         return databaseInfo;
     }
 
+    /**
+     * Returns an analysis-scoped view of the clean version of the hierarchies. The hierarchies are
+     * shared (NOT cloned), the result of the analysis is kept in an overlay only for the hit pathways
+     *
+     * @return an analysis-scoped view of the clean version of the hierarchies
+     */
+    public HierarchiesData getHierarchiesData() {
+        waitFor(hierarchiesLoader);
+        HierarchiesData data = new HierarchiesData(this.pathwayHierarchies, this.pathwayLocation, true);
+        //The shared dictionary is built after the entities are loaded. Until then each analysis interns its own elements
+        IdentifierDictionary dictionary = this.identifierDictionary;
+        data.setIdentifierDictionary(dictionary != null ? dictionary : new IdentifierDictionary());
+        return data;
+    }
+
     /**
      * Returns a clone of the clean version of the hierarchies
      *
      * @return a clone of the clean version of the hierarchies
      */
-    public HierarchiesData getHierarchiesData() {
+    public HierarchiesData getHierarchiesDataCopy() {
         //The object is not kept by itself because it requires more disk space
+        waitFor(hierarchiesLoader);
         HierarchiesData data = new HierarchiesData(this.pathwayHierarchies, this.pathwayLocation);
         return AnalysisDataUtils.kryoCopy(data);
     }
 
+    public IdentifierDictionary getIdentifierDictionary() {
+        waitFor(entitiesLoader);
+        waitFor(dictionaryLoader);
+        return identifierDictionary;
+    }
+
     public EntitiesContainer getEntitiesContainer() {
+        waitFor(entitiesLoader);
         return entitiesContainer;
     }
 
     public IdentifiersMap<EntityNode> getEntitiesMap() {
+        waitFor(entitiesLoader);
         return entitiesMap;
     }
 
     public IdentifiersMap<InteractorNode> getInteractorsMap() {
+        waitFor(entitiesLoader);
         return interactorsMap;
     }
 
+    /**
+     * Moves the identifiers of the entities and interactors maps to memory mapped indexes written
+     * next to the data file (see IdentifiersIndex), so they are not kept in the Java heap
+     *
+     * @param fileName the data file the container is going to be stored in
+     */
+    public void createIdentifiersIndexes(String fileName) throws IOException {
+        Path entitiesFile = getEntitiesIndexFile(fileName);
+        IdentifiersIndex<EntityNode> entitiesIndex = IdentifiersIndex.write(this.entitiesMap, entitiesFile);
+        entitiesIndex.map(entitiesFile);
+        this.entitiesMap = new IdentifiersMap<>(entitiesIndex, this.entitiesMap.getIsoforms());
+
+        Path interactorsFile = getInteractorsIndexFile(fileName);
+        IdentifiersIndex<InteractorNode> interactorsIndex = IdentifiersIndex.write(this.interactorsMap, interactorsFile);
+        interactorsIndex.map(interactorsFile);
+        this.interactorsMap = new IdentifiersMap<>(interactorsIndex, this.interactorsMap.getIsoforms());
+    }
+
+    /**
+     * Memory maps the identifiers indexes (only if the container was stored with them)
+     *
+     * @param fileName the data file the container has been loaded from
+     */
+    public void mapIdentifiersIndexes(String fileName) throws IOException {
+        this.entitiesMap.mapIndex(getEntitiesIndexFile(fileName));
+        this.interactorsMap.mapIndex(getInteractorsIndexFile(fileName));
+    }
+
+    private static Path getEntitiesIndexFile(String fileName) {
+        return Paths.get(fileName + ".entities.idx");
+    }
+
+    private static Path getInteractorsIndexFile(String fileName) {
+        return Paths.get(fileName + ".interactors.idx");
+    }
+
     public void initialize() {
-        this.entitiesContainer.setOrthologiesCrossLinks();
+        initialize(false);
+    }
+
+    /**
+     * Initialises the data structure after loading it from a file
+     *
+     * @param crossLinked true when the orthologies cross links were set before storing the entities (so they
+     *                    do not need to be set again)
+     */
+    public void initialize(boolean crossLinked) {
+        initializeEntities(crossLinked);
+        this.identifierDictionary = new IdentifierDictionary(this.entitiesContainer, this.interactorsMap);
+    }
+
+    private void initializeEntities(boolean crossLinked) {
+        this.entitiesContainer.buildIndex();
+        if (!crossLinked) this.entitiesContainer.setOrthologiesCrossLinks();
     }
 
 }
\ No newline at end of file
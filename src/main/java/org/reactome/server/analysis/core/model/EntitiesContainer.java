@@ -3,15 +3,23 @@ package org.reactome.server.analysis.core.model;
 import org.reactome.server.analysis.core.model.identifier.MainIdentifier;
 import org.reactome.server.analysis.core.util.MapSet;
 
-import java.util.Set;
+import java.util.*;
 
 /**
+ * Contains the physical entities graph nodes indexed by their main identifier.
+ * <p>
+ * The nodes are also kept in arrays (all of them and per species) that are built once the container has been
+ * populated (see buildIndex), so they can be traversed without copying the whole graph every time
+ *
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
  */
 public class EntitiesContainer {
 
     private MapSet<MainIdentifier, EntityNode> nodes;
 
+    //Not serialised (built from the nodes) and discarded every time a node is added
+    private transient volatile Index index;
+
     public EntitiesContainer() {
         this.nodes = new MapSet<>();
     }
@@ -24,6 +32,7 @@ public class EntitiesContainer {
             }
         }
         this.nodes.add(node.getIdentifier(), node);
+        this.index = null;
         return node;
     }
 
@@ -31,14 +40,85 @@ public class EntitiesContainer {
         return nodes.getElements(mainIdentifier);
     }
 
+    /**
+     * Returns a NEW set with all the nodes. Please use nodes() to traverse them without copying
+     *
+     * @return a new set with all the nodes
+     */
     public Set<EntityNode> getAllNodes() {
-        return nodes.values();
+        return new HashSet<>(nodes());
+    }
+
+    /**
+     * Returns a read only view of all the nodes (no copy is made)
+     *
+     * @return a read only view of all the nodes
+     */
+    public List<EntityNode> nodes() {
+        return Collections.unmodifiableList(Arrays.asList(getIndex().all));
+    }
+
+    /**
+     * Returns a read only view of the nodes of the given species (no copy is made)
+     *
+     * @param species the species of the nodes
+     * @return a read only view of the nodes of the species (empty if there are none)
+     */
+    public List<EntityNode> getSpeciesNodes(SpeciesNode species) {
+        EntityNode[] rtn = getIndex().bySpecies.get(species);
+        return rtn == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(rtn));
+    }
+
+    /**
+     * Returns the species of the nodes
+     *
+     * @return a read only set with the species of the nodes
+     */
+    public Set<SpeciesNode> getSpecies() {
+        return getIndex().bySpecies.keySet();
+    }
+
+    /**
+     * Builds the arrays of nodes (all of them and per species). It is built on demand otherwise, but building it
+     * once the container is loaded avoids the first traversal paying for it
+     */
+    public void buildIndex() {
+        getIndex();
+    }
+
+    private Index getIndex() {
+        Index rtn = index;
+        if (rtn == null) {
+            synchronized (this) {
+                rtn = index;
+                if (rtn == null) index = rtn = new Index(nodes.values());
+            }
+        }
+        return rtn;
     }
 
     public void setOrthologiesCrossLinks(){
-        for (EntityNode node : getAllNodes()) {
+        for (EntityNode node : nodes()) {
             node.setOrthologiesCrossLinks();
         }
     }
 
+    private static class Index {
+        private final EntityNode[] all;
+        private final Map<SpeciesNode, EntityNode[]> bySpecies;
+
+        Index(Set<EntityNode> nodes) {
+            this.all = nodes.toArray(new EntityNode[0]);
+            Map<SpeciesNode, List<EntityNode>> aux = new HashMap<>();
+            for (EntityNode node : all) {
+                if (node.getSpecies() != null) {
+                    aux.computeIfAbsent(node.getSpecies(), s -> new ArrayList<>()).add(node);
+                }
+            }
+            Map<SpeciesNode, EntityNode[]> bySpecies = new HashMap<>();
+            aux.forEach((species, list) -> bySpecies.put(species, list.toArray(new EntityNode[0])));
+            this.bySpecies = Collections.unmodifiableMap(bySpecies);
+        }
+    }
+
 }
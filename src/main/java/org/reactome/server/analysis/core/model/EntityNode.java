@@ -1,5 +1,9 @@
 package org.reactome.server.analysis.core.model;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import org.reactome.server.analysis.core.model.identifier.MainIdentifier;
 import org.reactome.server.analysis.core.model.resource.MainResource;
 import org.reactome.server.analysis.core.util.MapSet;
@@ -9,7 +13,7 @@ import java.util.*;
 /**
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
  */
-public class EntityNode {
+public class EntityNode implements KryoSerializable {
 
     private MainIdentifier identifier = null;
     private List<Modification> modifications = null;
@@ -19,6 +23,11 @@ public class EntityNode {
     private Map<SpeciesNode, EntityNode> inferredFrom;
     private Map<SpeciesNode, EntityNode> inferredTo;
 
+    //Projection of the node per species ordinal (see SpeciesNode.getOrdinal). Not serialised: it is built from the
+    //inferred maps when the node is first projected and discarded whenever those change
+    private transient volatile EntityNode[] projections;
+    private static final EntityNode[] NO_PROJECTIONS = new EntityNode[0];
+
     //We DO NOT use PathwayNode here because at some point cloning the hierarchies
     //structure will be needed and keeping this separate will help to maintain the
     //links between both structures easy through the pathway location map
@@ -40,6 +49,7 @@ public class EntityNode {
             this.inferredTo = new HashMap<>();
         }
         this.inferredTo.put(inferredTo.getSpecies(), inferredTo);
+        this.projections = null;
     }
 
     public void addInferredFrom(EntityNode inferredFrom) {
@@ -51,6 +61,7 @@ public class EntityNode {
             this.inferredFrom = new HashMap<>();
         }
         this.inferredFrom.put(inferredFrom.getSpecies(), inferredFrom);
+        this.projections = null;
     }
 
     public void addPathwayReactions(MapSet<Long, AnalysisReaction> pathwayReactions) {
@@ -65,12 +76,24 @@ public class EntityNode {
         if (this.species == null)
             return this; //DO NOT CHANGE THIS AGAIN. If is a SmallMolecule it does NOT have species..
         if (this.species.equals(species)) return this;
-        EntityNode rtn = null;
-        if (inferredFrom != null) {
-            rtn = inferredFrom.get(species);
+        EntityNode[] projections = this.projections;
+        if (projections == null) this.projections = projections = buildProjections();
+        int ordinal = species.getOrdinal();
+        return ordinal < projections.length ? projections[ordinal] : null;
+    }
+
+    //The inferred from take precedence over the inferred to (the same than looking them up in that order)
+    private EntityNode[] buildProjections() {
+        if (inferredFrom == null && inferredTo == null) return NO_PROJECTIONS;
+        int length = 0;
+        for (SpeciesNode s : getInferredTo().keySet()) length = Math.max(length, s.getOrdinal() + 1);
+        for (SpeciesNode s : getInferredFrom().keySet()) length = Math.max(length, s.getOrdinal() + 1);
+        EntityNode[] rtn = new EntityNode[length];
+        for (Map.Entry<SpeciesNode, EntityNode> entry : getInferredTo().entrySet()) {
+            rtn[entry.getKey().getOrdinal()] = entry.getValue();
         }
-        if (rtn == null && inferredTo != null) {
-            rtn = inferredTo.get(species);
+        for (Map.Entry<SpeciesNode, EntityNode> entry : getInferredFrom().entrySet()) {
+            rtn[entry.getKey().getOrdinal()] = entry.getValue();
         }
         return rtn;
     }
@@ -84,12 +107,12 @@ public class EntityNode {
     }
 
     public Map<SpeciesNode, EntityNode> getInferredFrom() {
-        if (inferredFrom == null) return new HashMap<>();
+        if (inferredFrom == null) return Collections.emptyMap();
         return inferredFrom;
     }
 
     public Map<SpeciesNode, EntityNode> getInferredTo() {
-        if (inferredTo == null) return new HashMap<>();
+        if (inferredTo == null) return Collections.emptyMap();
         return inferredTo;
     }
 
@@ -121,17 +144,19 @@ public class EntityNode {
     }
 
     protected void setOrthologiesCrossLinks(){
-        for (SpeciesNode speciesNode : this.getInferredTo().keySet()) {
-            if(this.inferredTo.get(speciesNode).inferredFrom==null){
-                this.inferredTo.get(speciesNode).inferredFrom = new HashMap<>();
+        for (EntityNode node : this.getInferredTo().values()) {
+            if(node.inferredFrom==null){
+                node.inferredFrom = new HashMap<>();
             }
-            this.inferredTo.get(speciesNode).inferredFrom.put(this.species, this);
+            node.inferredFrom.put(this.species, this);
+            node.projections = null;
         }
-        for (SpeciesNode speciesNode : this.getInferredFrom().keySet()) {
-            if(this.inferredFrom.get(speciesNode).inferredTo==null){
-                this.inferredFrom.get(speciesNode).inferredTo = new HashMap<>();
+        for (EntityNode node : this.getInferredFrom().values()) {
+            if(node.inferredTo==null){
+                node.inferredTo = new HashMap<>();
             }
-            this.inferredFrom.get(speciesNode).inferredTo.put(this.species, this);
+            node.inferredTo.put(this.species, this);
+            node.projections = null;
         }
     }
 
@@ -152,4 +177,46 @@ public class EntityNode {
         result = 31 * result + (modifications != null ? modifications.hashCode() : 0);
         return result;
     }
+
+    @Override
+    public void write(Kryo kryo, Output output) {
+        //The fields used by hashCode go first, so they are set when the node is reached again through the orthologies
+        kryo.writeObjectOrNull(output, identifier, MainIdentifier.class);
+        kryo.writeClassAndObject(output, modifications);
+        kryo.writeObjectOrNull(output, species, SpeciesNode.class);
+        writeNodes(kryo, output, inferredFrom);
+        writeNodes(kryo, output, inferredTo);
+        kryo.writeObjectOrNull(output, pathwayReactions, MapSet.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void read(Kryo kryo, Input input) {
+        this.identifier = kryo.readObjectOrNull(input, MainIdentifier.class);
+        this.modifications = (List<Modification>) kryo.readClassAndObject(input);
+        this.species = kryo.readObjectOrNull(input, SpeciesNode.class);
+        this.inferredFrom = readNodes(kryo, input);
+        this.inferredTo = readNodes(kryo, input);
+        this.pathwayReactions = kryo.readObjectOrNull(input, MapSet.class);
+    }
+
+    private static void writeNodes(Kryo kryo, Output output, Map<SpeciesNode, EntityNode> nodes) {
+        output.writeVarInt(nodes == null ? 0 : nodes.size() + 1, true);
+        if (nodes == null) return;
+        for (Map.Entry<SpeciesNode, EntityNode> entry : nodes.entrySet()) {
+            kryo.writeObject(output, entry.getKey());
+            kryo.writeObject(output, entry.getValue());
+        }
+    }
+
+    private static Map<SpeciesNode, EntityNode> readNodes(Kryo kryo, Input input) {
+        int size = input.readVarInt(true);
+        if (size == 0) return null;
+        Map<SpeciesNode, EntityNode> rtn = new HashMap<>();
+        for (int i = 1; i < size; i++) {
+            SpeciesNode species = kryo.readObject(input, SpeciesNode.class);
+            rtn.put(species, kryo.readObject(input, EntityNode.class));
+        }
+        return rtn;
+    }
 }
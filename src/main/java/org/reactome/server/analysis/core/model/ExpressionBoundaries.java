@@ -11,8 +11,8 @@ public class ExpressionBoundaries {
 
     public ExpressionBoundaries(Set<AnalysisIdentifier> identifiers){
         for (AnalysisIdentifier identifier : identifiers) {
-            for (Double exp : identifier.getExp()) {
-                if( exp == null ) continue;
+            for (double exp : identifier.getExpValues()) {
+                if( Double.isNaN(exp) ) continue;
                 if( min == null && max == null ){
                     min = exp;
                     max = exp;
@@ -1,11 +1,23 @@
 package org.reactome.server.analysis.core.model;
 
+import org.reactome.server.analysis.core.model.identifier.Identifier;
+import org.reactome.server.analysis.core.model.identifier.InteractorIdentifier;
+import org.reactome.server.analysis.core.model.identifier.MainIdentifier;
 import org.reactome.server.analysis.core.model.resource.MainResource;
 import org.reactome.server.analysis.core.util.MapSet;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
+ * Keeps the result of an analysis on top of the pathway hierarchies.
+ * <p/>
+ * PLEASE NOTE
+ * When the hierarchies are shared (see DataContainer.getHierarchiesData) they are NEVER modified. Instead, an
+ * analysis-scoped copy of a PathwayNode (with its own PathwayNodeData) is only created for the pathways that
+ * get hit, so only a small overlay is allocated per analysis. When the hierarchies are a private clone of the
+ * original ones, the hits are written straight into the cloned nodes.
+ *
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
  */
 public class HierarchiesData {
@@ -14,6 +26,26 @@ public class HierarchiesData {
     //A map between pathways identifier and their locations in the pathway hierarchy
     private MapSet<Long, PathwayNode> pathwayLocation;
 
+    //When true the hierarchies are shared with other analysis and can NOT be modified
+    private boolean shared = false;
+
+    //Pathway hierarchy node -> node containing the analysis result (same object when the hierarchies are not shared)
+    private Map<PathwayNode, PathwayNode> hitNodes = new IdentityHashMap<>();
+    //The aggregated analysis result per species
+    private Map<SpeciesNode, PathwayNodeData> speciesData = new HashMap<>();
+
+    //Used to count the found elements with primitive counters (see PathwayNodeHits)
+    private IdentifierDictionary dictionary;
+
+    //Dedicated pool for the statistics so they do not compete with other tasks in the common pool
+    private static final ForkJoinPool STATISTICS_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    //Minimum number of hit pathways for the statistics to be calculated in parallel (0 means never)
+    private static int parallelThreshold = 500;
+
+    //When true the hits are only recorded in the pathways where they are found and aggregated up once (see propagateHits)
+    private static boolean bottomUp = true;
+    private boolean propagated = true;
+
     Set<AnalysisIdentifier> notFound = new HashSet<>();
 
     public HierarchiesData(Map<SpeciesNode, PathwayHierarchy> pathwayHierarchies, MapSet<Long, PathwayNode> pathwayLocation) {
@@ -21,10 +53,152 @@ public class HierarchiesData {
         this.pathwayLocation = pathwayLocation;
     }
 
+    public HierarchiesData(Map<SpeciesNode, PathwayHierarchy> pathwayHierarchies, MapSet<Long, PathwayNode> pathwayLocation, boolean shared) {
+        this(pathwayHierarchies, pathwayLocation);
+        this.shared = shared;
+    }
+
+    /**
+     * Sets the dictionary to intern the found elements, so the hit pathways count them with primitive
+     * counters. Ids for elements not contained in the dictionary are kept in the scope of this object
+     *
+     * @param dictionary the dictionary created when the data container was loaded
+     */
+    public void setIdentifierDictionary(IdentifierDictionary dictionary) {
+        this.dictionary = dictionary != null ? dictionary.forAnalysis() : null;
+    }
+
+    /**
+     * Sets the minimum number of hit pathways for the statistics to be calculated in parallel. Below
+     * that number the overhead of splitting the work is higher than the benefit
+     *
+     * @param parallelThreshold minimum number of hit pathways (0 to always calculate them sequentially)
+     */
+    public static void setParallelThreshold(int parallelThreshold) {
+        HierarchiesData.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Sets whether the hits are aggregated up the hierarchy once per analysis (bottom-up) or added to every
+     * ancestor of the hit pathway each time an identifier is processed
+     *
+     * @param bottomUp true (default) to aggregate the hits once per analysis
+     */
+    public static void setBottomUpPropagation(boolean bottomUp) {
+        HierarchiesData.bottomUp = bottomUp;
+    }
+
     public void addNotFound(AnalysisIdentifier identifier) {
         this.notFound.add(identifier);
     }
 
+    public void process(PathwayNode node, Identifier identifier, MainIdentifier mainIdentifier, Set<AnalysisReaction> reactions) {
+        if (bottomUp) {
+            PathwayNodeData data = getOrCreateHitNode(node).getPathwayNodeData();
+            data.addEntity(identifier, mainIdentifier);
+            data.addReactions(mainIdentifier.getResource(), reactions);
+            propagated = false;
+            return;
+        }
+        for (PathwayNode aux = node; aux != null; aux = aux.getParent()) {
+            PathwayNodeData data = getOrCreateHitNode(aux).getPathwayNodeData();
+            data.addEntity(identifier, mainIdentifier);
+            data.addReactions(mainIdentifier.getResource(), reactions);
+            if (aux.getParent() == null) {
+                PathwayNodeData species = getOrCreateSpeciesData(((PathwayRoot) aux).getPathwayHierarchy());
+                species.addEntity(identifier, mainIdentifier);
+                species.addReactions(mainIdentifier.getResource(), reactions);
+            }
+        }
+    }
+
+    public void processInteractor(PathwayNode node, InteractorIdentifier identifier, MainIdentifier mainIdentifier, Set<AnalysisReaction> reactions) {
+        if (reactions == null || reactions.isEmpty()) return;
+        if (bottomUp) {
+            PathwayNodeData data = getOrCreateHitNode(node).getPathwayNodeData();
+            data.addInteractors(mainIdentifier, identifier);
+            data.addReactions(mainIdentifier.getResource(), reactions);
+            propagated = false;
+            return;
+        }
+        for (PathwayNode aux = node; aux != null; aux = aux.getParent()) {
+            PathwayNodeData data = getOrCreateHitNode(aux).getPathwayNodeData();
+            data.addInteractors(mainIdentifier, identifier);
+            data.addReactions(mainIdentifier.getResource(), reactions);
+            if (aux.getParent() == null) {
+                PathwayNodeData species = getOrCreateSpeciesData(((PathwayRoot) aux).getPathwayHierarchy());
+                species.addInteractors(mainIdentifier, identifier);
+                species.addReactions(mainIdentifier.getResource(), reactions);
+            }
+        }
+    }
+
+    /**
+     * Aggregates the hits recorded in the pathways where they were found up to their ancestors (and species).
+     * Nodes are processed from the deepest level up, so every node has already received the hits of all its
+     * descendants when it is added to its parent (post-order)
+     */
+    private void propagateHits() {
+        if (propagated) return;
+        propagated = true;
+
+        for (PathwayNode node : new ArrayList<>(this.hitNodes.keySet())) {
+            for (PathwayNode aux = node.getParent(); aux != null; aux = aux.getParent()) {
+                getOrCreateHitNode(aux);
+            }
+        }
+
+        Map<PathwayNode, Integer> depths = new IdentityHashMap<>();
+        for (PathwayNode node : this.hitNodes.keySet()) {
+            int depth = 0;
+            for (PathwayNode aux = node.getParent(); aux != null; aux = aux.getParent()) depth++;
+            depths.put(node, depth);
+        }
+        List<PathwayNode> nodes = new ArrayList<>(this.hitNodes.keySet());
+        nodes.sort((n1, n2) -> Integer.compare(depths.get(n2), depths.get(n1)));
+
+        for (PathwayNode node : nodes) {
+            PathwayNodeData data = this.hitNodes.get(node).getPathwayNodeData();
+            PathwayNode parent = node.getParent();
+            if (parent != null) {
+                this.hitNodes.get(parent).getPathwayNodeData().addAll(data);
+            } else {
+                getOrCreateSpeciesData(((PathwayRoot) node).getPathwayHierarchy()).addAll(data);
+            }
+        }
+    }
+
+    private PathwayNode getOrCreateHitNode(PathwayNode node) {
+        PathwayNode rtn = this.hitNodes.get(node);
+        if (rtn == null) {
+            rtn = shared ? node.getAnalysisNode() : node;
+            if (dictionary != null) rtn.getPathwayNodeData().setIdentifierDictionary(dictionary);
+            this.hitNodes.put(node, rtn);
+        }
+        return rtn;
+    }
+
+    private PathwayNodeData getOrCreateSpeciesData(PathwayHierarchy hierarchy) {
+        PathwayNodeData rtn = this.speciesData.get(hierarchy.getSpecies());
+        if (rtn == null) {
+            rtn = shared ? new PathwayNodeData(hierarchy.getData()) : hierarchy.getData();
+            if (dictionary != null) rtn.setIdentifierDictionary(dictionary);
+            this.speciesData.put(hierarchy.getSpecies(), rtn);
+        }
+        return rtn;
+    }
+
+    /**
+     * Returns the aggregated analysis result for a given species
+     *
+     * @param species the species to retrieve the aggregated result for
+     * @return the aggregated analysis result for the species or null if the species has not been hit
+     */
+    public PathwayNodeData getSpeciesData(SpeciesNode species) {
+        propagateHits();
+        return this.speciesData.get(species);
+    }
+
     public List<PathwayNode> getUniqueHitPathways(SpeciesNode species) {
         Set<SpeciesPathway> found = new HashSet<>();
         List<PathwayNode> rtn = new LinkedList<>();
@@ -45,10 +219,15 @@ public class HierarchiesData {
         return pathwayHierarchies;
     }
 
-    private Set<PathwayNode> getHitPathways() {
-        Set<PathwayNode> rtn = new HashSet<>();
-        for (SpeciesNode species : pathwayHierarchies.keySet()) {
-            rtn.addAll(pathwayHierarchies.get(species).getHitPathways());
+    private Collection<PathwayNode> getHitPathways() {
+        propagateHits();
+        return this.hitNodes.values();
+    }
+
+    private MapSet<SpeciesNode, PathwayNode> getHitPathwaysPerSpecies() {
+        MapSet<SpeciesNode, PathwayNode> rtn = new MapSet<>();
+        for (PathwayNode node : this.getHitPathways()) {
+            rtn.add(node.getSpecies(), node);
         }
         return rtn;
     }
@@ -61,60 +240,85 @@ public class HierarchiesData {
         return pathwayLocation;
     }
 
-    @SuppressWarnings("ConstantConditions")
     public void setResultStatistics(Map<MainResource, Integer> sampleSizePerResource, Integer notFound, boolean includeInteractors) {
-        for (SpeciesNode species : this.pathwayHierarchies.keySet()) {
-            PathwayHierarchy hierarchy = this.pathwayHierarchies.get(species);
-            for (PathwayRoot node : hierarchy.getChildren()) {
-                node.setResultStatistics(sampleSizePerResource, notFound, includeInteractors);
+        MapSet<SpeciesNode, PathwayNode> hitPathwaysPerSpecies = this.getHitPathwaysPerSpecies();
+        if (parallelThreshold > 0 && this.hitNodes.size() >= parallelThreshold) {
+            List<Set<PathwayNode>> speciesHitPathways = new ArrayList<>();
+            for (SpeciesNode species : hitPathwaysPerSpecies.keySet()) {
+                speciesHitPathways.add(hitPathwaysPerSpecies.getElements(species));
+            }
+            //Parallel streams started within a ForkJoinPool task are executed in that pool
+            STATISTICS_POOL.submit(() -> speciesHitPathways.parallelStream().forEach(hitPathways ->
+                    setResultStatistics(hitPathways, sampleSizePerResource, notFound, includeInteractors, true)
+            )).join();
+        } else {
+            for (SpeciesNode species : hitPathwaysPerSpecies.keySet()) {
+                Set<PathwayNode> hitPathways = hitPathwaysPerSpecies.getElements(species);
+                setResultStatistics(hitPathways, sampleSizePerResource, notFound, includeInteractors, false);
+            }
+        }
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    private void setResultStatistics(Set<PathwayNode> hitPathways, Map<MainResource, Integer> sampleSizePerResource, Integer notFound, boolean includeInteractors, boolean parallel) {
+        //Only the hit pathways can get a result so there is no need to go through the whole hierarchy
+        if (parallel) {
+            hitPathways.parallelStream().forEach(node -> node.getPathwayNodeData().setResultStatistics(sampleSizePerResource, notFound, includeInteractors));
+        } else {
+            for (PathwayNode node : hitPathways) {
+                node.getPathwayNodeData().setResultStatistics(sampleSizePerResource, notFound, includeInteractors);
             }
-            /*
-            FDR has to be calculated after the pValues for each pathway because it uses all the pValues.
-            How to do it? Easy :) first we create a list of PathwayStatic objects (class that I defined here as an innerClass
-            because it is only used here and it does not make any sense for me to create it in a different class).
-            The list will contain all the nodes information but take care of a the following detail:
-            In the present implementation we have results split by main resources and we also have the "all together" result.
-            That explains what it looks like a mess in the next bit of code, but take it easy and keep reading.
-             */
-            //Contains several sets of PathwayStatistic objects depending on the main resource (this one is used to calculate
-            //the entities FDR result based on the entities pValues
-            MapSet<MainResource, PathwayStatistic> pathwayResourceEntityPValue = new MapSet<MainResource, PathwayStatistic>();
-            MapSet<MainResource, PathwayStatistic> pathwayResourceEntityPValueImportable = new MapSet<>();
-
-            //This one does not depend on main resource because is for the combined result of the entities FDR based in their pValues
-            List<PathwayStatistic> pathwayEntityPValue = new LinkedList<>();
-            List<PathwayStatistic> pathwayEntityPValueImportable = new LinkedList<>();
-
-            //First thing we have to do, is iterate over the hit pathways and populate the lists (and MapSet) defined above
-            for (PathwayNode node : hierarchy.getHitPathways()) {
-                PathwayNodeData nodeData = node.getPathwayNodeData();
-
-                boolean hasImportable = false;
-
-                for (MainResource resource : nodeData.getResources()) {
-                    Double pValue = nodeData.getEntitiesPValue(resource);
-                    if (pValue != null) {
-                        pathwayResourceEntityPValue.add(resource, new PathwayStatistic(node, pValue));
-                        if (!resource.isAuxMainResource()) {
-                            hasImportable = true;
-                            pathwayResourceEntityPValueImportable.add(resource, new PathwayStatistic(node, pValue));
-                        }
+        }
+        /*
+        FDR has to be calculated after the pValues for each pathway because it uses all the pValues.
+        How to do it? Easy :) first we create a list of PathwayStatic objects (class that I defined here as an innerClass
+        because it is only used here and it does not make any sense for me to create it in a different class).
+        The list will contain all the nodes information but take care of a the following detail:
+        In the present implementation we have results split by main resources and we also have the "all together" result.
+        That explains what it looks like a mess in the next bit of code, but take it easy and keep reading.
+         */
+        //Contains several sets of PathwayStatistic objects depending on the main resource (this one is used to calculate
+        //the entities FDR result based on the entities pValues
+        MapSet<MainResource, PathwayStatistic> pathwayResourceEntityPValue = new MapSet<MainResource, PathwayStatistic>();
+        MapSet<MainResource, PathwayStatistic> pathwayResourceEntityPValueImportable = new MapSet<>();
+
+        //This one does not depend on main resource because is for the combined result of the entities FDR based in their pValues
+        List<PathwayStatistic> pathwayEntityPValue = new ArrayList<>();
+        List<PathwayStatistic> pathwayEntityPValueImportable = new ArrayList<>();
+
+        //First thing we have to do, is iterate over the hit pathways and populate the lists (and MapSet) defined above
+        for (PathwayNode node : hitPathways) {
+            PathwayNodeData nodeData = node.getPathwayNodeData();
+
+            boolean hasImportable = false;
+
+            for (MainResource resource : nodeData.getResources()) {
+                Double pValue = nodeData.getEntitiesPValue(resource);
+                if (pValue != null) {
+                    pathwayResourceEntityPValue.add(resource, new PathwayStatistic(node, pValue));
+                    if (!resource.isAuxMainResource()) {
+                        hasImportable = true;
+                        pathwayResourceEntityPValueImportable.add(resource, new PathwayStatistic(node, pValue));
                     }
                 }
-                Double pValue = nodeData.getEntitiesPValue();
-                pathwayEntityPValue.add(new PathwayStatistic(node, pValue));
-                if (hasImportable)
-                    pathwayEntityPValueImportable.add(new PathwayStatistic(node, nodeData.getEntitiesPValue(true)));
             }
-            /*
-            Here we have to iterate over the different resources where the "individual" results have been found
-            and is when the funny stuff begins, so let's go for it
-             */
-            for (MainResource resource : pathwayResourceEntityPValue.keySet()) {
+            Double pValue = nodeData.getEntitiesPValue();
+            pathwayEntityPValue.add(new PathwayStatistic(node, pValue));
+            if (hasImportable)
+                pathwayEntityPValueImportable.add(new PathwayStatistic(node, nodeData.getEntitiesPValue(true)));
+        }
+        /*
+        Here we have to iterate over the different resources where the "individual" results have been found
+        and is when the funny stuff begins, so let's go for it.
+        Each list is independent from the others (they set different FDR values) so they can run in parallel
+         */
+        List<Runnable> fdrTasks = new ArrayList<>();
+        for (MainResource resource : pathwayResourceEntityPValue.keySet()) {
+            fdrTasks.add(() -> {
                 //MapSep contains data in Set associated to the left side of the map to avoid duplication
                 Set<PathwayStatistic> set = pathwayResourceEntityPValue.getElements(resource);
                 //But we need a list
-                List<PathwayStatistic> list = new LinkedList<PathwayStatistic>(set);
+                List<PathwayStatistic> list = new ArrayList<>(set);
                 //And now go to see the comments in the method
                 this.setFDRWithBenjaminiHochberg(list);
                 //When the method finishes, we only need to take the results and assign to the node in question
@@ -122,21 +326,31 @@ public class HierarchiesData {
                     PathwayNodeData nodeData = pathwayStatistic.getPathwayNode().getPathwayNodeData();
                     nodeData.setEntitiesFDR(resource, pathwayStatistic.getFDR());
                 }
-            }
-            //You know what the comment here is... the same than before but for the combined result
+            });
+        }
+        //You know what the comment here is... the same than before but for the combined result
+        fdrTasks.add(() -> {
             this.setFDRWithBenjaminiHochberg(pathwayEntityPValue);
             for (PathwayStatistic pathwayStatistic : pathwayEntityPValue) {
                 PathwayNodeData nodeData = pathwayStatistic.getPathwayNode().getPathwayNodeData();
                 nodeData.setEntitiesFDR(false, pathwayStatistic.getFDR());
             }
+        });
 
+        fdrTasks.add(() -> {
             this.setFDRWithBenjaminiHochberg(pathwayEntityPValueImportable);
             for (PathwayStatistic pathwayStatistic : pathwayEntityPValueImportable) {
                 PathwayNodeData nodeData = pathwayStatistic.getPathwayNode().getPathwayNodeData();
                 nodeData.setEntitiesFDR(true, pathwayStatistic.getFDR());
             }
+        });
 
+        if (parallel) {
+            fdrTasks.parallelStream().forEach(Runnable::run);
+        } else {
+            fdrTasks.forEach(Runnable::run);
         }
+
     }
 
     /**
@@ -0,0 +1,107 @@
+package org.reactome.server.analysis.core.model;
+
+import org.reactome.server.analysis.core.model.identifier.MainIdentifier;
+import org.reactome.server.analysis.core.util.MapSet;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interns the main identifiers, interactor accessions and reactions to dense int ids so the hits in
+ * each pathway can be recorded in bitsets (see PathwayNodeHits).
+ * <p>
+ * The dictionary created when the data container is loaded is immutable and shared by all the analysis.
+ * Identifiers not present in it (e.g. results coming from an external source) get a new id in the scope
+ * of the dictionary created with forAnalysis.
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public class IdentifierDictionary {
+
+    private final Map<String, Integer> identifiers;
+    private final Map<Long, Integer> reactions;
+
+    private final Map<String, Integer> extraIdentifiers = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> extraReactions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextIdentifier;
+    private final AtomicInteger nextReaction;
+
+    /**
+     * Creates an empty dictionary where the ids are assigned on demand
+     */
+    public IdentifierDictionary() {
+        this(Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    public IdentifierDictionary(EntitiesContainer entitiesContainer, IdentifiersMap<InteractorNode> interactorsMap) {
+        Map<String, Integer> identifiers = new HashMap<>();
+        Map<Long, Integer> reactions = new HashMap<>();
+        for (EntityNode node : entitiesContainer.nodes()) {
+            MainIdentifier identifier = node.getIdentifier();
+            if (identifier != null) {
+                identifiers.putIfAbsent(identifier.getValue().getId(), identifiers.size());
+            }
+            addReactions(reactions, node.getPathwayReactions());
+        }
+        for (InteractorNode interactor : interactorsMap.values()) {
+            identifiers.putIfAbsent(interactor.getAccession(), identifiers.size());
+            for (MainIdentifier identifier : interactor.getInteractsWith()) {
+                identifiers.putIfAbsent(identifier.getValue().getId(), identifiers.size());
+            }
+            addReactions(reactions, interactor.getPathwayReactions());
+        }
+        this.identifiers = identifiers;
+        this.reactions = reactions;
+        this.nextIdentifier = new AtomicInteger(identifiers.size());
+        this.nextReaction = new AtomicInteger(reactions.size());
+    }
+
+    private IdentifierDictionary(Map<String, Integer> identifiers, Map<Long, Integer> reactions) {
+        this.identifiers = identifiers;
+        this.reactions = reactions;
+        this.nextIdentifier = new AtomicInteger(identifiers.size());
+        this.nextReaction = new AtomicInteger(reactions.size());
+    }
+
+    private static void addReactions(Map<Long, Integer> reactions, MapSet<Long, AnalysisReaction> pathwayReactions) {
+        if (pathwayReactions == null) return;
+        for (Long pathwayId : pathwayReactions.keySet()) {
+            for (AnalysisReaction reaction : pathwayReactions.getElements(pathwayId)) {
+                reactions.putIfAbsent(reaction.getDbId(), reactions.size());
+            }
+        }
+    }
+
+    /**
+     * Returns a dictionary sharing the interned ids with this one, but where the new ones are kept
+     * separately (so this dictionary is never modified)
+     *
+     * @return a dictionary to be used in the scope of an analysis
+     */
+    public IdentifierDictionary forAnalysis() {
+        return new IdentifierDictionary(this.identifiers, this.reactions);
+    }
+
+    public int getIdentifier(String identifier) {
+        Integer rtn = this.identifiers.get(identifier);
+        if (rtn != null) return rtn;
+        return extraIdentifiers.computeIfAbsent(identifier, k -> nextIdentifier.getAndIncrement());
+    }
+
+    public int getReaction(AnalysisReaction reaction) {
+        Integer rtn = this.reactions.get(reaction.getDbId());
+        if (rtn != null) return rtn;
+        return extraReactions.computeIfAbsent(reaction.getDbId(), k -> nextReaction.getAndIncrement());
+    }
+
+    public int getIdentifiersCount() {
+        return nextIdentifier.get();
+    }
+
+    public int getReactionsCount() {
+        return nextReaction.get();
+    }
+}
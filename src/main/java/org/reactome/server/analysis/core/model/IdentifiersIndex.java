@@ -0,0 +1,273 @@
+package org.reactome.server.analysis.core.model;
+
+import org.reactome.server.analysis.core.model.resource.Resource;
+import org.reactome.server.analysis.core.util.MapSet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Immutable alternative to the radix tree in IdentifiersMap. The identifiers (sorted) and their postings
+ * lists (the position of the nodes in 'nodes' grouped by resource) are written in a separate file by Main
+ * and memory mapped when the data is loaded, so they live outside the Java heap and loading is instant.
+ * <p>
+ * Only the nodes and the resources are kept in the heap (they are serialised with the DataContainer)
+ * <p>
+ * File layout (all the offsets refer to the start of their own section):
+ * [MAGIC][VERSION][keys][keyBytes][postings]
+ * [keyOffsets: int * (keys + 1)][keyBytes: byte * keyBytes][postingOffsets: int * (keys + 1)][postings: int * postings]
+ * where each postings list contains [resource][n][node_1]...[node_n] for each resource of the key
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public class IdentifiersIndex<T> implements Serializable {
+
+    private static final int MAGIC = 0x52494458; //RIDX
+    private static final int VERSION = 1;
+    private static final int HEADER = 5 * Integer.BYTES;
+
+    private Object[] nodes;
+    private Resource[] resources;
+
+    private transient ByteBuffer buffer;
+    private transient int keys;
+    private transient int keyOffsetsStart;
+    private transient int keyBytesStart;
+    private transient int postingOffsetsStart;
+    private transient int postingsStart;
+
+    private IdentifiersIndex(Object[] nodes, Resource[] resources) {
+        this.nodes = nodes;
+        this.resources = resources;
+    }
+
+    /**
+     * Writes the content of the identifiers map to the file and returns the (not yet mapped) index
+     *
+     * @param map  the identifiers map to be indexed
+     * @param file the file where the identifiers and their postings lists are written to
+     * @return the index containing the nodes and resources referred by the file
+     */
+    public static <T> IdentifiersIndex<T> write(IdentifiersMap<T> map, Path file) throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        for (String key : map.keySet()) {
+            keys.add(key.getBytes(StandardCharsets.UTF_8));
+        }
+        keys.sort(Arrays::compareUnsigned);
+
+        Map<T, Integer> nodeIds = new HashMap<>();
+        Map<Resource, Integer> resourceIds = new HashMap<>();
+        List<Object> nodes = new ArrayList<>();
+        List<Resource> resources = new ArrayList<>();
+
+        int keyBytes = 0;
+        int[] postingOffsets = new int[keys.size() + 1];
+        List<int[]> postings = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            keyBytes += keys.get(i).length;
+            MapSet<Resource, T> mapSet = map.get(new String(keys.get(i), StandardCharsets.UTF_8));
+            int[] aux = new int[2 * mapSet.keySet().size() + mapSet.elementsCount()];
+            int p = 0;
+            for (Resource resource : mapSet.keySet()) {
+                Set<T> elements = mapSet.getElements(resource);
+                aux[p++] = resourceIds.computeIfAbsent(resource, r -> {
+                    resources.add(r);
+                    return resources.size() - 1;
+                });
+                aux[p++] = elements.size();
+                for (T node : elements) {
+                    aux[p++] = nodeIds.computeIfAbsent(node, n -> {
+                        nodes.add(n);
+                        return nodes.size() - 1;
+                    });
+                }
+            }
+            postings.add(aux);
+            postingOffsets[i + 1] = postingOffsets[i] + aux.length;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(keys.size());
+            out.writeInt(keyBytes);
+            out.writeInt(postingOffsets[keys.size()]);
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] key : keys) {
+                offset += key.length;
+                out.writeInt(offset);
+            }
+            for (byte[] key : keys) {
+                out.write(key);
+            }
+            for (int postingOffset : postingOffsets) {
+                out.writeInt(postingOffset);
+            }
+            for (int[] aux : postings) {
+                for (int value : aux) {
+                    out.writeInt(value);
+                }
+            }
+        }
+        return new IdentifiersIndex<>(nodes.toArray(), resources.toArray(new Resource[0]));
+    }
+
+    /**
+     * Memory maps the file previously written for this index
+     *
+     * @param file the file containing the identifiers and their postings lists
+     */
+    public void map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION) {
+                throw new IOException(String.format("%s is not a valid identifiers index file", file));
+            }
+            this.keys = buffer.getInt(2 * Integer.BYTES);
+            int keyBytes = buffer.getInt(3 * Integer.BYTES);
+            this.keyOffsetsStart = HEADER;
+            this.keyBytesStart = keyOffsetsStart + (keys + 1) * Integer.BYTES;
+            this.postingOffsetsStart = keyBytesStart + keyBytes;
+            this.postingsStart = postingOffsetsStart + (keys + 1) * Integer.BYTES;
+            this.buffer = buffer;
+        }
+    }
+
+    public boolean isMapped() {
+        return buffer != null;
+    }
+
+    public int size() {
+        return keys;
+    }
+
+    /**
+     * Returns the nodes associated to the identifier (already upper case) grouped by resource
+     *
+     * @param identifier the identifier (upper case) to look for
+     * @return the nodes associated to the identifier grouped by resource (empty if not found)
+     */
+    public MapSet<Resource, T> get(String identifier) {
+        MapSet<Resource, T> rtn = new MapSet<>();
+        int pos = search(identifier.getBytes(StandardCharsets.UTF_8));
+        if (pos >= 0) addPostings(pos, rtn);
+        return rtn;
+    }
+
+    /**
+     * Adds the nodes associated to the identifier (already upper case) to the target MapSet
+     *
+     * @param identifier the identifier (upper case) to look for
+     * @param target     where the nodes are added grouped by resource
+     * @return true if the identifier is present in the index
+     */
+    public boolean addTo(String identifier, MapSet<Resource, T> target) {
+        int pos = search(identifier.getBytes(StandardCharsets.UTF_8));
+        if (pos < 0) return false;
+        addPostings(pos, target);
+        return true;
+    }
+
+    /**
+     * Returns the identifiers in the index starting with the given prefix (already upper case)
+     *
+     * @param prefix the prefix of the identifiers (upper case)
+     * @return the identifiers in the index starting with the given prefix
+     */
+    public List<String> getKeysStartingWith(String prefix) {
+        byte[] query = prefix.getBytes(StandardCharsets.UTF_8);
+        int pos = search(query);
+        if (pos < 0) pos = -(pos + 1);
+        List<String> rtn = new ArrayList<>();
+        for (; pos < keys && startsWith(pos, query); pos++) {
+            rtn.add(getKey(pos));
+        }
+        return rtn;
+    }
+
+    public Set<String> keySet() {
+        Set<String> rtn = new HashSet<>(keys);
+        for (int i = 0; i < keys; i++) {
+            rtn.add(getKey(i));
+        }
+        return rtn;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Set<T> values() {
+        Set<T> rtn = new HashSet<>();
+        for (Object node : nodes) {
+            rtn.add((T) node);
+        }
+        return rtn;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addPostings(int pos, MapSet<Resource, T> target) {
+        int p = postingsStart + buffer.getInt(postingOffsetsStart + pos * Integer.BYTES) * Integer.BYTES;
+        int end = postingsStart + buffer.getInt(postingOffsetsStart + (pos + 1) * Integer.BYTES) * Integer.BYTES;
+        while (p < end) {
+            Resource resource = resources[buffer.getInt(p)];
+            int n = buffer.getInt(p + Integer.BYTES);
+            p += 2 * Integer.BYTES;
+            for (int i = 0; i < n; i++, p += Integer.BYTES) {
+                target.add(resource, (T) nodes[buffer.getInt(p)]);
+            }
+        }
+    }
+
+    //Binary search over the sorted keys. Returns the position of the key or (-(insertion point) - 1)
+    private int search(byte[] query) {
+        int low = 0, high = keys - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid, query);
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return mid;
+        }
+        return -(low + 1);
+    }
+
+    private int compare(int pos, byte[] query) {
+        int start = keyStart(pos), length = keyEnd(pos) - start;
+        int n = Math.min(length, query.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Byte.toUnsignedInt(buffer.get(start + i)) - Byte.toUnsignedInt(query[i]);
+            if (cmp != 0) return cmp;
+        }
+        return length - query.length;
+    }
+
+    private boolean startsWith(int pos, byte[] prefix) {
+        int start = keyStart(pos);
+        if (keyEnd(pos) - start < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(start + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private String getKey(int pos) {
+        int start = keyStart(pos);
+        byte[] key = new byte[keyEnd(pos) - start];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = buffer.get(start + i);
+        }
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    private int keyStart(int pos) {
+        return keyBytesStart + buffer.getInt(keyOffsetsStart + pos * Integer.BYTES);
+    }
+
+    private int keyEnd(int pos) {
+        return keyBytesStart + buffer.getInt(keyOffsetsStart + (pos + 1) * Integer.BYTES);
+    }
+}
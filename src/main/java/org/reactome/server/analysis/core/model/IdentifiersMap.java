@@ -7,33 +7,69 @@ import com.googlecode.concurrenttrees.radix.node.concrete.DefaultCharSequenceNod
 import org.reactome.server.analysis.core.model.resource.Resource;
 import org.reactome.server.analysis.core.util.MapSet;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.Set;
 
 /**
+ * Map from identifier to [resource, [node]]. While the data is being built, the identifiers are kept in a
+ * radix tree. Optionally (see Main) the content can be moved to an immutable IdentifiersIndex that lives
+ * in a memory mapped file, in which case the radix tree is not created.
+ *
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
  */
 public class IdentifiersMap<T> implements Serializable {
 
     private RadixTree<MapSet<Resource, T>> tree;
 
+    //When present, the identifiers are looked up in the index instead of the radix tree
+    private IdentifiersIndex<T> index;
+
+    //Isoform side table (canonical UniProt accession -> isoform identifiers) populated in build time
+    private MapSet<String, String> isoforms = new MapSet<>();
+
     public IdentifiersMap() {
         NodeFactory nodeFactory = new DefaultCharSequenceNodeFactory();
         this.tree = new ConcurrentRadixTree<>(nodeFactory);
     }
 
+    public IdentifiersMap(IdentifiersIndex<T> index, MapSet<String, String> isoforms) {
+        this.index = index;
+        this.isoforms = isoforms;
+    }
+
+    public IdentifiersIndex<T> getIndex() {
+        return index;
+    }
+
+    public MapSet<String, String> getIsoforms() {
+        return isoforms;
+    }
+
+    /**
+     * Memory maps the index file (if this map is backed by an IdentifiersIndex)
+     *
+     * @param file the file containing the identifiers index
+     */
+    public void mapIndex(Path file) throws IOException {
+        if (index != null) index.map(file);
+    }
+
     private MapSet<Resource, T> getOrCreateResourceEntitiesMap(String identifier) {
         MapSet<Resource, T> map = this.tree.getValueForExactKey(identifier);
         if (map == null) {
             map = new MapSet<>();
             this.tree.put(identifier, map);
+            addIsoform(identifier);
         }
         return map;
     }
 
     public boolean add(String identifier, Resource resource, T node) {
         if (identifier == null || resource == null || node == null) return false;
+        if (index != null) throw new UnsupportedOperationException("An IdentifiersMap backed by an index cannot be modified");
         String id = identifier.trim().toUpperCase();
         MapSet<Resource, T> map = getOrCreateResourceEntitiesMap(id);
         return map.add(resource, node);
@@ -45,6 +81,10 @@ public class IdentifiersMap<T> implements Serializable {
         MapSet<Resource, T> rtn = new MapSet<>();
         for (AnalysisIdentifier aux : identifiers) {
             String id = aux.getId().toUpperCase();
+            if (index != null) {
+                index.addTo(id, rtn);
+                continue;
+            }
             MapSet<Resource, T> res = this.tree.getValueForExactKey(id);
             if (res != null) {
                 rtn.addAll(res);
@@ -54,6 +94,7 @@ public class IdentifiersMap<T> implements Serializable {
     }
 
     public MapSet<Resource, T> get(String identifier) {
+        if (index != null) return index.get(identifier.toUpperCase());
         MapSet<Resource, T> res = this.tree.getValueForExactKey(identifier.toUpperCase());
         if (res != null) return res;
         return new MapSet<>();
@@ -65,6 +106,7 @@ public class IdentifiersMap<T> implements Serializable {
      * @return all the identifiers in the Map (upper Case)
      */
     public Set<String> keySet() {
+        if (index != null) return index.keySet();
         Set<String> keySet = new HashSet<>();
         for (CharSequence charSequence : this.tree.getKeysStartingWith("")) {
             keySet.add(String.valueOf(charSequence));
@@ -73,6 +115,7 @@ public class IdentifiersMap<T> implements Serializable {
     }
 
     public Set<T> values() {
+        if (index != null) return index.values();
         Set<T> rtn = new HashSet<>();
         for (String s : keySet()) {
             rtn.addAll(get(s).values());
@@ -80,22 +123,62 @@ public class IdentifiersMap<T> implements Serializable {
         return rtn;
     }
 
-    private Set<AnalysisIdentifier> expandIdentifierWithPolimorfism(AnalysisIdentifier identifier) {
-        //The compiler takes care of replacing this where the variables are used, so no worries for performance
-        String UNIPROT = "[OPQ][0-9][A-Z0-9]{3}[0-9]|[A-NR-Z][0-9]([A-Z][A-Z0-9]{2}[0-9]){1,2}";
-//        String UNIPROT_POLIMORFISM = UNIPROT + "\\-\\d+$";
+    //Isoforms are the identifiers starting with a UniProt accession followed by "-" (e.g. P12345-2)
+    private void addIsoform(String identifier) {
+        int i = identifier.indexOf('-');
+        if (i > 0) {
+            String canonical = identifier.substring(0, i);
+            if (isUniProtAccession(canonical)) isoforms.add(canonical, identifier);
+        }
+    }
 
+    private Set<AnalysisIdentifier> expandIdentifierWithPolimorfism(AnalysisIdentifier identifier) {
         Set<AnalysisIdentifier> rtn = new HashSet<>();
         rtn.add(identifier);
         String id = identifier.getId().toUpperCase();
-        if (id.matches(UNIPROT) && !id.contains("-")) {
-            for (CharSequence sequence : this.tree.getKeysStartingWith(id + "-")) {
-//                String aux = sequence.toString();
-//                if(aux.matches(UNIPROT_POLIMORFISM)){
-                rtn.add(new AnalysisIdentifier(sequence.toString(), identifier.getExp()));
-//                }
+        if (id.indexOf('-') < 0 && isUniProtAccession(id)) {
+            Set<String> keys = isoforms.getElements(id);
+            if (keys != null) {
+                for (String key : keys) {
+                    rtn.add(new AnalysisIdentifier(key, identifier.getExpValues()));
+                }
             }
         }
         return rtn;
     }
+
+    /**
+     * Hand-written equivalent of matching the UniProt accession regular expression
+     * [OPQ][0-9][A-Z0-9]{3}[0-9]|[A-NR-Z][0-9]([A-Z][A-Z0-9]{2}[0-9]){1,2}
+     *
+     * @param id the identifier (upper case) to be checked
+     * @return true if the identifier is a UniProt accession
+     */
+    static boolean isUniProtAccession(String id) {
+        int length = id.length();
+        if (length != 6 && length != 10) return false;
+        char first = id.charAt(0);
+        if (first < 'A' || first > 'Z' || !isDigit(id.charAt(1))) return false;
+        if (first == 'O' || first == 'P' || first == 'Q') {
+            return length == 6 && isAlphanumeric(id.charAt(2)) && isAlphanumeric(id.charAt(3))
+                    && isAlphanumeric(id.charAt(4)) && isDigit(id.charAt(5));
+        }
+        for (int i = 2; i < length; i += 4) {
+            if (!isLetter(id.charAt(i)) || !isAlphanumeric(id.charAt(i + 1))
+                    || !isAlphanumeric(id.charAt(i + 2)) || !isDigit(id.charAt(i + 3))) return false;
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isAlphanumeric(char c) {
+        return isDigit(c) || isLetter(c);
+    }
 }
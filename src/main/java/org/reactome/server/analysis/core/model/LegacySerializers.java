@@ -0,0 +1,151 @@
+package org.reactome.server.analysis.core.model;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import org.reactome.server.analysis.core.util.ExpressionValues;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Serializers used by the LEGACY Kryo configuration (see KryoPool) for the classes whose fields changed after the
+ * legacy files were written. The expression values used to be kept in a List of Double, so the field by field
+ * layout is read (and written) through a copy of the previous fields and converted to the current ones.
+ * <p>
+ * *** IMPORTANT ***
+ * The fields of the Old* classes (names, types and order) must NOT be modified, they mirror the written layout
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public abstract class LegacySerializers {
+
+    public static Serializer<AnalysisIdentifier> getAnalysisIdentifierSerializer(Kryo kryo) {
+        return new AnalysisIdentifierSerializer(kryo);
+    }
+
+    public static void addDefaultSerializers(Kryo kryo) {
+        //Counter is not registered (it was written by name) so it cannot be registered with a serializer either
+        kryo.addDefaultSerializer(PathwayNodeData.Counter.class, new CounterSerializer(kryo));
+    }
+
+    @SuppressWarnings("unused")
+    private static class OldAnalysisIdentifier {
+        private String id;
+        private List<Double> exp;
+    }
+
+    @SuppressWarnings("unused")
+    private static class OldCounter {
+        Integer totalEntities;
+        Integer foundEntities;
+        Double entitiesRatio;
+        Double entitiesPValue;
+        Double entitiesFDR;
+
+        Integer totalInteractors;
+        Integer foundInteractors;
+        Double interactorsRatio;
+
+        Integer totalFound;
+
+        Integer totalReactions;
+        Integer foundReactions;
+        Double reactionsRatio;
+
+        List<Double> exp;
+    }
+
+    //The object is referenced BEFORE its content is read (so the back references to it are resolved to the right
+    //instance) and the FieldSerializer of the old fields then finds no pending reference to be assigned to its copy
+    private static class AnalysisIdentifierSerializer extends Serializer<AnalysisIdentifier> {
+
+        private final FieldSerializer<OldAnalysisIdentifier> old;
+        private final FieldSerializer<AnalysisIdentifier> current; //Copying is not affected by the layout
+
+        AnalysisIdentifierSerializer(Kryo kryo) {
+            this.old = new FieldSerializer<>(kryo, OldAnalysisIdentifier.class);
+            this.current = new FieldSerializer<>(kryo, AnalysisIdentifier.class);
+        }
+
+        @Override
+        public void write(Kryo kryo, Output output, AnalysisIdentifier identifier) {
+            OldAnalysisIdentifier aux = new OldAnalysisIdentifier();
+            aux.id = identifier.getId();
+            aux.exp = new LinkedList<>(identifier.getExp());
+            old.write(kryo, output, aux);
+        }
+
+        @Override
+        public AnalysisIdentifier read(Kryo kryo, Input input, Class<? extends AnalysisIdentifier> type) {
+            AnalysisIdentifier rtn = new AnalysisIdentifier((String) null);
+            kryo.reference(rtn);
+            OldAnalysisIdentifier aux = old.read(kryo, input, OldAnalysisIdentifier.class);
+            rtn.set(aux.id, ExpressionValues.toArray(aux.exp));
+            return rtn;
+        }
+
+        @Override
+        public AnalysisIdentifier copy(Kryo kryo, AnalysisIdentifier original) {
+            return current.copy(kryo, original);
+        }
+    }
+
+    private static class CounterSerializer extends Serializer<PathwayNodeData.Counter> {
+
+        private final FieldSerializer<OldCounter> old;
+        private final FieldSerializer<PathwayNodeData.Counter> current; //Copying is not affected by the layout
+
+        CounterSerializer(Kryo kryo) {
+            this.old = new FieldSerializer<>(kryo, OldCounter.class);
+            this.current = new FieldSerializer<>(kryo, PathwayNodeData.Counter.class);
+        }
+
+        @Override
+        public void write(Kryo kryo, Output output, PathwayNodeData.Counter counter) {
+            OldCounter aux = new OldCounter();
+            aux.totalEntities = counter.totalEntities;
+            aux.foundEntities = counter.foundEntities;
+            aux.entitiesRatio = counter.entitiesRatio;
+            aux.entitiesPValue = counter.entitiesPValue;
+            aux.entitiesFDR = counter.entitiesFDR;
+            aux.totalInteractors = counter.totalInteractors;
+            aux.foundInteractors = counter.foundInteractors;
+            aux.interactorsRatio = counter.interactorsRatio;
+            aux.totalFound = counter.totalFound;
+            aux.totalReactions = counter.totalReactions;
+            aux.foundReactions = counter.foundReactions;
+            aux.reactionsRatio = counter.reactionsRatio;
+            aux.exp = counter.exp == null ? null : new LinkedList<>(ExpressionValues.asList(counter.exp));
+            old.write(kryo, output, aux);
+        }
+
+        @Override
+        public PathwayNodeData.Counter read(Kryo kryo, Input input, Class<? extends PathwayNodeData.Counter> type) {
+            PathwayNodeData.Counter rtn = kryo.newInstance(type);
+            kryo.reference(rtn);
+            OldCounter aux = old.read(kryo, input, OldCounter.class);
+            rtn.totalEntities = aux.totalEntities;
+            rtn.foundEntities = aux.foundEntities;
+            rtn.entitiesRatio = aux.entitiesRatio;
+            rtn.entitiesPValue = aux.entitiesPValue;
+            rtn.entitiesFDR = aux.entitiesFDR;
+            rtn.totalInteractors = aux.totalInteractors;
+            rtn.foundInteractors = aux.foundInteractors;
+            rtn.interactorsRatio = aux.interactorsRatio;
+            rtn.totalFound = aux.totalFound;
+            rtn.totalReactions = aux.totalReactions;
+            rtn.foundReactions = aux.foundReactions;
+            rtn.reactionsRatio = aux.reactionsRatio;
+            rtn.exp = aux.exp == null || aux.exp.isEmpty() ? null : ExpressionValues.toArray(aux.exp);
+            return rtn;
+        }
+
+        @Override
+        public PathwayNodeData.Counter copy(Kryo kryo, PathwayNodeData.Counter original) {
+            return current.copy(kryo, original);
+        }
+    }
+}
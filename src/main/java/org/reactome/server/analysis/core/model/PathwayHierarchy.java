@@ -42,14 +42,6 @@ public class PathwayHierarchy implements Serializable {
         return species;
     }
 
-    protected Set<PathwayNode> getHitPathways() {
-        Set<PathwayNode> rtn = new HashSet<>();
-        for (PathwayNode node : this.children) {
-            rtn.addAll(node.getHitNodes());
-        }
-        return rtn;
-    }
-
     public void setCountersAndCleanUp() {
         this.data.setCounters(getData());
         for (PathwayRoot node : children) {
@@ -1,9 +1,14 @@
 package org.reactome.server.analysis.core.model;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import org.reactome.server.analysis.core.model.identifier.Identifier;
 import org.reactome.server.analysis.core.model.identifier.InteractorIdentifier;
 import org.reactome.server.analysis.core.model.identifier.MainIdentifier;
 import org.reactome.server.analysis.core.model.resource.MainResource;
+import org.reactome.server.analysis.core.util.KryoPool;
 import org.reactome.server.graph.domain.model.Pathway;
 
 import java.io.Serializable;
@@ -14,7 +19,7 @@ import java.util.Set;
 /**
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
  */
-public class PathwayNode implements Serializable, Comparable<PathwayNode> {
+public class PathwayNode implements Serializable, Comparable<PathwayNode>, KryoSerializable {
     private String stId;
     private Long pathwayId;
     private String name;
@@ -46,6 +51,25 @@ public class PathwayNode implements Serializable, Comparable<PathwayNode> {
         this.type = type;
     }
 
+    /**
+     * Creates an analysis-scoped view of the given node. The view shares the hierarchy (parent, children
+     * and descriptive fields) with the original node but holds its own PathwayNodeData, so the shared
+     * hierarchy is never modified while analysing
+     */
+    protected PathwayNode(PathwayNode node, PathwayNodeData data) {
+        this.parent = node.parent;
+        this.stId = node.stId;
+        this.pathwayId = node.pathwayId;
+        this.name = node.name;
+        this.hasDiagram = node.hasDiagram;
+        this.isLowerLevelPathway = node.isLowerLevelPathway;
+        this.inDisease = node.inDisease;
+        this.children = node.children;
+        this.data = data;
+        this.order = node.order;
+        this.type = node.type;
+    }
+
     public PathwayNode addChild(Pathway p, int order) {
         PathwayNode node = new PathwayNode(this, p.getStId(), p.getDbId(), p.getDisplayName(), p.getHasDiagram(), p.getIsInDisease(), order, p.getSchemaClass() );
         this.children.add(node);
@@ -70,19 +94,18 @@ public class PathwayNode implements Serializable, Comparable<PathwayNode> {
         return null;
     }
 
-    public boolean isInDisease() {
-        return inDisease;
+    /**
+     * Returns a node sharing the hierarchy with this one but containing a clean copy of the counters
+     * to keep the result of an analysis without modifying the shared hierarchy
+     *
+     * @return an analysis-scoped view of this node
+     */
+    protected PathwayNode getAnalysisNode() {
+        return new PathwayNode(this, new PathwayNodeData(this.data));
     }
 
-    protected Set<PathwayNode> getHitNodes(){
-        Set<PathwayNode> rtn = new HashSet<>();
-        if(this.data.hasResult()){
-            rtn.add(this);
-            for (PathwayNode node : children) {
-                rtn.addAll(node.getHitNodes());
-            }
-        }
-        return rtn;
+    public boolean isInDisease() {
+        return inDisease;
     }
 
     public boolean isLowerLevelPathway() {
@@ -179,4 +202,45 @@ public class PathwayNode implements Serializable, Comparable<PathwayNode> {
         }
         return rtn;
     }
+
+    @Override
+    public void write(Kryo kryo, Output output) {
+        //Fields first, so they are set when the node is reached again through its children
+        output.writeString(stId);
+        KryoPool.writeLong(output, pathwayId);
+        output.writeString(name);
+        output.writeByte((hasDiagram ? 1 : 0) | (isLowerLevelPathway ? 2 : 0) | (inDisease ? 4 : 0));
+        output.writeVarInt(order, false);
+        output.writeString(type);
+        kryo.writeClassAndObject(output, parent);
+        output.writeVarInt(children == null ? 0 : children.size() + 1, true);
+        if (children != null) {
+            for (PathwayNode child : children) {
+                kryo.writeClassAndObject(output, child);
+            }
+        }
+        kryo.writeObjectOrNull(output, data, PathwayNodeData.class);
+    }
+
+    @Override
+    public void read(Kryo kryo, Input input) {
+        this.stId = input.readString();
+        this.pathwayId = KryoPool.readLong(input);
+        this.name = input.readString();
+        byte flags = input.readByte();
+        this.hasDiagram = (flags & 1) != 0;
+        this.isLowerLevelPathway = (flags & 2) != 0;
+        this.inDisease = (flags & 4) != 0;
+        this.order = input.readVarInt(false);
+        this.type = input.readString();
+        this.parent = (PathwayNode) kryo.readClassAndObject(input);
+        int children = input.readVarInt(true);
+        if (children > 0) {
+            this.children = new HashSet<>();
+            for (int i = 1; i < children; i++) {
+                this.children.add((PathwayNode) kryo.readClassAndObject(input));
+            }
+        }
+        this.data = kryo.readObjectOrNull(input, PathwayNodeData.class);
+    }
 }
@@ -1,5 +1,9 @@
 package org.reactome.server.analysis.core.model;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import org.reactome.server.analysis.core.model.identifier.Identifier;
 import org.reactome.server.analysis.core.model.identifier.InteractorIdentifier;
 import org.reactome.server.analysis.core.model.identifier.MainIdentifier;
@@ -7,11 +11,14 @@ import org.reactome.server.analysis.core.model.identifier.OtherIdentifier;
 import org.reactome.server.analysis.core.model.resource.MainResource;
 import org.reactome.server.analysis.core.model.resource.ResourceFactory;
 import org.reactome.server.analysis.core.result.external.*;
+import org.reactome.server.analysis.core.util.ExpressionValues;
+import org.reactome.server.analysis.core.util.KryoPool;
 import org.reactome.server.analysis.core.util.MapSet;
 import org.reactome.server.analysis.core.util.MathUtilities;
 
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -23,7 +30,7 @@ import java.util.stream.Stream;
  *
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
  */
-public class PathwayNodeData {
+public class PathwayNodeData implements KryoSerializable {
     //Please note that counter is used for each main identifier and for the combinedResult
     class Counter {
 
@@ -48,7 +55,22 @@ public class PathwayNodeData {
             this.reactionsRatio = counter.getReactionsRatio();
 
             //Only used for external results
-            this.exp = counter.getExp();
+            List<Double> exp = counter.getExp();
+            if (exp != null && !exp.isEmpty()) this.exp = ExpressionValues.toArray(exp);
+        }
+
+        //Only the pre-calculated (build time) values are copied, the analysis related ones start clean
+        Counter(Counter counter) {
+            this.totalEntities = counter.totalEntities;
+            this.entitiesRatio = counter.entitiesRatio;
+
+            this.totalInteractors = counter.totalInteractors;
+            this.interactorsRatio = counter.interactorsRatio;
+
+            this.totalFound = counter.totalFound;
+
+            this.totalReactions = counter.totalReactions;
+            this.reactionsRatio = counter.reactionsRatio;
         }
 
         Integer totalEntities = 0; //Pre-calculated in setCounters method
@@ -69,7 +91,42 @@ public class PathwayNodeData {
         Integer foundReactions = 0;
         Double reactionsRatio;
 
-        List<Double> exp;
+        double[] exp; //Expression values averages (null until they are calculated)
+
+        //Only used when the data is read from a columnar result file (see lazy)
+        transient Integer foundEntitiesAndInteractors = 0;
+
+        void write(Kryo kryo, Output output) {
+            KryoPool.writeInteger(output, totalEntities);
+            KryoPool.writeInteger(output, foundEntities);
+            KryoPool.writeDouble(output, entitiesRatio);
+            KryoPool.writeDouble(output, entitiesPValue);
+            KryoPool.writeDouble(output, entitiesFDR);
+            KryoPool.writeInteger(output, totalInteractors);
+            KryoPool.writeInteger(output, foundInteractors);
+            KryoPool.writeDouble(output, interactorsRatio);
+            KryoPool.writeInteger(output, totalFound);
+            KryoPool.writeInteger(output, totalReactions);
+            KryoPool.writeInteger(output, foundReactions);
+            KryoPool.writeDouble(output, reactionsRatio);
+            kryo.writeObjectOrNull(output, exp, double[].class);
+        }
+
+        void read(Kryo kryo, Input input) {
+            totalEntities = KryoPool.readInteger(input);
+            foundEntities = KryoPool.readInteger(input);
+            entitiesRatio = KryoPool.readDouble(input);
+            entitiesPValue = KryoPool.readDouble(input);
+            entitiesFDR = KryoPool.readDouble(input);
+            totalInteractors = KryoPool.readInteger(input);
+            foundInteractors = KryoPool.readInteger(input);
+            interactorsRatio = KryoPool.readDouble(input);
+            totalFound = KryoPool.readInteger(input);
+            totalReactions = KryoPool.readInteger(input);
+            foundReactions = KryoPool.readInteger(input);
+            reactionsRatio = KryoPool.readDouble(input);
+            exp = kryo.readObjectOrNull(input, double[].class);
+        }
     }
 
     private MapSet<MainResource, String> foundTotal = new MapSet<>();
@@ -95,6 +152,12 @@ public class PathwayNodeData {
     */
     private MapSet<MainIdentifier, InteractorIdentifier> interactors = new MapSet<>();
 
+    //Primitive counters of the found elements. Not serialised, rebuilt from the structures above when needed
+    private transient volatile PathwayNodeHits hits;
+
+    //Set when only the counters have been read from a columnar result file. It provides the found elements when needed
+    private transient volatile Supplier<PathwayNodeData> lazy;
+
     //Analysis result containers
     private Map<MainResource, Counter> entitiesResult = new HashMap<>();
     private Counter combinedResult = new Counter();  //All main identifiers combined in one result
@@ -103,6 +166,20 @@ public class PathwayNodeData {
     public PathwayNodeData() {
     }
 
+    /**
+     * Creates a clean copy of the given data keeping only the counters calculated in build time.
+     * Used to hold the result of an analysis without modifying the shared pathway hierarchies
+     *
+     * @param data the build time data of a pathway node
+     */
+    public PathwayNodeData(PathwayNodeData data) {
+        for (Map.Entry<MainResource, Counter> entry : data.entitiesResult.entrySet()) {
+            this.entitiesResult.put(entry.getKey(), new Counter(entry.getValue()));
+        }
+        this.combinedResult = new Counter(data.combinedResult);
+        this.importableResult = new Counter(data.importableResult);
+    }
+
     public PathwayNodeData(ExternalPathwayNodeData data) {
         //statistics
         for (ExternalStatistics statistics : data.getStatistics()) {
@@ -119,7 +196,7 @@ public class PathwayNodeData {
         for (ExternalIdentifier entity : data.getEntities()) {
             AnalysisIdentifier ai = new AnalysisIdentifier(entity);
             for (ExternalMainIdentifier emi : entity.getMapsTo()) {
-                MainIdentifier mi = new MainIdentifier(emi, entity.getExp());
+                MainIdentifier mi = new MainIdentifier(emi, ai.getExpValues());
                 OtherIdentifier otherIdentifier = new OtherIdentifier(mi.getResource(), ai);
                 addEntity(otherIdentifier, mi);
             }
@@ -131,7 +208,7 @@ public class PathwayNodeData {
                 AnalysisIdentifier ai = new AnalysisIdentifier(interactor.getId(), interactor.getExp());
                 for (ExternalInteraction interaction : interactor.getMapsTo()) {
                     for (ExternalMainIdentifier emi : interaction.getInteractsWith()) {
-                        MainIdentifier mi = new MainIdentifier(emi, interactor.getExp());
+                        MainIdentifier mi = new MainIdentifier(emi, ai.getExpValues());
                         InteractorIdentifier ii = new InteractorIdentifier(ai, interaction.getId());
                         addInteractors(mi, ii);
                     }
@@ -151,15 +228,152 @@ public class PathwayNodeData {
     public void addEntity(Identifier identifier, MainIdentifier mainIdentifier) {
         this.entities.add(identifier, mainIdentifier);
         this.foundTotal.add(mainIdentifier.getResource(), mainIdentifier.getValue().getId());
+        PathwayNodeHits hits = this.hits;
+        if (hits != null) hits.addEntity(mainIdentifier.getResource(), mainIdentifier.getValue().getId());
     }
 
     public void addInteractors(MainIdentifier mainIdentifier, InteractorIdentifier identifier) {
         this.interactors.add(mainIdentifier, identifier);
         this.foundTotal.add(mainIdentifier.getResource(), identifier.getMapsTo());
+        PathwayNodeHits hits = this.hits;
+        if (hits != null) hits.addInteractor(mainIdentifier.getResource(), identifier.getMapsTo());
     }
 
     public void addReactions(MainResource mainResource, Set<AnalysisReaction> reactions) {
         this.reactions.add(mainResource, reactions);
+        PathwayNodeHits hits = this.hits;
+        if (hits != null) hits.addReactions(mainResource, reactions);
+    }
+
+    /**
+     * Adds all the elements found in the given data (used to aggregate the result of the children pathways)
+     *
+     * @param data the data whose found elements are added to this one
+     */
+    public void addAll(PathwayNodeData data) {
+        this.entities.addAll(data.entities);
+        this.interactors.addAll(data.interactors);
+        this.reactions.addAll(data.reactions);
+        this.foundTotal.addAll(data.foundTotal);
+        PathwayNodeHits hits = this.hits;
+        if (hits != null) {
+            PathwayNodeHits other = data.hits;
+            if (other != null && other.getDictionary() == hits.getDictionary()) {
+                hits.addAll(other);
+            } else {
+                this.hits = buildHits(hits.getDictionary());
+            }
+        }
+    }
+
+    /**
+     * Sets the dictionary used to intern the found elements, so they are counted with the primitive counters
+     * from now on (see PathwayNodeHits)
+     *
+     * @param dictionary the dictionary to intern the found elements
+     */
+    public void setIdentifierDictionary(IdentifierDictionary dictionary) {
+        this.hits = buildHits(dictionary);
+    }
+
+    private PathwayNodeHits getHits() {
+        load();
+        PathwayNodeHits rtn = this.hits;
+        if (rtn == null) {
+            //e.g. when the data has been retrieved from file. The ids only need to be consistent for this object
+            rtn = buildHits(new IdentifierDictionary());
+            this.hits = rtn;
+        }
+        return rtn;
+    }
+
+    //The counters with the found elements read from a columnar result file (only used while lazy is set)
+    private Counter getStoredCounter(boolean importableOnly) {
+        return importableOnly ? importableResult : combinedResult;
+    }
+
+    private Counter getStoredCounter(MainResource resource) {
+        Counter counter = entitiesResult.get(resource);
+        return counter != null ? counter : new Counter();
+    }
+
+    /**
+     * Sets the values of one of the counters when the data is read from a columnar result file
+     *
+     * @param resource       the main resource of the counter (null for the combined or the importable result)
+     * @param importableOnly when resource is null, whether it is the importable result or the combined one
+     * @param counts         total and found entities, total and found interactors, total and found entities and
+     *                       interactors, total and found reactions
+     * @param ratios         entities ratio, p-value and FDR, interactors ratio and reactions ratio
+     * @param exp            the expression values averages (null if they were not calculated)
+     */
+    public void setStoredCounter(MainResource resource, boolean importableOnly, int[] counts, Double[] ratios, double[] exp) {
+        Counter counter;
+        if (resource == null) {
+            counter = importableOnly ? importableResult : combinedResult;
+        } else {
+            counter = getOrCreateCounter(resource);
+        }
+        counter.totalEntities = counts[0];
+        counter.foundEntities = counts[1];
+        counter.totalInteractors = counts[2];
+        counter.foundInteractors = counts[3];
+        counter.totalFound = counts[4];
+        counter.foundEntitiesAndInteractors = counts[5];
+        counter.totalReactions = counts[6];
+        counter.foundReactions = counts[7];
+        counter.entitiesRatio = ratios[0];
+        counter.entitiesPValue = ratios[1];
+        counter.entitiesFDR = ratios[2];
+        counter.interactorsRatio = ratios[3];
+        counter.reactionsRatio = ratios[4];
+        counter.exp = exp;
+    }
+
+    /**
+     * Sets where the found elements (entities, interactors and reactions) are taken from when they are needed.
+     * Until then, the found counts are taken from the counters (see setStoredCounter)
+     *
+     * @param loader provides a data object with the found elements of this one
+     */
+    public void setLazyLoader(Supplier<PathwayNodeData> loader) {
+        this.lazy = loader;
+    }
+
+    /**
+     * Makes sure the found elements are available (only needed when the data has been read from a columnar result file)
+     */
+    public void load() {
+        if (lazy == null) return;
+        synchronized (this) {
+            Supplier<PathwayNodeData> loader = this.lazy;
+            if (loader == null) return;
+            PathwayNodeData data = loader.get();
+            this.entities = data.entities;
+            this.interactors = data.interactors;
+            this.reactions = data.reactions;
+            this.foundTotal = data.foundTotal;
+            this.hits = null;
+            this.lazy = null;
+        }
+    }
+
+    private PathwayNodeHits buildHits(IdentifierDictionary dictionary) {
+        PathwayNodeHits rtn = new PathwayNodeHits(dictionary);
+        for (Identifier identifier : entities.keySet()) {
+            for (MainIdentifier mainIdentifier : entities.getElements(identifier)) {
+                rtn.addEntity(mainIdentifier.getResource(), mainIdentifier.getValue().getId());
+            }
+        }
+        for (MainIdentifier mainIdentifier : interactors.keySet()) {
+            for (InteractorIdentifier interactor : interactors.getElements(mainIdentifier)) {
+                rtn.addInteractor(mainIdentifier.getResource(), interactor.getMapsTo());
+            }
+        }
+        for (MainResource mainResource : reactions.keySet()) {
+            rtn.addReactions(mainResource, reactions.getElements(mainResource));
+        }
+        return rtn;
     }
 
 
@@ -180,24 +394,24 @@ public class PathwayNodeData {
     }
 
     public Integer getEntitiesAndInteractorsFound() {
-        return foundTotal.stream().mapToInt(entry -> entry.getValue().size()).sum();
+        if (lazy != null) return getStoredCounter(false).foundEntitiesAndInteractors;
+        return getHits().getEntitiesAndInteractorsFound(false);
     }
 
     public Integer getEntitiesAndInteractorsFound(boolean importableOnly) {
-        var stream = !importableOnly ?
-                foundTotal.stream() :
-                foundTotal.stream().filter(entry -> !entry.getKey().isAuxMainResource());
-        return stream.mapToInt(entry -> entry.getValue().size()).sum();
+        if (lazy != null) return getStoredCounter(importableOnly).foundEntitiesAndInteractors;
+        return getHits().getEntitiesAndInteractorsFound(importableOnly);
     }
 
     public Integer getEntitiesAndInteractorsFound(MainResource resource) {
-        Set<String> found = this.foundTotal.getElements(resource);
-        return found == null ? 0 : found.size();
+        if (lazy != null) return getStoredCounter(resource).foundEntitiesAndInteractors;
+        return getHits().getEntitiesAndInteractorsFound(resource);
     }
 
     // ENTITIES Result
 
     public Set<AnalysisIdentifier> getFoundEntities() {
+        load();
         Set<AnalysisIdentifier> rtn = new HashSet<>();
         for (Identifier identifier : entities.keySet()) {
             for (MainIdentifier mainIdentifier : this.entities.getElements(identifier)) {
@@ -212,7 +426,7 @@ public class PathwayNodeData {
     }
 
     public List<ExternalIdentifier> getExternalEntities(boolean importableOnly) {
-
+        load();
         List<ExternalIdentifier> rtn = new ArrayList<>();
 
         for (Identifier identifier : entities.keySet()) {
@@ -230,6 +444,7 @@ public class PathwayNodeData {
 
 
     public Set<AnalysisIdentifier> getFoundEntities(boolean importableOnly) {
+        load();
         Stream<MainIdentifier> identifiers = importableOnly ?
                 entities.values().stream().filter(id -> !id.getResource().isAuxMainResource()) :
                 entities.values().stream();
@@ -237,6 +452,7 @@ public class PathwayNodeData {
     }
 
     public Set<AnalysisIdentifier> getFoundEntities(MainResource resource) {
+        load();
         Set<AnalysisIdentifier> rtn = new HashSet<>();
         for (Identifier identifier : entities.keySet()) {
             for (MainIdentifier mainIdentifier : this.entities.getElements(identifier)) {
@@ -248,49 +464,16 @@ public class PathwayNodeData {
         return rtn;
     }
 
-    private List<List<Double>> groupEntitiesExpressionValues(
-		    Collection<AnalysisIdentifier> identifiers,
-		    Collection<InteractorIdentifier> interactors) {
-        List<List<Double>> evss = new LinkedList<>();
+    private double[] calculateAverage(Collection<AnalysisIdentifier> identifiers, Collection<InteractorIdentifier> interactors) {
+        load();
         Collection<AnalysisIdentifier> aggregation = new HashSet<>();
         aggregation.addAll(identifiers);
         aggregation.addAll(interactors);
+        List<double[]> rows = new ArrayList<>(aggregation.size());
         for (AnalysisIdentifier identifier : aggregation) {
-            int i = 0;
-            for (Double ev : identifier.getExp()) {
-                List<Double> evs;
-                if (evss.size() > i) {
-                    evs = evss.get(i);
-                } else {
-                    evs = new LinkedList<>();
-                    evss.add(i, evs);
-                }
-                evs.add(ev);
-                i++;
-            }
-        }
-        return evss;
-    }
-
-    private List<Double> calculateAverage(List<List<Double>> expressionValues) {
-        List<Double> avg = new LinkedList<>();
-        int i = 0;
-        for (List<Double> evs : expressionValues) {
-            Double sum = 0.0;
-            Double total = 0.0;
-            for (Double ev : evs) {
-                if (ev != null) {
-                    sum += ev;
-                    total++;
-                }
-            }
-            if (total > 0.0) {
-                avg.add(i++, sum / total);
-            } else {
-                avg.add(i++, null);
-            }
+            rows.add(identifier.getExpValues());
         }
-        return avg;
+        return ExpressionValues.average(rows);
     }
 
     private List<AnalysisIdentifier> getEntitiesDuplication() {
@@ -358,21 +541,34 @@ public class PathwayNodeData {
         return rtn;
     }
 
+    //The List versions are read only views of the shared arrays (see ExpressionValues.asList)
     public List<Double> getExpressionValuesAvg() {
-        if (combinedResult.exp != null && !combinedResult.exp.isEmpty()) return combinedResult.exp;
-        return calculateAverage(groupEntitiesExpressionValues(getEntitiesDuplication(), getInteractorsDuplication()));
+        return ExpressionValues.asList(getExpValuesAvg());
     }
 
     public List<Double> getExpressionValuesAvg(boolean importableOnly) {
-        if (!importableOnly) return this.getExpressionValuesAvg();
-        if (importableResult.exp != null && !importableResult.exp.isEmpty()) return importableResult.exp;
-        return calculateAverage(groupEntitiesExpressionValues(getEntitiesDuplication(true), getInteractorsDuplication(true)));
+        return ExpressionValues.asList(getExpValuesAvg(importableOnly));
     }
 
     public List<Double> getExpressionValuesAvg(MainResource resource) {
+        return ExpressionValues.asList(getExpValuesAvg(resource));
+    }
+
+    public double[] getExpValuesAvg() {
+        if (combinedResult.exp != null) return combinedResult.exp;
+        return calculateAverage(getEntitiesDuplication(), getInteractorsDuplication());
+    }
+
+    public double[] getExpValuesAvg(boolean importableOnly) {
+        if (!importableOnly) return this.getExpValuesAvg();
+        if (importableResult.exp != null) return importableResult.exp;
+        return calculateAverage(getEntitiesDuplication(true), getInteractorsDuplication(true));
+    }
+
+    public double[] getExpValuesAvg(MainResource resource) {
         final Counter counter = entitiesResult.get(resource);
-        if (counter != null && counter.exp != null && !counter.exp.isEmpty()) return counter.exp;
-        return calculateAverage(groupEntitiesExpressionValues(getEntitiesDuplication(resource), getInteractorsDuplication(resource)));
+        if (counter != null && counter.exp != null) return counter.exp;
+        return calculateAverage(getEntitiesDuplication(resource), getInteractorsDuplication(resource));
     }
 
     public Integer getEntitiesCount() {
@@ -392,15 +588,18 @@ public class PathwayNodeData {
     }
 
     public Integer getEntitiesFound() {
-        return getFoundEntities().size();
+        if (lazy != null) return getStoredCounter(false).foundEntities;
+        return getHits().getEntitiesFound(false);
     }
 
     public Integer getEntitiesFound(boolean importableOnly) {
-        return getFoundEntities(importableOnly).size();
+        if (lazy != null) return getStoredCounter(importableOnly).foundEntities;
+        return getHits().getEntitiesFound(importableOnly);
     }
 
     public Integer getEntitiesFound(MainResource resource) {
-        return getFoundEntities(resource).size();
+        if (lazy != null) return getStoredCounter(resource).foundEntities;
+        return getHits().getEntitiesFound(resource);
     }
 
     public Double getEntitiesPValue() {
@@ -470,21 +669,25 @@ public class PathwayNodeData {
 
     //TODO: Provide with the pathway identifiers mapping to main identifiers
     public MapSet<Identifier, MainIdentifier> getIdentifierMap() {
+        load();
         return entities;
     }
 
 
     public MapSet<MainIdentifier, InteractorIdentifier> getInteractorMap() {
+        load();
         return interactors;
     }
 
     // INTERACTORS Result
 
     public Set<InteractorIdentifier> getFoundInteractors() {
+        load();
         return interactors.values();
     }
 
     public Set<InteractorIdentifier> getFoundInteractors(boolean importableOnly) {
+        load();
         return !importableOnly ?
                 interactors.values() :
                 interactors.stream()
@@ -494,6 +697,7 @@ public class PathwayNodeData {
     }
 
     public Set<InteractorIdentifier> getFoundInteractors(MainResource resource) {
+        load();
         Set<InteractorIdentifier> rtn = new HashSet<>();
         for (MainIdentifier mainIdentifier : interactors.keySet()) {
             if (mainIdentifier.getResource().equals(resource)) {
@@ -520,31 +724,22 @@ public class PathwayNodeData {
     }
 
     public Integer getInteractorsFound() {
-        Set<String> mapsTo = new HashSet<>();
-        for (InteractorIdentifier interactor : getFoundInteractors()) {
-            mapsTo.add(interactor.getMapsTo());
-        }
-        return mapsTo.size();
+        if (lazy != null) return getStoredCounter(false).foundInteractors;
+        return getHits().getInteractorsFound(false);
     }
 
     public Integer getInteractorsFound(boolean importableOnly) {
-        return Math.toIntExact(
-                getFoundInteractors(importableOnly).stream()
-                        .map(InteractorIdentifier::getMapsTo)
-                        .distinct()
-                        .count()
-        );
+        if (lazy != null) return getStoredCounter(importableOnly).foundInteractors;
+        return getHits().getInteractorsFound(importableOnly);
     }
 
     public Integer getInteractorsFound(MainResource resource) {
-        Set<String> mapsTo = new HashSet<>();
-        for (InteractorIdentifier interactor : getFoundInteractors(resource)) {
-            mapsTo.add(interactor.getMapsTo());
-        }
-        return mapsTo.size();
+        if (lazy != null) return getStoredCounter(resource).foundInteractors;
+        return getHits().getInteractorsFound(resource);
     }
 
     public List<ExternalInteractor> getExternalInteractors(boolean importableOnly) {
+        load();
         Map<String, ExternalInteractor> identifierMap = new HashMap<>();
         Map<String, ExternalInteraction> interactionMap = new HashMap<>();
         for (MainIdentifier mi : interactors.keySet()) {
@@ -571,10 +766,12 @@ public class PathwayNodeData {
     // REACTIONS Result
 
     public Set<AnalysisReaction> getReactions() {
+        load();
         return reactions.values();
     }
 
     public Set<AnalysisReaction> getReactions(boolean importableOnly) {
+        load();
         return !importableOnly ?
                 reactions.values() :
                 reactions.stream()
@@ -584,6 +781,7 @@ public class PathwayNodeData {
     }
 
     public Set<AnalysisReaction> getReactions(MainResource resource) {
+        load();
         Set<AnalysisReaction> rtn = reactions.getElements(resource);
         if (rtn == null) {
             rtn = new HashSet<>();
@@ -592,6 +790,7 @@ public class PathwayNodeData {
     }
 
     public List<ExternalAnalysisReaction> getExternalReactions(boolean importableOnly) {
+        load();
         Map<Long, ExternalAnalysisReaction> map = new HashMap<>();
         for (MainResource mr : reactions.keySet()) {
             if (!importableOnly || !mr.isAuxMainResource()) {
@@ -635,15 +834,18 @@ public class PathwayNodeData {
     }
 
     public Integer getReactionsFound() {
-        return this.getReactions().size();
+        if (lazy != null) return getStoredCounter(false).foundReactions;
+        return getHits().getReactionsFound(false);
     }
 
     public Integer getReactionsFound(boolean importableOnly) {
-        return this.getReactions(importableOnly).size();
+        if (lazy != null) return getStoredCounter(importableOnly).foundReactions;
+        return getHits().getReactionsFound(importableOnly);
     }
 
     public Integer getReactionsFound(MainResource resource) {
-        return this.getReactions(resource).size();
+        if (lazy != null) return getStoredCounter(resource).foundReactions;
+        return getHits().getReactionsFound(resource);
     }
 
     public Double getReactionsRatio() {
@@ -667,6 +869,7 @@ public class PathwayNodeData {
     }
 
     public boolean hasResult() {
+        load();
         return !foundTotal.isEmpty();
 //        return !entities.isEmpty() || !interactors.isEmpty();
     }
@@ -751,6 +954,7 @@ public class PathwayNodeData {
         combinedResult.interactorsRatio = this.combinedResult.totalFound / speciesData.getEntitiesAndInteractorsCount().doubleValue();
         importableResult.interactorsRatio = this.importableResult.totalFound / speciesData.getEntitiesAndInteractorsCount().doubleValue();
         foundTotal = new MapSet<>();
+        hits = null;
     }
 
     public void setResultStatistics(Map<MainResource, Integer> sampleSizePerResource, Integer notFound, boolean includeInteractors) {
@@ -775,6 +979,106 @@ public class PathwayNodeData {
 
         setAggregatingCounterStatistics(combinedResult, sampleSizePerResource, notFound, includeInteractors, false);
         setAggregatingCounterStatistics(importableResult, sampleSizePerResource, notFound, includeInteractors, true);
+
+        setExpressionValuesAvg();
+    }
+
+    /**
+     * Calculates the expression values averages for all the counters in one pass once the analysis has finished,
+     * so they are not calculated again every time the result is filtered or paginated
+     */
+    private void setExpressionValuesAvg() {
+        Set<MainIdentifier> mainIdentifiers = entities.values();
+        int max = 0;
+        for (MainIdentifier mainIdentifier : mainIdentifiers) {
+            max = Math.max(max, mainIdentifier.getValue().getExpValues().length);
+        }
+        for (InteractorIdentifier interactorIdentifier : interactors.values()) {
+            max = Math.max(max, interactorIdentifier.getExpValues().length);
+        }
+        final int columns = max;
+        if (columns == 0) {
+            //Not an expression analysis
+            combinedResult.exp = importableResult.exp = ExpressionValues.EMPTY;
+            for (Counter counter : entitiesResult.values()) counter.exp = ExpressionValues.EMPTY;
+            return;
+        }
+
+        //As in calculateAverage, an identifier is only taken into account once per counter
+        ExpressionAccumulator combined = new ExpressionAccumulator(columns);
+        ExpressionAccumulator importable = new ExpressionAccumulator(columns);
+        Map<MainResource, ExpressionAccumulator> perResource = new HashMap<>();
+        for (MainIdentifier mainIdentifier : mainIdentifiers) {
+            MainResource resource = mainIdentifier.getResource();
+            AnalysisIdentifier identifier = mainIdentifier.getValue();
+            combined.add(identifier);
+            if (!resource.isAuxMainResource()) importable.add(identifier);
+            perResource.computeIfAbsent(resource, r -> new ExpressionAccumulator(columns)).add(identifier);
+        }
+        for (MainIdentifier mainIdentifier : interactors.keySet()) {
+            MainResource resource = mainIdentifier.getResource();
+            for (InteractorIdentifier identifier : interactors.getElements(mainIdentifier)) {
+                combined.add(identifier);
+                if (!resource.isAuxMainResource()) importable.add(identifier);
+                perResource.computeIfAbsent(resource, r -> new ExpressionAccumulator(columns)).add(identifier);
+            }
+        }
+
+        combinedResult.exp = combined.getAverage();
+        importableResult.exp = importable.getAverage();
+        for (Map.Entry<MainResource, Counter> entry : entitiesResult.entrySet()) {
+            ExpressionAccumulator accumulator = perResource.get(entry.getKey());
+            entry.getValue().exp = accumulator != null ? accumulator.getAverage() : ExpressionValues.EMPTY;
+        }
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output) {
+        load();
+        kryo.writeObject(output, foundTotal);
+        kryo.writeObject(output, entities);
+        kryo.writeObject(output, reactions);
+        kryo.writeObject(output, interactors);
+        output.writeVarInt(entitiesResult.size(), true);
+        for (Map.Entry<MainResource, Counter> entry : entitiesResult.entrySet()) {
+            kryo.writeObject(output, entry.getKey());
+            entry.getValue().write(kryo, output);
+        }
+        combinedResult.write(kryo, output);
+        importableResult.write(kryo, output);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void read(Kryo kryo, Input input) {
+        this.foundTotal = kryo.readObject(input, MapSet.class);
+        this.entities = kryo.readObject(input, MapSet.class);
+        this.reactions = kryo.readObject(input, MapSet.class);
+        this.interactors = kryo.readObject(input, MapSet.class);
+        int size = input.readVarInt(true);
+        this.entitiesResult = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            MainResource resource = kryo.readObject(input, MainResource.class);
+            Counter counter = new Counter();
+            counter.read(kryo, input);
+            this.entitiesResult.put(resource, counter);
+        }
+        this.combinedResult = new Counter();
+        this.combinedResult.read(kryo, input);
+        this.importableResult = new Counter();
+        this.importableResult.read(kryo, input);
+    }
+
+    private static class ExpressionAccumulator extends ExpressionValues.Accumulator {
+        private final Set<AnalysisIdentifier> seen = new HashSet<>();
+
+        ExpressionAccumulator(int columns) {
+            super(columns);
+        }
+
+        void add(AnalysisIdentifier identifier) {
+            if (seen.add(identifier)) add(identifier.getExpValues());
+        }
     }
 
     private void setAggregatingCounterStatistics(Counter counter, Map<MainResource, Integer> sampleSizePerResource, Integer notFound, boolean includeInteractors, boolean importableOnly) {
@@ -0,0 +1,141 @@
+package org.reactome.server.analysis.core.model;
+
+import org.reactome.server.analysis.core.model.resource.MainResource;
+import org.reactome.server.analysis.core.util.SparseBitSet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Primitive counters for the elements found in a pathway. Every element is interned in the IdentifierDictionary
+ * and recorded in a bitset, so the found counters are the cardinality of the corresponding bitset instead of
+ * the size of a set that has to be created every time.
+ * <p>
+ * PLEASE NOTE
+ * Entities are counted per identifier (no matter the main resource) for the combined and importable results,
+ * while the "entities and interactors" counter is the sum of the ones for each main resource (as it was done
+ * by PathwayNodeData)
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+class PathwayNodeHits {
+
+    class Hits {
+        SparseBitSet entities = new SparseBitSet();
+        SparseBitSet interactors = new SparseBitSet();
+        SparseBitSet reactions = new SparseBitSet();
+        //Entities and interactors together (main identifiers and interactors accessions)
+        SparseBitSet found = new SparseBitSet();
+
+        void addAll(Hits other) {
+            entities.or(other.entities);
+            interactors.or(other.interactors);
+            reactions.or(other.reactions);
+            found.or(other.found);
+        }
+    }
+
+    private final IdentifierDictionary dictionary;
+
+    private Map<MainResource, Hits> resourceHits = new HashMap<>();
+    private Hits combinedHits = new Hits();
+    private Hits importableHits = new Hits();
+
+    PathwayNodeHits(IdentifierDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    IdentifierDictionary getDictionary() {
+        return dictionary;
+    }
+
+    void addEntity(MainResource resource, String identifier) {
+        int id = dictionary.getIdentifier(identifier);
+        Hits hits = getOrCreateHits(resource);
+        hits.entities.add(id);
+        hits.found.add(id);
+        combinedHits.entities.add(id);
+        if (!resource.isAuxMainResource()) importableHits.entities.add(id);
+    }
+
+    void addInteractor(MainResource resource, String mapsTo) {
+        int id = dictionary.getIdentifier(mapsTo);
+        Hits hits = getOrCreateHits(resource);
+        hits.interactors.add(id);
+        hits.found.add(id);
+        combinedHits.interactors.add(id);
+        if (!resource.isAuxMainResource()) importableHits.interactors.add(id);
+    }
+
+    void addReactions(MainResource resource, Set<AnalysisReaction> reactions) {
+        if (reactions == null || reactions.isEmpty()) return;
+        Hits hits = getOrCreateHits(resource);
+        boolean importable = !resource.isAuxMainResource();
+        for (AnalysisReaction reaction : reactions) {
+            int id = dictionary.getReaction(reaction);
+            hits.reactions.add(id);
+            combinedHits.reactions.add(id);
+            if (importable) importableHits.reactions.add(id);
+        }
+    }
+
+    /**
+     * Adds all the elements found in other (the ids have to come from the same dictionary)
+     *
+     * @param other the hits to be added to this object
+     */
+    void addAll(PathwayNodeHits other) {
+        for (Map.Entry<MainResource, Hits> entry : other.resourceHits.entrySet()) {
+            getOrCreateHits(entry.getKey()).addAll(entry.getValue());
+        }
+        combinedHits.addAll(other.combinedHits);
+        importableHits.addAll(other.importableHits);
+    }
+
+    int getEntitiesFound(boolean importableOnly) {
+        return (importableOnly ? importableHits : combinedHits).entities.cardinality();
+    }
+
+    int getEntitiesFound(MainResource resource) {
+        Hits hits = resourceHits.get(resource);
+        return hits == null ? 0 : hits.entities.cardinality();
+    }
+
+    int getInteractorsFound(boolean importableOnly) {
+        return (importableOnly ? importableHits : combinedHits).interactors.cardinality();
+    }
+
+    int getInteractorsFound(MainResource resource) {
+        Hits hits = resourceHits.get(resource);
+        return hits == null ? 0 : hits.interactors.cardinality();
+    }
+
+    int getReactionsFound(boolean importableOnly) {
+        return (importableOnly ? importableHits : combinedHits).reactions.cardinality();
+    }
+
+    int getReactionsFound(MainResource resource) {
+        Hits hits = resourceHits.get(resource);
+        return hits == null ? 0 : hits.reactions.cardinality();
+    }
+
+    int getEntitiesAndInteractorsFound(boolean importableOnly) {
+        int rtn = 0;
+        for (Map.Entry<MainResource, Hits> entry : resourceHits.entrySet()) {
+            if (!importableOnly || !entry.getKey().isAuxMainResource()) {
+                rtn += entry.getValue().found.cardinality();
+            }
+        }
+        return rtn;
+    }
+
+    int getEntitiesAndInteractorsFound(MainResource resource) {
+        Hits hits = resourceHits.get(resource);
+        return hits == null ? 0 : hits.found.cardinality();
+    }
+
+    private Hits getOrCreateHits(MainResource resource) {
+        return resourceHits.computeIfAbsent(resource, r -> new Hits());
+    }
+}
@@ -1,5 +1,8 @@
 package org.reactome.server.analysis.core.model;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import org.reactome.server.analysis.core.model.identifier.Identifier;
 import org.reactome.server.analysis.core.model.identifier.InteractorIdentifier;
 import org.reactome.server.analysis.core.model.identifier.MainIdentifier;
@@ -17,6 +20,16 @@ public class PathwayRoot extends PathwayNode {
         this.pathwayHierarchy = pathwayHierarchy;
     }
 
+    private PathwayRoot(PathwayRoot node, PathwayNodeData data) {
+        super(node, data);
+        this.pathwayHierarchy = node.pathwayHierarchy;
+    }
+
+    @Override
+    protected PathwayNode getAnalysisNode() {
+        return new PathwayRoot(this, new PathwayNodeData(this.getPathwayNodeData()));
+    }
+
     public PathwayHierarchy getPathwayHierarchy() {
         return pathwayHierarchy;
     }
@@ -37,4 +50,16 @@ public class PathwayRoot extends PathwayNode {
         super.processInteractor(identifier, mainIdentifier, reactions);
         this.pathwayHierarchy.processInteractor(identifier, mainIdentifier, reactions);
     }
+
+    @Override
+    public void write(Kryo kryo, Output output) {
+        super.write(kryo, output);
+        kryo.writeObjectOrNull(output, pathwayHierarchy, PathwayHierarchy.class);
+    }
+
+    @Override
+    public void read(Kryo kryo, Input input) {
+        super.read(kryo, input);
+        this.pathwayHierarchy = kryo.readObjectOrNull(input, PathwayHierarchy.class);
+    }
 }
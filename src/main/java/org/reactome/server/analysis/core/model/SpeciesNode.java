@@ -13,6 +13,9 @@ public class SpeciesNode {
     private String taxID;
     private String name;
 
+    //Ordinal + 1, so 0 (the default value even when the object is created by the deserialiser) means not assigned yet
+    private transient int ordinal = 0;
+
     protected SpeciesNode(Long speciesID, String taxId, String name) {
         this.speciesID = speciesID;
         this.taxID = taxId;
@@ -31,6 +34,18 @@ public class SpeciesNode {
         return name;
     }
 
+    /**
+     * Returns a small number that identifies the species in this execution (the same for equal species), so
+     * the species can be used as an array index. It is NOT kept between executions
+     *
+     * @return the ordinal of the species
+     */
+    public int getOrdinal() {
+        int rtn = ordinal;
+        if (rtn == 0) ordinal = rtn = SpeciesNodeFactory.getOrdinal(this) + 1;
+        return rtn - 1;
+    }
+
     public boolean isHuman(){
         return this.speciesID.equals(SpeciesNodeFactory.HUMAN_DB_ID);
     }
@@ -3,8 +3,9 @@ package org.reactome.server.analysis.core.model;
 import org.reactome.server.analysis.core.result.external.ExternalSpeciesNode;
 import org.reactome.server.graph.domain.model.Species;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
@@ -15,26 +16,23 @@ public abstract class SpeciesNodeFactory {
     public static String HUMAN_TAX_ID = "9606";
     public static String HUMAN_STR = "Homo sapiens";
 
-    private static Map<Long, SpeciesNode> speciesMap = new HashMap<>();
+    //Accessed by concurrent analysis (and data loading) threads
+    private static final Map<Long, SpeciesNode> speciesMap = new ConcurrentHashMap<>();
+
+    //Small consecutive numbers assigned to the species on demand (see SpeciesNode.getOrdinal)
+    private static final Map<Long, Integer> ordinals = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextOrdinal = new AtomicInteger();
 
     public static SpeciesNode getSpeciesNode(Long speciesID, String taxID, String name) {
-        SpeciesNode speciesNode = speciesMap.get(speciesID);
-        if (speciesNode == null) {
-            speciesNode = new SpeciesNode(speciesID, taxID, name);
-            speciesMap.put(speciesID, speciesNode);
-        }
-        return speciesNode;
+        return speciesMap.computeIfAbsent(speciesID, id -> new SpeciesNode(id, taxID, name));
     }
 
     public static SpeciesNode getSpeciesNode(Species s) {
-        SpeciesNode speciesNode = speciesMap.get(s.getDbId());
-        if (speciesNode == null) {
-            try {
-                speciesNode = new SpeciesNode(s.getDbId(), s.getTaxId(), s.getDisplayName());
-                speciesMap.put(s.getDbId(), speciesNode);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        SpeciesNode speciesNode = null;
+        try {
+            speciesNode = speciesMap.computeIfAbsent(s.getDbId(), id -> new SpeciesNode(id, s.getTaxId(), s.getDisplayName()));
+        } catch (Exception e) {
+            e.printStackTrace();
         }
         return speciesNode;
     }
@@ -43,6 +41,11 @@ public abstract class SpeciesNodeFactory {
         return getSpeciesNode(species.getSpeciesID(), species.getTaxID(), species.getName());
     }
 
+    static int getOrdinal(SpeciesNode species) {
+        //The mapping function is applied at most once per species so no ordinal is skipped or repeated
+        return ordinals.computeIfAbsent(species.getSpeciesID(), id -> nextOrdinal.getAndIncrement());
+    }
+
     public static SpeciesNode getHumanNode() {
         return new SpeciesNode(HUMAN_DB_ID, HUMAN_TAX_ID, HUMAN_STR);
     }
@@ -1,8 +1,10 @@
 package org.reactome.server.analysis.core.model;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
 
 /**
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
@@ -13,6 +15,7 @@ public class UserData {
     String inputMD5;
     ExpressionBoundaries expressionBoundaries;
     List<String> warningMessages;
+    private String contentKey;
 
     public UserData(List<String> columnNames, Set<AnalysisIdentifier> identifiers, String inputMD5) {
         this.columnNames = columnNames;
@@ -57,6 +60,52 @@ public class UserData {
         return inputMD5;
     }
 
+    /**
+     * Returns the MD5 of the parsed content (column names, identifiers and their expression values) instead of
+     * the one of the raw input, so inputs that only differ in the format (delimiters, spaces, empty lines or the
+     * order of the identifiers) have the same key
+     *
+     * @return the MD5 of the parsed content
+     */
+    public synchronized String getContentKey() {
+        if (contentKey == null) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5 algorithm not available", e);
+            }
+            if (columnNames != null) {
+                for (String columnName : columnNames) update(digest, columnName);
+            }
+            digest.update((byte) 1); //Separates the column names from the identifiers
+            List<AnalysisIdentifier> sorted = new ArrayList<>(identifiers);
+            Collections.sort(sorted);
+            ByteBuffer value = ByteBuffer.allocate(Long.BYTES);
+            for (AnalysisIdentifier identifier : sorted) {
+                update(digest, identifier.getId());
+                double[] values = identifier.getExpValues();
+                value.clear();
+                digest.update(value.putLong(values.length).array());
+                for (double exp : values) {
+                    value.clear();
+                    digest.update(value.putLong(Double.doubleToLongBits(exp)).array());
+                }
+            }
+            StringBuilder md5 = new StringBuilder(32);
+            for (byte b : digest.digest()) {
+                md5.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            contentKey = md5.toString();
+        }
+        return contentKey;
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
     public List<String> getWarningMessages(){
         return warningMessages;
     }
@@ -1,12 +1,16 @@
 package org.reactome.server.analysis.core.model.identifier;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import org.reactome.server.analysis.core.model.AnalysisIdentifier;
 import org.reactome.server.analysis.core.model.resource.Resource;
 
 /**
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
  */
-public abstract class Identifier<R extends Resource> {
+public abstract class Identifier<R extends Resource> implements KryoSerializable {
     R resource;
     AnalysisIdentifier value;
 
@@ -52,4 +56,17 @@ public abstract class Identifier<R extends Resource> {
     public String toString() {
         return resource.getName() + ":" + value.getId();
     }
+
+    @Override
+    public void write(Kryo kryo, Output output) {
+        kryo.writeClassAndObject(output, resource);
+        kryo.writeClassAndObject(output, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void read(Kryo kryo, Input input) {
+        this.resource = (R) kryo.readClassAndObject(input);
+        this.value = (AnalysisIdentifier) kryo.readClassAndObject(input);
+    }
 }
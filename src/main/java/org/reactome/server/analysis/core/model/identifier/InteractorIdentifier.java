@@ -1,5 +1,8 @@
 package org.reactome.server.analysis.core.model.identifier;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import org.reactome.server.analysis.core.model.AnalysisIdentifier;
 
 import java.util.Objects;
@@ -22,7 +25,7 @@ public class InteractorIdentifier extends AnalysisIdentifier {
     }
 
     public InteractorIdentifier(AnalysisIdentifier identifier) {
-        super(identifier.getId(), identifier.getExp());
+        super(identifier.getId(), identifier.getExpValues());
     }
 
     public String getMapsTo() {
@@ -42,4 +45,16 @@ public class InteractorIdentifier extends AnalysisIdentifier {
     public int hashCode() {
         return Objects.hash(super.hashCode(), mapsTo);
     }
+
+    @Override
+    public void write(Kryo kryo, Output output) {
+        super.write(kryo, output);
+        output.writeString(mapsTo);
+    }
+
+    @Override
+    public void read(Kryo kryo, Input input) {
+        super.read(kryo, input);
+        this.mapsTo = input.readString();
+    }
 }
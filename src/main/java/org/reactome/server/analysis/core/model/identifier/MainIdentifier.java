@@ -4,6 +4,7 @@ import org.reactome.server.analysis.core.model.AnalysisIdentifier;
 import org.reactome.server.analysis.core.model.resource.MainResource;
 import org.reactome.server.analysis.core.model.resource.ResourceFactory;
 import org.reactome.server.analysis.core.result.external.ExternalMainIdentifier;
+import org.reactome.server.analysis.core.util.ExpressionValues;
 
 import java.util.List;
 
@@ -16,19 +17,27 @@ public class MainIdentifier extends Identifier<MainResource> {
         super(resource, identifier);
     }
 
-    public MainIdentifier(MainResource resource, String identifier, List<Double> exp){
+    public MainIdentifier(MainResource resource, String identifier, double[] exp){
         super(resource, new AnalysisIdentifier(identifier, exp));
     }
 
+    public MainIdentifier(MainResource resource, String identifier, List<Double> exp){
+        this(resource, identifier, ExpressionValues.toArray(exp));
+    }
+
     //Creates a clone
     public MainIdentifier(MainIdentifier mainIdentifier){
         super(mainIdentifier.resource, new AnalysisIdentifier(mainIdentifier.value));
     }
 
-    public MainIdentifier(ExternalMainIdentifier mainIdentifier, List<Double> exp){
+    public MainIdentifier(ExternalMainIdentifier mainIdentifier, double[] exp){
         super(ResourceFactory.getMainResource(mainIdentifier.getResource()), new AnalysisIdentifier(mainIdentifier.getId(), exp));
     }
 
+    public MainIdentifier(ExternalMainIdentifier mainIdentifier, List<Double> exp){
+        this(mainIdentifier, ExpressionValues.toArray(exp));
+    }
+
     public boolean is(ResourceFactory.MAIN type){
         return this.is(type.name());
     }
@@ -2,6 +2,7 @@ package org.reactome.server.analysis.core.model.resource;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
@@ -29,32 +30,29 @@ public abstract class ResourceFactory {
         equivalences.put("DOCK_BLASTER", "PROTEIN_DATA_BANK");
     }
 
-    //Cache containing the previously created resource for a given name
-    private static Map<String, Resource> resourceMap = new HashMap<>();
+    //Cache containing the previously created resource for a given name (accessed by concurrent threads)
+    private static final Map<String, Resource> resourceMap = new ConcurrentHashMap<>();
 
     public static Resource getResource(String name){
         name = name.toUpperCase().replaceAll("\\s", "_").trim();
         if(equivalences.containsKey(name)){
             name = equivalences.get(name);
         }
-        Resource resource = resourceMap.get(name);
-        if(resource==null){
-            for (MAIN main : MAIN.values()) {
-                if(name.equals(main.name())){
-                    resource = new MainResource(name);
-                }
-            }
-            for (AUX aux : AUX.values()) {
-                if(name.equals(aux.name())){
-                    resource = new MainResource(name, true);
-                }
+        return resourceMap.computeIfAbsent(name, ResourceFactory::createResource);
+    }
+
+    private static Resource createResource(String name){
+        for (MAIN main : MAIN.values()) {
+            if(name.equals(main.name())){
+                return new MainResource(name);
             }
-            if(resource==null){
-                resource = new Resource(name);
+        }
+        for (AUX aux : AUX.values()) {
+            if(name.equals(aux.name())){
+                return new MainResource(name, true);
             }
-            resourceMap.put(name, resource);
         }
-        return resource;
+        return new Resource(name);
     }
 
     public static MainResource getMainResource(String name){
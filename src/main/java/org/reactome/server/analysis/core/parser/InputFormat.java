@@ -8,8 +8,10 @@ import org.reactome.server.analysis.core.parser.response.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.*;
-import java.util.regex.Pattern;
 
 /**
  * Parser for AnalysisData tool
@@ -30,13 +32,6 @@ public class InputFormat {
     // Regex for parsing the content when we do not have the header, trying to build a default one
     private static final String NO_HEADER_DEFAULT_REGEX = "[\\s,;]+";
 
-    // Regex used to split the content of a single line file
-    // Note: using + instead of * avoids replacing empty Strings therefore may speed up the process.
-    private static final String ONE_LINE_CONTENT_SPLIT_REGEX = "[\\s,;]+";
-
-    // Regex used to split the content of a multiple line file
-    private static final String MULTI_LINE_CONTENT_SPLIT_REGEX = "[\\s,;]+";
-
     private List<String> headerColumnNames = new LinkedList<>();
     private final Set<AnalysisIdentifier> analysisIdentifierSet = new LinkedHashSet<>();
     private boolean hasHeader = false;
@@ -50,6 +45,22 @@ public class InputFormat {
     // Ignoring the initial blank lines and start parsing from the first valid line.
     private int startOnLine = 0;
 
+    // Streaming state: lines kept until knowing whether it is a one line file
+    private List<String> firstLines = new ArrayList<>();
+    private String oneLine = "";
+    private int nonBlankLines = 0;
+    private boolean multiLine = false;
+    private int lineNumber = 0;
+    // Empty lines are only reported when followed by other lines
+    private int pendingEmptyLines = 0;
+    private int firstPendingEmptyLine = 0;
+
+    // Exactly representable powers of ten
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
     /**
      * This is the core method. Start point for calling other features.
      * It is split in header and data.
@@ -59,26 +70,54 @@ public class InputFormat {
      * @param input file already converted into a String.
      */
     public void parseData(String input) throws ParserException {
-        long start = System.currentTimeMillis();
-
-        String clean = input.trim();
-        if (clean.equalsIgnoreCase("")) {
-            // no data to be analysed
-            errorResponses.add(Response.getMessage(Response.EMPTY_FILE));
-        } else {
-            // Split lines
-            String[] lines = input.split("\r?\n"); // Do not add + here. It will remove empty lines
+        try {
+            parseData(new StringReader(input));
+        } catch (IOException e) {
+            //Nothing to do here, a StringReader does not throw IOException
+            logger.error(e.getMessage(), e);
+        }
+    }
 
-            // check and parser whether one line file is present.
-            boolean isOneLine = isOneLineFile(lines);
-            if (!isOneLine) {
-                // Prepare header
-                analyseHeaderColumns(lines);
+    /**
+     * Streaming version of the parser. The input is read only once, line by line, and the content lines are
+     * tokenized in place (no regular expressions and no intermediate Strings per line) so only the parsed
+     * identifiers are kept in memory.
+     * <p>
+     * Lines are split and interpreted exactly the same way it is done for the whole file in a String
+     * (split by "\r?\n" where the trailing empty lines are ignored).
+     * <p>
+     * ParserException is thrown only when there are errors.
+     *
+     * @param reader to read the file content from
+     */
+    public void parseData(Reader reader) throws ParserException, IOException {
+        long start = System.currentTimeMillis();
 
-                // Prepare content
-                analyseContent(lines);
+        char[] buffer = new char[8192];
+        StringBuilder line = new StringBuilder();
+        int n;
+        while ((n = reader.read(buffer)) != -1) {
+            for (int i = 0; i < n; i++) {
+                char c = buffer[i];
+                if (c == '\n') {
+                    if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') line.setLength(line.length() - 1);
+                    processLine(line);
+                    line.setLength(0);
+                } else {
+                    line.append(c);
+                }
+            }
+        }
+        processLine(line);
+
+        if (!multiLine) {
+            if (nonBlankLines == 0) {
+                // no data to be analysed
+                errorResponses.add(Response.getMessage(Response.EMPTY_FILE));
+            } else {
+                hasHeader = false;
+                analyseOneLineFile(oneLine);
             }
-
         }
 
         long end = System.currentTimeMillis();
@@ -88,46 +127,44 @@ public class InputFormat {
             logger.warn("Errors found while parsing analysis submitted data");
             throw new ParserException("Error while parsing your data", errorResponses);
         }
-
     }
 
     /**
      * ---- FOR VERY SPECIFIC CASES, BUT VERY USEFUL FOR REACTOME ----
-     * There are cases where the user inputs a file with one single line to be analysed
-     * This method performs a quick view into the file and count the lines. It stops if file has more than one line.
+     * There are cases where the user inputs a file with one single line to be analysed.
+     * Until a second non blank line is found, the lines are kept aside (they are blank except one) because
+     * the file might be a one line file. As soon as the second non blank line appears, the header is analysed
+     * and the kept lines, as well as the following ones, are analysed as content.
      * p.s empty lines are always ignored
-     * To avoid many iteration to the same file, during counting lines the main attributes are being set and used in the
-     * analyse content method.
-     * This method ignores blank lines,spaces, tabs and so on.
      *
-     * @param input the file
-     * @return true if file has one line, false otherwise.
+     * @param line the current line (without the line break)
      */
-    private boolean isOneLineFile(String[] input) {
-        int countNonEmptyLines = 0;
-        String validLine = "";
-
-        for (String s : input) {
-            // Cleaning the line in other to eliminate blank or spaces spread in the file
-            String cleanLine = s.trim();
-            if (StringUtils.isNotEmpty(cleanLine) || StringUtils.isNotBlank(cleanLine)) {
-                countNonEmptyLines++;
-
+    private void processLine(CharSequence line) {
+        int i = lineNumber++;
+        if (multiLine) {
+            analyseContentLine(line, i);
+            return;
+        }
+        String aux = line.toString();
+        firstLines.add(aux);
+        if (!isBlank(aux, 0, aux.length())) {
+            if (++nonBlankLines == 1) {
                 // Line without parsing - otherwise we can't eliminate blank space and tabs spread in the file.
-                validLine = s;
+                oneLine = aux;
+            } else {
+                multiLine = true;
+
+                // Prepare header
+                analyseHeaderColumns(firstLines);
 
-                // We don't need to keep counting...
-                if (countNonEmptyLines > 1) {
-                    return false;
+                // Prepare content
+                if (hasHeader) startOnLine += 1;
+                for (int j = 0; j < firstLines.size(); j++) {
+                    analyseContentLine(firstLines.get(j), j);
                 }
+                firstLines = null;
             }
         }
-
-        hasHeader = false;
-
-        analyseOneLineFile(validLine);
-
-        return true;
     }
 
     /**
@@ -140,26 +177,22 @@ public class InputFormat {
     private void analyseOneLineFile(String line) {
         long start = System.nanoTime();
 
-        Pattern p = Pattern.compile(ONE_LINE_CONTENT_SPLIT_REGEX);
-
         // Line cannot start with # or //
         if (hasHeaderLine(line)) {
             errorResponses.add(Response.getMessage(Response.START_WITH_HASH));
             return;
         }
 
-        // Note that using String.replaceAll() will compile the regular expression each time you call it.
-        line = p.matcher(line).replaceAll(" ");
-
-        // StringTokenizer has more performance to offer than String.slit
-        StringTokenizer st = new StringTokenizer(line); //space is default delimiter.
-
-        int tokens = st.countTokens();
+        int tokens = countTokens(line, 0, line.length());
         if (tokens > 0) {
             headerColumnNames.add(DEFAULT_IDENTIFIER_HEADER);
-            while (st.hasMoreTokens()) {
-                AnalysisIdentifier rtn = new AnalysisIdentifier(st.nextToken().trim());
+            int pos = 0;
+            for (int t = 0; t < tokens; t++) {
+                while (isDelimiter(line.charAt(pos))) pos++;
+                int end = tokenEnd(line, pos, line.length());
+                AnalysisIdentifier rtn = new AnalysisIdentifier(line.substring(pos, end).trim());
                 analysisIdentifierSet.add(rtn);
+                pos = end;
             }
         }
 
@@ -171,18 +204,18 @@ public class InputFormat {
      * Analyse header based on the first line.
      * Headers must start with # or //
      *
-     * @param data is the file lines
+     * @param data is the first lines of the file
      */
-    private void analyseHeaderColumns(String[] data) {
+    private void analyseHeaderColumns(List<String> data) {
         long start = System.currentTimeMillis();
 
         // Verify in which line the file content starts. Some cases, file has a bunch of blank line in the firsts lines.
         // StartOnLine will be important in the content analysis. Having this attribute we don't to iterate and ignore
         // blank lines in the beginning.
         String headerLine = "";
-        for (int i = 0; i < data.length; i++) {
-            if (StringUtils.isNotEmpty(data[i])) {
-                headerLine = data[i];
+        for (int i = 0; i < data.size(); i++) {
+            if (StringUtils.isNotEmpty(data.get(i))) {
+                headerLine = data.get(i);
                 startOnLine = i;
                 break;
             }
@@ -256,58 +289,143 @@ public class InputFormat {
     }
 
     /**
-     * Analyse all the data itself.
-     * Replace any character like space, comma, semicolon, tab into a space and then replace split by space.
+     * Analyse one line of the data itself.
+     * Any character like space, comma, semicolon, tab is a delimiter between the columns.
+     * Empty lines are only reported when followed by more lines (trailing empty lines are ignored)
      *
-     * @param content line array
+     * @param line the content line
+     * @param i    the position of the line in the file (0 based)
      */
-    private void analyseContent(String[] content) {
-        long start = System.nanoTime();
-        if (hasHeader) startOnLine += 1;
-
-        Pattern p = Pattern.compile(MULTI_LINE_CONTENT_SPLIT_REGEX);
-
-        for (int i = startOnLine; i < content.length; ++i) {
-            String line = content[i].trim();
-            if (line.isEmpty()) {
-                warningResponses.add(Response.getMessage(Response.EMPTY_LINE, i + 1));
-                continue;
-            }
+    private void analyseContentLine(CharSequence line, int i) {
+        if (i < startOnLine) return;
+        if (line.length() == 0) {
+            if (pendingEmptyLines++ == 0) firstPendingEmptyLine = i;
+            return;
+        }
+        for (int j = 0; j < pendingEmptyLines; j++) {
+            warningResponses.add(Response.getMessage(Response.EMPTY_LINE, firstPendingEmptyLine + j + 1));
+        }
+        pendingEmptyLines = 0;
+
+        // Same as String.trim
+        int from = 0, to = line.length();
+        while (from < to && line.charAt(from) <= ' ') from++;
+        while (to > from && line.charAt(to - 1) <= ' ') to--;
+        if (from == to) {
+            warningResponses.add(Response.getMessage(Response.EMPTY_LINE, i + 1));
+            return;
+        }
 
-            // Note: that using String.replaceAll() will compile the regular expression each time you call it.
-            line = p.matcher(line).replaceAll(" ");
-
-            // StringTokenizer has more performance to offer than String.slit.
-            StringTokenizer st = new StringTokenizer(line); //space is default delimiter.
-
-            int tokens = st.countTokens();
-            if (tokens > 0) {
-                // analyse if each line has the same amount of columns as the threshold based on first line, otherwise an error will be reported.
-                if (thresholdColumn == tokens) {
-                    String first = st.nextToken();
-                    AnalysisIdentifier rtn = new AnalysisIdentifier(first);
-                    int j = 1;
-                    boolean validLine = true;
-                    while (st.hasMoreTokens()) {
-                        String token = st.nextToken().trim();
-                        Double parsedValue = parseValue(token);
-                        if (parsedValue != null) {
-                            rtn.add(parsedValue);
-                        } else {
-                            warningResponses.add(Response.getMessage(Response.INLINE_PROBLEM, i + 1, j + 1));
-                            validLine = false;
-                        }
-                        j++;
+        int tokens = countTokens(line, from, to);
+        if (tokens > 0) {
+            // analyse if each line has the same amount of columns as the threshold based on first line, otherwise an error will be reported.
+            if (thresholdColumn == tokens) {
+                int pos = from;
+                while (isDelimiter(line.charAt(pos))) pos++;
+                int end = tokenEnd(line, pos, to);
+                String id = line.subSequence(pos, end).toString();
+                double[] exp = new double[tokens - 1];
+                pos = end;
+                boolean validLine = true;
+                for (int j = 1; j < tokens; j++) {
+                    while (isDelimiter(line.charAt(pos))) pos++;
+                    end = tokenEnd(line, pos, to);
+                    try {
+                        exp[j - 1] = parseDouble(line, pos, end);
+                    } catch (NumberFormatException e) {
+                        warningResponses.add(Response.getMessage(Response.INLINE_PROBLEM, i + 1, j + 1));
+                        validLine = false;
                     }
-                    if(validLine) analysisIdentifierSet.add(rtn);
-                } else {
-                    errorResponses.add(Response.getMessage(Response.COLUMN_MISMATCH, i + 1, thresholdColumn, tokens));
+                    pos = end;
                 }
+                if (validLine) analysisIdentifierSet.add(new AnalysisIdentifier(id, exp));
+            } else {
+                errorResponses.add(Response.getMessage(Response.COLUMN_MISMATCH, i + 1, thresholdColumn, tokens));
             }
         }
+    }
 
-        long end = System.nanoTime();
-        logger.debug("Elapsed time on AnalyseContent: " + (end - start) + ".ms");
+    //Delimiters for the content: white spaces (as in the "\\s" regex), comma and semicolon
+    private static boolean isDelimiter(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r' || c == ',' || c == ';';
+    }
+
+    private static boolean isBlank(CharSequence line, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (line.charAt(i) > ' ') return false;
+        }
+        return true;
+    }
+
+    private static int countTokens(CharSequence line, int from, int to) {
+        int tokens = 0;
+        boolean inToken = false;
+        for (int i = from; i < to; i++) {
+            boolean delimiter = isDelimiter(line.charAt(i));
+            if (!delimiter && !inToken) tokens++;
+            inToken = !delimiter;
+        }
+        return tokens;
+    }
+
+    private static int tokenEnd(CharSequence line, int from, int to) {
+        int i = from;
+        while (i < to && !isDelimiter(line.charAt(i))) i++;
+        return i;
+    }
+
+    /**
+     * Parses the (trimmed) token without creating intermediate objects for the plain decimal numbers that
+     * can be converted exactly (up to 15 significant digits and a power of ten up to 22). Any other format
+     * is delegated to Double.parseDouble so the accepted values are the same as in parseValue
+     *
+     * @throws NumberFormatException if the token is not a number
+     */
+    static double parseDouble(CharSequence s, int from, int to) {
+        while (from < to && s.charAt(from) <= ' ') from++;
+        while (to > from && s.charAt(to - 1) <= ' ') to--;
+
+        int i = from;
+        boolean negative = false;
+        if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) negative = s.charAt(i++) == '-';
+        long mantissa = 0;
+        int digits = 0, exponent = 0;
+        boolean anyDigit = false;
+        for (; i < to && s.charAt(i) >= '0' && s.charAt(i) <= '9'; i++) {
+            anyDigit = true;
+            if (mantissa == 0 && s.charAt(i) == '0') continue;
+            mantissa = mantissa * 10 + (s.charAt(i) - '0');
+            digits++;
+            if (digits > 15) return Double.parseDouble(s.subSequence(from, to).toString());
+        }
+        if (i < to && s.charAt(i) == '.') {
+            for (i++; i < to && s.charAt(i) >= '0' && s.charAt(i) <= '9'; i++) {
+                anyDigit = true;
+                exponent--;
+                if (mantissa == 0 && s.charAt(i) == '0') continue;
+                mantissa = mantissa * 10 + (s.charAt(i) - '0');
+                digits++;
+                if (digits > 15) return Double.parseDouble(s.subSequence(from, to).toString());
+            }
+        }
+        if (anyDigit && i < to && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) negativeExp = s.charAt(i++) == '-';
+            int exp = 0;
+            boolean expDigit = false;
+            for (; i < to && s.charAt(i) >= '0' && s.charAt(i) <= '9' && exp < 1000; i++) {
+                expDigit = true;
+                exp = exp * 10 + (s.charAt(i) - '0');
+            }
+            if (!expDigit) i = -1; //Not valid, let Double.parseDouble decide
+            exponent += negativeExp ? -exp : exp;
+        }
+        if (!anyDigit || i != to || exponent < -22 || exponent > 22) {
+            return Double.parseDouble(s.subSequence(from, to).toString());
+        }
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
     }
 
     private static boolean hasHeaderLine(String line) {
@@ -11,10 +11,12 @@ import org.reactome.server.analysis.core.result.exception.DataFormatException;
 import org.reactome.server.analysis.core.result.external.ExternalAnalysisResult;
 import org.reactome.server.analysis.core.result.external.ExternalPathwayNodeSummary;
 import org.reactome.server.analysis.core.result.model.*;
+import org.reactome.server.analysis.core.util.ExpressionValues;
 import org.reactome.server.analysis.core.util.MapSet;
 import org.reactome.server.graph.domain.model.Species;
 
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
@@ -22,6 +24,10 @@ import java.util.*;
 public class AnalysisStoredResult {
     private static final Integer PAGE_SIZE = 20;
 
+    //Rough sizes (in bytes) of the objects kept in memory (only used to weight the results in the AnalysisResultCache)
+    private static final long PATHWAY_SIZE = 2048;       //Summary, node data and the counters of the resources
+    private static final long FOUND_ELEMENT_SIZE = 160;  //Map entry, identifiers and their strings
+
     private AnalysisSummary summary;
     private List<PathwayNodeSummary> pathways;
     private Set<AnalysisIdentifier> notFound;
@@ -30,6 +36,14 @@ public class AnalysisStoredResult {
     private List<SpeciesSummary> speciesSummary = new ArrayList<>();
     private List<String> warnings;
 
+    //Indexes of the pathways in the result (built when needed and discarded when the pathways are filtered)
+    private transient Map<String, PathwayNodeSummary> stIdIndex;
+    private transient Map<Long, PathwayNodeSummary> dbIdIndex;
+    //Memoized sorted orders of the pathways (shared with the copies of this result)
+    private transient SortedPathways sortedPathways;
+    //Provides the not found identifiers when the result has been read from a columnar result file (see ResultFile)
+    private transient volatile Supplier<Set<AnalysisIdentifier>> notFoundLoader;
+
     public AnalysisStoredResult(UserData userData, HierarchiesData data) {
         this.warnings = userData.getWarningMessages();
         this.notFound = data.getNotFound();
@@ -70,6 +84,45 @@ public class AnalysisStoredResult {
         setSpeciesSummary(speciesHits);
     }
 
+    /**
+     * Creates a result from the sections of a columnar result file. The not found identifiers are only
+     * read when needed
+     */
+    public AnalysisStoredResult(AnalysisSummary summary,
+                                List<PathwayNodeSummary> pathways,
+                                Supplier<Set<AnalysisIdentifier>> notFound,
+                                ExpressionSummary expressionSummary,
+                                List<ResourceSummary> resourceSummary,
+                                List<SpeciesSummary> speciesSummary,
+                                List<String> warnings) {
+        this.summary = summary;
+        this.pathways = pathways;
+        this.notFoundLoader = notFound;
+        this.expressionSummary = expressionSummary;
+        this.resourceSummary = resourceSummary;
+        this.speciesSummary = speciesSummary;
+        this.warnings = warnings;
+    }
+
+    /**
+     * Creates a copy of the result that can be filtered and sorted without modifying the original one.
+     * The pathways data, the not found identifiers and the expression summary are shared (read only)
+     * while the lists and the summaries (that are modified when filtering) belong to the copy
+     *
+     * @param result the result to be copied
+     */
+    public AnalysisStoredResult(AnalysisStoredResult result) {
+        this.summary = result.summary;
+        this.pathways = new ArrayList<>(result.pathways);
+        this.sortedPathways = result.getSortedPathways();
+        this.notFound = result.notFound;
+        this.notFoundLoader = result.notFoundLoader;
+        this.expressionSummary = result.expressionSummary;
+        result.resourceSummary.forEach(rs -> this.resourceSummary.add(new ResourceSummary(rs)));
+        result.speciesSummary.forEach(ss -> this.speciesSummary.add(new SpeciesSummary(ss)));
+        this.warnings = result.warnings;
+    }
+
     public void setHitPathways(List<PathwayNode> pathwayNodes) {
         //At the time we set the hit pathways, we also initialize resource summary
         Map<String, Integer> resourceHits = new HashMap<>();
@@ -90,6 +143,8 @@ public class AnalysisStoredResult {
             speciesHits.put(pathwayNode.getSpecies(), n + 1);
             this.pathways.add(new PathwayNodeSummary(pathwayNode));
         }
+        clearPathwayIndexes();
+        this.sortedPathways = null;
         setResourceSummary(resourceHits, total);
         setSpeciesSummary(speciesHits);
     }
@@ -205,22 +260,18 @@ public class AnalysisStoredResult {
     public Set<Long> getFoundReactions(List<String> pathwayIds, String resource, boolean importableOnly) {
         Set<Long> rtn = new HashSet<>();
         if (resource.toUpperCase().equals("TOTAL")) {
-            for (PathwayNodeSummary pathway : this.pathways) {
-                if (pathway.in(pathwayIds)) {
-                    for (AnalysisReaction reaction : pathway.getData().getReactions(importableOnly)) {
-                        rtn.add(reaction.getDbId());
-                    }
+            for (PathwayNodeSummary pathway : getPathways(pathwayIds)) {
+                for (AnalysisReaction reaction : pathway.getData().getReactions(importableOnly)) {
+                    rtn.add(reaction.getDbId());
                 }
             }
         } else {
             Resource r = ResourceFactory.getResource(resource);
             if (r instanceof MainResource) {
                 MainResource mainResource = (MainResource) r;
-                for (PathwayNodeSummary pathway : this.pathways) {
-                    if (pathway.in(pathwayIds)) {
-                        for (AnalysisReaction reaction : pathway.getData().getReactions(mainResource)) {
-                            rtn.add(reaction.getDbId());
-                        }
+                for (PathwayNodeSummary pathway : getPathways(pathwayIds)) {
+                    for (AnalysisReaction reaction : pathway.getData().getReactions(mainResource)) {
+                        rtn.add(reaction.getDbId());
                     }
                 }
             }
@@ -259,9 +310,37 @@ public class AnalysisStoredResult {
 //    }
 
     public Set<AnalysisIdentifier> getNotFound() {
+        Supplier<Set<AnalysisIdentifier>> loader = this.notFoundLoader;
+        if (loader != null) {
+            //The loader keeps what it reads so the copies of this result do not read it again
+            this.notFound = loader.get();
+            this.notFoundLoader = null;
+        }
         return notFound;
     }
 
+    /**
+     * Estimates the memory used by the result: the pathways and their found elements (also when they are
+     * still to be loaded from a result file) and the loaded not found identifiers
+     *
+     * @return the estimated size of the result in bytes
+     */
+    @JsonIgnore
+    public long getEstimatedSize() {
+        List<String> columns = expressionSummary != null ? expressionSummary.getColumnNames() : null;
+        long elementSize = FOUND_ELEMENT_SIZE + (columns != null ? 8L * columns.size() : 0L);
+        long elements = notFound != null ? notFound.size() : 0L;
+        for (PathwayNodeSummary pathway : this.pathways) {
+            PathwayNodeData data = pathway.getData();
+            elements += count(data.getEntitiesFound()) + count(data.getInteractorsFound()) + count(data.getReactionsFound());
+        }
+        return this.pathways.size() * PATHWAY_SIZE + elements * elementSize;
+    }
+
+    private static long count(Integer value) {
+        return value != null ? value : 0L;
+    }
+
     public List<IdentifierSummary> getNotFoundIdentifiers() {
         List<IdentifierSummary> notFound = new LinkedList<>();
         for (AnalysisIdentifier identifier : getNotFound()) {
@@ -271,24 +350,62 @@ public class AnalysisStoredResult {
     }
 
     public PathwayNodeSummary getPathway(String identifier) {
-        for (PathwayNodeSummary nodeSummary : this.pathways) {
-            if (nodeSummary.is(identifier)) {
-                return nodeSummary;
+        if (stIdIndex == null || dbIdIndex == null) indexPathways();
+        identifier = identifier.trim();
+        if (identifier.startsWith("R-")) {
+            return stIdIndex.get(identifier);
+        } else {
+            try {
+                return dbIdIndex.get(Long.valueOf(identifier));
+            } catch (NumberFormatException ex) {
+                return null;
             }
         }
-        return null;
     }
 
+    //Returns the pathways in the result for the given identifiers (no matter whether they are stId or dbId)
+    private Set<PathwayNodeSummary> getPathways(Collection<String> identifiers) {
+        Set<PathwayNodeSummary> rtn = new HashSet<>();
+        for (String identifier : identifiers) {
+            PathwayNodeSummary pathway = getPathway(identifier);
+            if (pathway != null) rtn.add(pathway);
+        }
+        return rtn;
+    }
+
+    private void indexPathways() {
+        Map<String, PathwayNodeSummary> stIdIndex = new HashMap<>();
+        Map<Long, PathwayNodeSummary> dbIdIndex = new HashMap<>();
+        for (PathwayNodeSummary pathway : this.pathways) {
+            stIdIndex.putIfAbsent(pathway.getStId(), pathway);
+            dbIdIndex.putIfAbsent(pathway.getPathwayId(), pathway);
+        }
+        this.stIdIndex = stIdIndex;
+        this.dbIdIndex = dbIdIndex;
+    }
+
+    private void clearPathwayIndexes() {
+        this.stIdIndex = null;
+        this.dbIdIndex = null;
+    }
+
+    /**
+     * The pathways are no longer sorted in place by the requests, so they are returned sorted by the default
+     * criteria (entities p-value of the combined result in ascending order) no matter the previous requests
+     *
+     * @return a read only view of the pathways sorted by the default criteria
+     */
     public List<PathwayNodeSummary> getPathways() {
-        return pathways;
+        return getSortedPathways(null, null, null);
     }
 
     public int getPage(String pathwayId, String sortBy, String order, String resource, Integer pageSize) {
-        Collections.sort(this.pathways, getComparator(sortBy, order, resource));
+        PathwayNodeSummary target = getPathway(pathwayId);
+        if (target == null) return -1;
+        List<PathwayNodeSummary> sorted = getSortedPathways(sortBy, order, resource);
         if (pageSize == null) pageSize = PAGE_SIZE;
-        for (int i = 0; i < this.pathways.size(); i++) {
-            PathwayNodeSummary pathway = this.pathways.get(i);
-            if (pathway.is(pathwayId)) {
+        for (int i = 0; i < sorted.size(); i++) {
+            if (sorted.get(i) == target) {
                 return ((int) Math.floor(i / pageSize)) + 1;
             }
         }
@@ -359,6 +476,7 @@ public class AnalysisStoredResult {
             }
         }
         this.pathways = pathways;
+        clearPathwayIndexes();
         setResourceSummaryFiltered(resourceHits, resourceTotal);
         setSpeciesSummaryFiltered(speciesHits);
         return this;
@@ -387,6 +505,7 @@ public class AnalysisStoredResult {
             }
         }
         this.pathways = pathways;
+        clearPathwayIndexes();
         setResourceSummaryFiltered(resourceHits, resourceTotal);
         return this;
     }
@@ -407,17 +526,17 @@ public class AnalysisStoredResult {
 
     public AnalysisResult getResultSummary(String sortBy, String order, String resource, Integer pageSize, Integer page, boolean importableOnly) {
 //        this.filterPathways(species, resource, pValue, includeDisease,  min, max);
-        Collections.sort(this.pathways, getComparator(sortBy, order, resource));
+        List<PathwayNodeSummary> sorted = getSortedPathways(sortBy, order, resource);
         if (pageSize == null) pageSize = PAGE_SIZE;
         List<PathwaySummary> rtn = new LinkedList<>();
         if (page != null && page > 0) { // && this.pathways.size()>(pageSize*(page-1))){
-            int end = (pageSize * page) > this.pathways.size() ? this.pathways.size() : (pageSize * page);
+            int end = (pageSize * page) > sorted.size() ? sorted.size() : (pageSize * page);
             for (int i = pageSize * (page - 1); i < end; ++i) {
-                PathwayNodeSummary pathwayNodeSummary = this.pathways.get(i);
+                PathwayNodeSummary pathwayNodeSummary = sorted.get(i);
                 rtn.add(new PathwaySummary(pathwayNodeSummary, resource.toUpperCase(), summary.isInteractors(), importableOnly));
             }
         } else {
-            for (PathwayNodeSummary pathway : this.pathways) {
+            for (PathwayNodeSummary pathway : sorted) {
                 rtn.add(new PathwaySummary(pathway, resource.toUpperCase(), summary.isInteractors(), importableOnly));
             }
         }
@@ -432,11 +551,16 @@ public class AnalysisStoredResult {
         return warnings;
     }
 
+    public void setWarnings(List<String> warnings) {
+        this.warnings = warnings;
+    }
+
     public List<PathwaySummary> filterByPathways(List<String> pathwayIds, String resource, boolean importableOnly) {
         this.filterPathways(resource, importableOnly);
         List<PathwaySummary> rtn = new LinkedList<>();
-        for (PathwayNodeSummary pathway : this.pathways) {
-            if (pathway.in(pathwayIds)) {
+        Set<PathwayNodeSummary> selected = getPathways(pathwayIds);
+        for (PathwayNodeSummary pathway : getPathways()) {
+            if (selected.contains(pathway)) {
                 rtn.add(new PathwaySummary(pathway, resource.toUpperCase(), summary.isInteractors(), importableOnly));
             }
         }
@@ -452,23 +576,23 @@ public class AnalysisStoredResult {
             Resource r = ResourceFactory.getResource(resource);
 
             this.filterPathways(resource, importableOnly);
-            Collections.sort(this.pathways, getComparator(sortBy, order, resource));
             List<PathwayBase> rtn = new LinkedList<>();
             Double min = null, max = null;
 
-            for (PathwayNodeSummary pathway : this.pathways) {
+            for (PathwayNodeSummary pathway : getSortedPathways(sortBy, order, resource)) {
                 if (pathway.getSpecies().getSpeciesID().equals(speciesId)) {
                     PathwaySummary aux = new PathwaySummary(pathway, resource.toUpperCase(), summary.isInteractors(), importableOnly);
                     rtn.add(new PathwayBase(aux));
 
-                    List<Double> exps = new LinkedList<>();
+                    double[] exps = ExpressionValues.EMPTY;
                     if (r instanceof MainResource) {
-                        exps = pathway.getData().getExpressionValuesAvg((MainResource) r);
+                        exps = pathway.getData().getExpValuesAvg((MainResource) r);
                     } else if (resource.equals("TOTAL")) {
-                        exps = pathway.getData().getExpressionValuesAvg();
+                        exps = pathway.getData().getExpValuesAvg();
                     }
 
-                    for (Double exp : exps) {
+                    for (double exp : exps) {
+                        if (Double.isNaN(exp)) continue;
                         if (min == null || exp < min) {
                             min = exp;
                         } else if (max == null || exp > max) {
@@ -515,23 +639,20 @@ public class AnalysisStoredResult {
         return rtn;
     }
 
-    private Comparator<PathwayNodeSummary> getComparator(String sortBy, String order, String resource) {
+    //Returns a read only view of the pathways sorted by the given criteria (this.pathways is NOT sorted)
+    private List<PathwayNodeSummary> getSortedPathways(String sortBy, String order, String resource) {
         AnalysisSortType sortType = AnalysisSortType.getSortType(sortBy);
+        MainResource mr = null;
         if (resource != null) {
             Resource r = ResourceFactory.getResource(resource);
-            if (r instanceof MainResource) {
-                MainResource mr = (MainResource) r;
-                if (order != null && order.toUpperCase().equals("DESC")) {
-                    return Collections.reverseOrder(ComparatorFactory.getComparator(sortType, mr));
-                } else {
-                    return ComparatorFactory.getComparator(sortType, mr);
-                }
-            }
-        }
-        if (order != null && order.toUpperCase().equals("DESC")) {
-            return Collections.reverseOrder(ComparatorFactory.getComparator(sortType));
-        } else {
-            return ComparatorFactory.getComparator(sortType);
+            if (r instanceof MainResource) mr = (MainResource) r;
         }
+        boolean descending = order != null && order.toUpperCase().equals("DESC");
+        return getSortedPathways().getSorted(this.pathways, sortType, mr, descending);
+    }
+
+    private synchronized SortedPathways getSortedPathways() {
+        if (sortedPathways == null) sortedPathways = new SortedPathways(this.pathways);
+        return sortedPathways;
     }
 }
@@ -3,6 +3,7 @@ package org.reactome.server.analysis.core.result;
 import org.reactome.server.analysis.core.model.PathwayNodeData;
 import org.reactome.server.analysis.core.model.resource.MainResource;
 
+import java.util.Arrays;
 import java.util.Comparator;
 
 /**
@@ -318,6 +319,90 @@ public abstract class ComparatorFactory {
            }
     }
 
+    /**
+     * Returns the positions of the pathways sorted as the corresponding comparator would do it. The values used
+     * to compare the pathways are calculated once per pathway (instead of twice per comparison)
+     *
+     * @param pathways   the pathways to be sorted (not modified)
+     * @param type       the sort criteria
+     * @param r          the main resource (null for the combined result)
+     * @param descending true to sort in descending order
+     * @return the positions in pathways sorted by the given criteria
+     */
+    static int[] sort(PathwayNodeSummary[] pathways, AnalysisSortType type, MainResource r, boolean descending) {
+        if (type == null) type = AnalysisSortType.ENTITIES_PVALUE;
+        SortKey[] keys = new SortKey[pathways.length];
+        for (int i = 0; i < pathways.length; i++) {
+            keys[i] = new SortKey(i, pathways[i], type, r);
+        }
+        Arrays.sort(keys, descending ? Comparator.reverseOrder() : Comparator.naturalOrder());
+        int[] rtn = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            rtn[i] = keys[i].position;
+        }
+        return rtn;
+    }
+
+    //The values compared by the comparators (including genericCompare) for one pathway
+    private static class SortKey implements Comparable<SortKey> {
+        final int position;
+        final Comparable value;
+        final double reactionsPercentage;
+        final double entitiesPercentage;
+        final double interactorsPercentage;
+        final int entitiesCount;
+        final int reactionsCount;
+
+        SortKey(int position, PathwayNodeSummary node, AnalysisSortType type, MainResource r) {
+            this.position = position;
+            this.value = getValue(node, type, r);
+            PathwayNodeData d = node.getData();
+            if (r == null) {
+                this.reactionsPercentage = getReactionsPercentage(node);
+                this.entitiesPercentage = getEntitiesPercentage(node);
+                this.interactorsPercentage = getInteractorsPercentage(node);
+                this.entitiesCount = d.getEntitiesCount();
+                this.reactionsCount = d.getReactionsCount();
+            } else {
+                this.reactionsPercentage = getReactionsPercentage(node, r);
+                this.entitiesPercentage = getEntitiesPercentage(node, r);
+                this.interactorsPercentage = getInteractorsPercentage(node, r);
+                this.entitiesCount = d.getEntitiesCount(r);
+                this.reactionsCount = d.getReactionsCount(r);
+            }
+        }
+
+        @Override
+        public int compareTo(SortKey o) {
+            int rtn = ComparatorFactory.compareTo(value, o.value);
+            if (rtn == 0) rtn = Double.compare(o.reactionsPercentage, reactionsPercentage);
+            if (rtn == 0) rtn = Double.compare(o.entitiesPercentage, entitiesPercentage);
+            if (rtn == 0) rtn = Double.compare(o.interactorsPercentage, interactorsPercentage);
+            if (rtn == 0) rtn = Integer.compare(o.entitiesCount, entitiesCount);
+            if (rtn == 0) rtn = Integer.compare(o.reactionsCount, reactionsCount);
+            return rtn;
+        }
+    }
+
+    private static Comparable getValue(PathwayNodeSummary node, AnalysisSortType type, MainResource r) {
+        if (type == AnalysisSortType.NAME) return node.getName();
+        PathwayNodeData d = node.getData();
+        if (d == null) return null;
+        switch (type) {
+            case TOTAL_ENTITIES:    return r == null ? d.getEntitiesCount() : d.getEntitiesCount(r);
+            case TOTAL_INTERACTORS: return r == null ? d.getInteractorsCount() : d.getInteractorsCount(r);
+            case TOTAL_REACTIONS:   return r == null ? d.getReactionsCount() : d.getReactionsCount(r);
+            case FOUND_ENTITIES:    return r == null ? d.getEntitiesFound() : d.getEntitiesFound(r);
+            case FOUND_INTERACTORS: return r == null ? d.getInteractorsFound() : d.getInteractorsFound(r);
+            case FOUND_REACTIONS:   return r == null ? d.getReactionsFound() : d.getReactionsFound(r);
+            case ENTITIES_RATIO:    return r == null ? d.getEntitiesRatio() : d.getEntitiesRatio(r);
+            case ENTITIES_FDR:      return r == null ? d.getEntitiesFDR() : d.getEntitiesFDR(r);
+            case REACTIONS_RATIO:   return r == null ? d.getReactionsRatio() : d.getReactionsRatio(r);
+            case ENTITIES_PVALUE:
+            default:                return r == null ? d.getEntitiesPValue() : d.getEntitiesPValue(r);
+        }
+    }
+
     static int compareTo(Comparable c1, Comparable c2){
         if(c1 == null){
             if(c2 == null){
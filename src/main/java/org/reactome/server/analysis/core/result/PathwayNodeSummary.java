@@ -44,6 +44,16 @@ public class PathwayNodeSummary {
         this.data = new PathwayNodeData(epns.getData());
     }
 
+    public PathwayNodeSummary(String stId, Long pathwayId, String name, SpeciesNode species, boolean llp, boolean isInDisease, PathwayNodeData data) {
+        this.stId = stId;
+        this.pathwayId = pathwayId;
+        this.name = name;
+        this.species = species;
+        this.llp = llp;
+        this.isInDisease = isInDisease;
+        this.data = data;
+    }
+
     public String getStId() {
         return stId;
     }
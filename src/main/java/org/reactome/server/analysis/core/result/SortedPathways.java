@@ -0,0 +1,65 @@
+package org.reactome.server.analysis.core.result;
+
+import org.reactome.server.analysis.core.model.resource.MainResource;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the sorted orders of the pathways of a result so they are only sorted once per sort criteria.
+ * The pathways are never modified (the orders are arrays of positions) so the object can be shared
+ * between the copies of a cached result and used by concurrent requests.
+ * <p>
+ * Filtering a result only removes pathways, so the sorted order of a filtered result is obtained by
+ * skipping the pathways that are not in it
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+class SortedPathways {
+
+    private final PathwayNodeSummary[] pathways;
+    private final Map<String, int[]> orders = new ConcurrentHashMap<>();
+
+    SortedPathways(List<PathwayNodeSummary> pathways) {
+        this.pathways = pathways.toArray(new PathwayNodeSummary[0]);
+    }
+
+    /**
+     * Returns the given pathways (which have to be contained in the ones used to create this object)
+     * sorted by the given criteria
+     *
+     * @param current    the pathways to be sorted (not modified)
+     * @param type       the sort criteria
+     * @param r          the main resource (null for the combined result)
+     * @param descending true to sort in descending order
+     * @return a read only list with the pathways sorted by the given criteria
+     */
+    List<PathwayNodeSummary> getSorted(List<PathwayNodeSummary> current, AnalysisSortType type, MainResource r, boolean descending) {
+        String key = type + "#" + (r == null ? "" : r.getName()) + "#" + descending;
+        int[] order = orders.computeIfAbsent(key, k -> ComparatorFactory.sort(pathways, type, r, descending));
+
+        if (current.size() == pathways.length) {
+            //Nothing has been filtered out so the order is used as it is (no need to traverse it)
+            return new AbstractList<PathwayNodeSummary>() {
+                @Override
+                public PathwayNodeSummary get(int index) {
+                    return pathways[order[index]];
+                }
+
+                @Override
+                public int size() {
+                    return order.length;
+                }
+            };
+        }
+
+        Set<PathwayNodeSummary> filtered = Collections.newSetFromMap(new IdentityHashMap<>());
+        filtered.addAll(current);
+        List<PathwayNodeSummary> rtn = new ArrayList<>(current.size());
+        for (int position : order) {
+            PathwayNodeSummary pathway = pathways[position];
+            if (filtered.contains(pathway)) rtn.add(pathway);
+        }
+        return Collections.unmodifiableList(rtn);
+    }
+}
@@ -17,7 +17,7 @@ public class ExternalIdentifier {
 
     public ExternalIdentifier(AnalysisIdentifier identifier) {
         this.id = identifier.getId();
-        this.exp = new ArrayList<>(identifier.getExp());
+        this.exp = identifier.getExp();
     }
 
     public void addMapsTo(ExternalMainIdentifier mainIdentifier) {
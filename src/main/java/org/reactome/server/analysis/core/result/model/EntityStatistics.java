@@ -2,6 +2,7 @@ package org.reactome.server.analysis.core.result.model;
 
 import org.reactome.server.analysis.core.model.PathwayNodeData;
 import org.reactome.server.analysis.core.model.resource.MainResource;
+import org.reactome.server.analysis.core.util.ExpressionValues;
 
 import java.util.List;
 
@@ -18,7 +19,7 @@ public class EntityStatistics extends Statistics {
 
     private Double pValue;
     private Double fdr;
-    private List<Double> exp = null;
+    private double[] exp = null;
 
 
     public EntityStatistics(PathwayNodeData d, boolean interactors, boolean importableOnly) {
@@ -28,7 +29,7 @@ public class EntityStatistics extends Statistics {
                 interactors ? d.getInteractorsRatio(importableOnly) : d.getEntitiesRatio(importableOnly));
         this.fdr = d.getEntitiesFDR(importableOnly);
         this.pValue = d.getEntitiesPValue(importableOnly);
-        this.exp = d.getExpressionValuesAvg(importableOnly);
+        this.exp = d.getExpValuesAvg(importableOnly);
         if (interactors) {
             this.curatedFound = d.getEntitiesFound();
             this.curatedTotal = d.getEntitiesCount();
@@ -44,7 +45,7 @@ public class EntityStatistics extends Statistics {
                 interactors ? d.getInteractorsRatio(resource) : d.getEntitiesRatio(resource));
         this.fdr = d.getEntitiesFDR(resource);
         this.pValue = d.getEntitiesPValue(resource);
-        this.exp = d.getExpressionValuesAvg(resource);
+        this.exp = d.getExpValuesAvg(resource);
         if (interactors) {
             this.curatedFound = d.getEntitiesFound(resource);
             this.curatedTotal = d.getEntitiesCount(resource);
@@ -78,6 +79,6 @@ public class EntityStatistics extends Statistics {
     }
 
     public List<Double> getExp() {
-        return exp;
+        return exp == null ? null : ExpressionValues.asList(exp);
     }
 }
@@ -13,13 +13,13 @@ public class FoundEntity extends IdentifierSummary {
     private Set<IdentifierMap> mapsTo;
 
     public FoundEntity(IdentifierSummary is, Set<IdentifierMap> mapsTo) {
-        super(is.getId(), is.getExp());
+        super(is.getId(), is.getExpValues());
 
         this.mapsTo = mapsTo;
     }
 
     public FoundEntity(FoundEntity pi, String resource){
-        super(pi.getId(), pi.getExp());
+        super(pi.getId(), pi.getExpValues());
         this.mapsTo = new HashSet<>();
         for (IdentifierMap identifierMap : pi.mapsTo) {
             if(identifierMap.getResource().equals(resource)){
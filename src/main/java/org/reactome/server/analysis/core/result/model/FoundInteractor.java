@@ -11,7 +11,7 @@ public class FoundInteractor extends IdentifierSummary {
     private IdentifierMap interactsWith;
 
     public FoundInteractor(IdentifierSummary is, Set<String> mapsTo, IdentifierMap interactsWith) {
-        super(is.getId(), is.getExp());
+        super(is.getId(), is.getExpValues());
 
         this.mapsTo = mapsTo;
         this.interactsWith = interactsWith;
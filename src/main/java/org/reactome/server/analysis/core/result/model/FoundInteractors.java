@@ -38,7 +38,7 @@ public class FoundInteractors {
         MapSet<MainIdentifier, InteractorIdentifier> interactorMap = nodeSummary.getData().getInteractorMap();
         for (MainIdentifier diagramEntity : interactorMap.keySet()) {
             for (InteractorIdentifier interactor : interactorMap.getElements(diagramEntity)) {
-                IdentifierSummary submitted = new IdentifierSummary(interactor.getId(), interactor.getExp());
+                IdentifierSummary submitted = new IdentifierSummary(interactor.getId(), interactor.getExpValues());
                 summaries.add(diagramEntity.getResource(), submitted);
 
                 interactsWith.add(submitted, diagramEntity.getValue().getId());
@@ -1,6 +1,8 @@
 package org.reactome.server.analysis.core.result.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.reactome.server.analysis.core.model.AnalysisIdentifier;
+import org.reactome.server.analysis.core.util.ExpressionValues;
 
 import java.util.List;
 
@@ -9,23 +11,32 @@ import java.util.List;
  */
 public class IdentifierSummary {
     private String id;
-    private List<Double> exp;
+    private double[] exp;
 
     public IdentifierSummary(AnalysisIdentifier identifier) {
         this.id = identifier.getId();
-        this.exp = identifier.getExp();
+        this.exp = identifier.getExpValues();
     }
 
-    public IdentifierSummary(String id, List<Double> exp) {
+    public IdentifierSummary(String id, double[] exp) {
         this.id = id;
         this.exp = exp;
     }
 
+    public IdentifierSummary(String id, List<Double> exp) {
+        this(id, ExpressionValues.toArray(exp));
+    }
+
     public String getId() {
         return id;
     }
 
     public List<Double> getExp() {
+        return ExpressionValues.asList(exp);
+    }
+
+    @JsonIgnore
+    public double[] getExpValues() {
         return exp;
     }
 
@@ -11,7 +11,7 @@ public class InteractorEvidence extends IdentifierSummary {
     private String mapsTo;
 
     public InteractorEvidence(InteractorIdentifier interactorIdentifier) {
-        super(interactorIdentifier.getId(), interactorIdentifier.getExp());
+        super(interactorIdentifier.getId(), interactorIdentifier.getExpValues());
         this.mapsTo = interactorIdentifier.getMapsTo();
     }
 
@@ -14,6 +14,12 @@ public class ResourceSummary implements Comparable<ResourceSummary> {
         this.filtered = pathways;
     }
 
+    public ResourceSummary(ResourceSummary summary) {
+        this.resource = summary.resource;
+        this.pathways = summary.pathways;
+        this.filtered = summary.filtered;
+    }
+
     public String getResource() {
         return resource;
     }
@@ -35,6 +35,14 @@ public class SpeciesSummary implements Comparable<SpeciesSummary> {
         this.filtered = pathways;
     }
 
+    public SpeciesSummary(SpeciesSummary summary) {
+        this.dbId = summary.dbId;
+        this.taxId = summary.taxId;
+        this.name = summary.name;
+        this.pathways = summary.pathways;
+        this.filtered = summary.filtered;
+    }
+
     public Long getDbId() {
         return dbId;
     }
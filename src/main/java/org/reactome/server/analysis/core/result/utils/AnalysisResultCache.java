@@ -0,0 +1,185 @@
+package org.reactome.server.analysis.core.result.utils;
+
+import org.reactome.server.analysis.core.result.AnalysisStoredResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the recently used analysis results in memory so paging, filtering or downloading the same token
+ * does not require deserialising the result file every time.
+ * <p>
+ * The cache is bounded by the estimated in memory size of the results (see AnalysisStoredResult.getEstimatedSize) and
+ * the results are evicted in least recently used order or when they have not been accessed for longer than
+ * the maximum idle time.
+ * <p>
+ * *** IMPORTANT ***
+ * AnalysisStoredResult objects are modified when filtered or sorted, so the cached objects are NEVER handed
+ * out. Every call to get returns a copy (see AnalysisStoredResult copy constructor) that shares the read only
+ * parts with the cached one
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public abstract class AnalysisResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger("tokenLogger");
+
+    private static long maxWeight = 512L * 1024 * 1024; //bytes
+    private static long maxIdle = TimeUnit.MINUTES.toMillis(30);
+
+    private static final Map<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private static long weight = 0L;
+
+    //Metrics
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+
+    private static class Entry {
+        final AnalysisStoredResult result;
+        final long weight;
+        long lastAccess;
+
+        Entry(AnalysisStoredResult result, long weight) {
+            this.result = result;
+            this.weight = weight;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Returns a copy of the cached result for the file or null if it is not cached
+     *
+     * @param fileName the file where the result is stored
+     * @return a copy of the cached result or null if it is not cached
+     */
+    public static AnalysisStoredResult get(String fileName) {
+        Entry entry;
+        synchronized (cache) {
+            evictIdle();
+            entry = cache.get(fileName);
+            if (entry != null) entry.lastAccess = System.currentTimeMillis();
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new AnalysisStoredResult(entry.result);
+    }
+
+    /**
+     * Caches a result that is not going to be modified anymore. Please note the object passed here cannot be
+     * used afterwards (use the one returned by get instead)
+     *
+     * @param fileName the file where the result is stored
+     * @param result   the result to be cached
+     */
+    public static void put(String fileName, AnalysisStoredResult result) {
+        if (result == null) return;
+        long weight = result.getEstimatedSize();
+        if (weight > maxWeight) return;
+        synchronized (cache) {
+            Entry previous = cache.put(fileName, new Entry(result, weight));
+            if (previous != null) AnalysisResultCache.weight -= previous.weight;
+            AnalysisResultCache.weight += weight;
+            evictIdle();
+            Iterator<Entry> it = cache.values().iterator();
+            while (AnalysisResultCache.weight > maxWeight && it.hasNext()) {
+                Entry eldest = it.next();
+                it.remove();
+                AnalysisResultCache.weight -= eldest.weight;
+                evictions.increment();
+            }
+        }
+    }
+
+    public static void remove(String fileName) {
+        synchronized (cache) {
+            Entry entry = cache.remove(fileName);
+            if (entry != null) weight -= entry.weight;
+        }
+    }
+
+    public static void clear() {
+        synchronized (cache) {
+            cache.clear();
+            weight = 0L;
+        }
+    }
+
+    //The map is in access order so the idle entries are at the beginning
+    private static void evictIdle() {
+        long limit = System.currentTimeMillis() - maxIdle;
+        Iterator<Entry> it = cache.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.lastAccess >= limit) break;
+            it.remove();
+            weight -= entry.weight;
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Sets the maximum size (estimated in bytes) of the cached results. Setting it to 0 disables the cache
+     *
+     * @param maxWeight the maximum size of the cached results in bytes
+     */
+    public static void setMaxWeight(long maxWeight) {
+        AnalysisResultCache.maxWeight = Math.max(0L, maxWeight);
+        synchronized (cache) {
+            Iterator<Entry> it = cache.values().iterator();
+            while (weight > AnalysisResultCache.maxWeight && it.hasNext()) {
+                Entry eldest = it.next();
+                it.remove();
+                weight -= eldest.weight;
+                evictions.increment();
+            }
+        }
+        logger.info(String.format("Analysis results cache maximum size set to %d bytes", AnalysisResultCache.maxWeight));
+    }
+
+    /**
+     * Sets the time after which a result that has not been accessed is evicted from the cache
+     *
+     * @param maxIdle the maximum idle time in milliseconds
+     */
+    public static void setMaxIdle(long maxIdle) {
+        AnalysisResultCache.maxIdle = Math.max(0L, maxIdle);
+    }
+
+    public static int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public static long getWeight() {
+        synchronized (cache) {
+            return weight;
+        }
+    }
+
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    public static long getEvictions() {
+        return evictions.sum();
+    }
+
+    public static String getStatistics() {
+        return String.format("size: %d, weight: %d/%d bytes, hits: %d, misses: %d, evictions: %d",
+                size(), getWeight(), maxWeight, getHits(), getMisses(), getEvictions());
+    }
+}
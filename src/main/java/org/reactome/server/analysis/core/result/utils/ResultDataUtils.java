@@ -1,21 +1,15 @@
 package org.reactome.server.analysis.core.result.utils;
 
-
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
-
-import com.esotericsoftware.kryo.serializers.FieldSerializer;
-import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
-import com.googlecode.concurrenttrees.radix.node.util.AtomicReferenceArrayListAdapter;
-import org.objenesis.strategy.StdInstantiatorStrategy;
+import com.esotericsoftware.kryo.KryoException;
 import org.reactome.server.analysis.core.result.AnalysisStoredResult;
 import org.reactome.server.analysis.core.result.report.AnalysisReport;
 import org.reactome.server.analysis.core.result.report.ReportParameters;
+import org.reactome.server.analysis.core.util.KryoPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.file.*;
 
 /**
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
@@ -44,17 +38,10 @@ public abstract class ResultDataUtils {
 
     public static void kryoSerialisation(AnalysisStoredResult result, String fileName){
         long start = System.currentTimeMillis();
-        try {
-            Kryo kryo = new Kryo();
-            kryo.setRegistrationRequired(false);
-            kryo.setReferences(true);
-            kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
-            kryo.register(AtomicReferenceArrayListAdapter.class, new FieldSerializer<>(kryo, AtomicReferenceArrayListAdapter.class));
-            OutputStream file = new FileOutputStream(fileName);
-            Output output = new Output(file);
-            kryo.writeClassAndObject(output, result);
-            output.close();
-        } catch (FileNotFoundException e) {
+        try (OutputStream file = new FileOutputStream(fileName)) {
+            //Same configuration used to read the results stored before the columnar format was introduced
+            KryoPool.write(file, result, true);
+        } catch (IOException e) {
             logger.error(e.getMessage(), e);
             e.printStackTrace();
         }
@@ -62,22 +49,67 @@ public abstract class ResultDataUtils {
         logger.info(String.format("%s saved in %d ms", result.getClass().getSimpleName(), end - start));
     }
 
+    /**
+     * Saves the result in the columnar format (see ResultFile) so it can be partially read afterwards.
+     * The result is written to a temporary file in the same folder that is atomically moved to the target
+     * one, so a result file is either complete or does not exist
+     *
+     * @param result   the result to be saved
+     * @param fileName the target file
+     * @param sync     true to force the content to the storage device before moving it to the target file
+     * @return true if the result has been saved
+     */
+    public static boolean resultFileSerialisation(AnalysisStoredResult result, String fileName, boolean sync){
+        long start = System.currentTimeMillis();
+        Path target = Paths.get(fileName).toAbsolutePath();
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            ResultFile.write(result, tmp.toString(), sync);
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            try {
+                if (tmp != null) Files.deleteIfExists(tmp);
+            } catch (IOException ex) {
+                logger.warn(ex.getMessage());
+            }
+            return false;
+        }
+        long end = System.currentTimeMillis();
+        logger.info(String.format("%s saved in %d ms", result.getClass().getSimpleName(), end - start));
+        return true;
+    }
+
     private static AnalysisStoredResult retrieveAnalysisResult(String fileName) throws FileNotFoundException {
-        InputStream file = new FileInputStream(fileName);
-        AnalysisStoredResult rtn = (AnalysisStoredResult) ResultDataUtils.read(file);
+        AnalysisStoredResult rtn;
+        if (ResultFile.isResultFile(fileName)) {
+            try {
+                rtn = ResultFile.read(fileName);
+            } catch (FileNotFoundException e) {
+                throw e;
+            } catch (IOException e) {
+                //A result file that cannot be read is treated as a missing one
+                logger.error(e.getMessage(), e);
+                throw new FileNotFoundException(e.getMessage());
+            }
+        } else {
+            //Results stored before the columnar format was introduced
+            try (InputStream file = new FileInputStream(fileName)) {
+                rtn = (AnalysisStoredResult) KryoPool.read(file, true);
+            } catch (FileNotFoundException e) {
+                throw e;
+            } catch (IOException | KryoException | ClassCastException e) {
+                //A result that cannot be read (e.g. truncated or written with an incompatible layout) is treated as a missing one
+                logger.error(e.getMessage(), e);
+                throw new FileNotFoundException(e.getMessage());
+            }
+        }
         logger.info(fileName + " retrieved");
         return rtn;
     }
-
-    private static Object read(InputStream file) {
-        Kryo kryo = new Kryo();
-        kryo.setRegistrationRequired(false);
-        kryo.setReferences(true);
-        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
-        kryo.register(AtomicReferenceArrayListAdapter.class, new FieldSerializer<>(kryo, AtomicReferenceArrayListAdapter.class));
-        Input input = new Input(file);
-        Object obj = kryo.readClassAndObject(input);
-        input.close();
-        return obj;
-    }
 }
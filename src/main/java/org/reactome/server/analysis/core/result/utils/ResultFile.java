@@ -0,0 +1,512 @@
+package org.reactome.server.analysis.core.result.utils;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInputStream;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.reactome.server.analysis.core.model.AnalysisIdentifier;
+import org.reactome.server.analysis.core.model.PathwayNodeData;
+import org.reactome.server.analysis.core.model.SpeciesNode;
+import org.reactome.server.analysis.core.model.SpeciesNodeFactory;
+import org.reactome.server.analysis.core.model.resource.MainResource;
+import org.reactome.server.analysis.core.model.resource.ResourceFactory;
+import org.reactome.server.analysis.core.result.AnalysisStoredResult;
+import org.reactome.server.analysis.core.result.PathwayNodeSummary;
+import org.reactome.server.analysis.core.result.model.AnalysisSummary;
+import org.reactome.server.analysis.core.result.model.ExpressionSummary;
+import org.reactome.server.analysis.core.result.model.ResourceSummary;
+import org.reactome.server.analysis.core.result.model.SpeciesSummary;
+import org.reactome.server.analysis.core.util.KryoPool;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Columnar file format for the analysis results. Contrary to the Kryo serialisation of the whole
+ * AnalysisStoredResult, the file is split in sections that are memory mapped and only read when needed.
+ * <p>
+ * [MAGIC][VERSION][sections] followed by [offset][length] per section, where the sections are
+ * <p>
+ * SUMMARY    the analysis summary, the resources and species summaries and the warnings (Kryo)
+ * EXPRESSION the expression summary (Kryo)
+ * NOT_FOUND  the not found identifiers (Kryo, only read when they are requested)
+ * SPECIES    [n] followed by [speciesID][hasTaxID][taxID][name] per species
+ * PATHWAYS   [n][dbId: long * n][species: int * n][flags: byte * n][counters: int * (n+1)][found: long * (n+1)][stId: utf * n][name: utf * n]
+ * COUNTERS   [resources][name: utf * resources][rows][resource: int * rows][counts: int * rows * 8][ratios: double * rows * 5][nulls: byte * rows][exp: int * (rows+1)][exp values: double * m]
+ * FOUND      the found entities, interactors and reactions of each pathway (Kryo, only read for the pathways that need them)
+ * <p>
+ * So getting the summary, a page of pathways or filtering them only reads the pathways and counters sections.
+ * The Kryo sections (and each pathway blob in FOUND) are deflate compressed, which is where most of the size of
+ * a result is. The columns are not compressed so they can be read straight from the mapped file.
+ * Since version 3 the Kryo sections use the compact serialisation of the model (see KryoPool). Files written by
+ * previous versions are not supported (the analysis has to be run again).
+ * <p>
+ * The offsets are longs and each section is mapped on its own, so a file can be bigger than 2GB but every section
+ * has to be smaller than that (checked when the file is written)
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public abstract class ResultFile {
+
+    static final int MAGIC = 0x52524553; //"RRES" (a Kryo file of an unregistered class starts with 0x01)
+    static final int VERSION = 3;
+
+    private static final int SUMMARY = 0;
+    private static final int EXPRESSION = 1;
+    private static final int NOT_FOUND = 2;
+    private static final int SPECIES = 3;
+    private static final int PATHWAYS = 4;
+    private static final int COUNTERS = 5;
+    private static final int FOUND = 6;
+    private static final int SECTIONS = 7;
+
+    private static final int HEADER = 3 * Integer.BYTES + SECTIONS * 2 * Long.BYTES;
+
+    //Resource column values for the rows that do not belong to a main resource
+    private static final int COMBINED = -1;
+    private static final int IMPORTABLE = -2;
+
+    private static final int COUNTS = 8;
+    private static final int RATIOS = 5;
+    private static final int NO_EXP = 1 << RATIOS; //null mask bit when the expression averages are not present
+
+    /**
+     * Returns true if the file starts with the magic number of the columnar format
+     *
+     * @param fileName the result file
+     * @return true if the file is in the columnar format
+     */
+    public static boolean isResultFile(String fileName) throws FileNotFoundException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(fileName))) {
+            return in.readInt() == MAGIC;
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the result in the columnar format
+     *
+     * @param result   the result to be written
+     * @param fileName the target file
+     */
+    public static void write(AnalysisStoredResult result, String fileName) throws IOException {
+        write(result, fileName, false);
+    }
+
+    /**
+     * Writes the result in the columnar format
+     *
+     * @param result   the result to be written
+     * @param fileName the target file
+     * @param sync     true to force the content of the file to the storage device before returning
+     */
+    public static void write(AnalysisStoredResult result, String fileName, boolean sync) throws IOException {
+        long[][] sections = new long[SECTIONS][2];
+
+        List<PathwayNodeSummary> pathways = result.getPathways();
+        int n = pathways.size();
+
+        try (BlobWriter blobs = new BlobWriter();
+             FileOutputStream fos = new FileOutputStream(fileName);
+             ResultOutputStream out = new ResultOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.write(new byte[HEADER]);
+
+            //The found elements go first so their offsets are known when writing the pathways section
+            long[] found = new long[n + 1];
+            long start = out.position();
+            for (int i = 0; i < n; i++) {
+                PathwayNodeData data = pathways.get(i).getData();
+                data.load();
+                found[i] = out.position() - start;
+                blobs.write(out, data);
+            }
+            sections[FOUND] = out.section("found", start);
+            found[n] = sections[FOUND][1];
+
+            sections[SUMMARY] = blobs.section(out, "summary", result.getSummary(), new ArrayList<>(result.getResourceSummary()), new ArrayList<>(result.getSpeciesSummary()), result.getWarnings());
+            sections[EXPRESSION] = blobs.section(out, "expression", result.getExpressionSummary());
+            sections[NOT_FOUND] = blobs.section(out, "not found", result.getNotFound());
+
+            //Species
+            start = out.position();
+            Map<SpeciesNode, Integer> species = new LinkedHashMap<>();
+            for (PathwayNodeSummary pathway : pathways) species.putIfAbsent(pathway.getSpecies(), species.size());
+            out.writeInt(species.size());
+            for (SpeciesNode s : species.keySet()) {
+                out.writeLong(s.getSpeciesID());
+                out.writeBoolean(s.getTaxID() != null);
+                if (s.getTaxID() != null) out.writeUTF(s.getTaxID());
+                out.writeUTF(s.getName());
+            }
+            sections[SPECIES] = out.section("species", start);
+
+            //Counters (written to memory first since the pathways section needs the rows of each pathway)
+            Counters counters = new Counters();
+            int[] first = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                first[i] = counters.rows;
+                counters.add(pathways.get(i).getData());
+            }
+            first[n] = counters.rows;
+
+            //Pathways
+            start = out.position();
+            out.writeInt(n);
+            for (PathwayNodeSummary pathway : pathways) out.writeLong(pathway.getPathwayId());
+            for (PathwayNodeSummary pathway : pathways) out.writeInt(species.get(pathway.getSpecies()));
+            for (PathwayNodeSummary pathway : pathways) out.writeByte((pathway.isLlp() ? 1 : 0) | (pathway.isInDisease() ? 2 : 0));
+            for (int row : first) out.writeInt(row);
+            for (long offset : found) out.writeLong(offset);
+            for (PathwayNodeSummary pathway : pathways) out.writeUTF(pathway.getStId());
+            for (PathwayNodeSummary pathway : pathways) out.writeUTF(pathway.getName());
+            sections[PATHWAYS] = out.section("pathways", start);
+
+            start = out.position();
+            counters.write(out);
+            sections[COUNTERS] = out.section("counters", start);
+
+            out.flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(VERSION).putInt(SECTIONS);
+            for (long[] section : sections) header.putLong(section[0]).putLong(section[1]);
+            header.flip();
+            fos.getChannel().write(header, 0);
+            if (sync) fos.getChannel().force(true);
+        }
+    }
+
+    //Keeps the position in the file as a long (DataOutputStream.size() is an int that overflows after 2GB)
+    private static class ResultOutputStream extends DataOutputStream {
+
+        ResultOutputStream(OutputStream out) {
+            super(new PositionOutputStream(out));
+        }
+
+        long position() {
+            return ((PositionOutputStream) out).position;
+        }
+
+        //Each section is mapped on its own when the file is read, so it cannot be bigger than 2GB
+        long[] section(String name, long start) throws IOException {
+            long length = position() - start;
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(String.format("The %s section of the result is bigger than 2GB (%d bytes)", name, length));
+            }
+            return new long[]{start, length};
+        }
+    }
+
+    private static class PositionOutputStream extends FilterOutputStream {
+        private long position = 0;
+
+        PositionOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+    }
+
+    //Writes the Kryo serialisation of the objects deflate compressed
+    private static class BlobWriter implements Closeable {
+        private final Kryo kryo = KryoPool.obtain();
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+
+        void write(ResultOutputStream out, Object... objects) throws IOException {
+            bytes.reset();
+            deflater.reset();
+            //Closing the output finishes the compression but does not end the (not default) deflater
+            try (Output output = new Output(new DeflaterOutputStream(bytes, deflater, 4096))) {
+                for (Object object : objects) kryo.writeClassAndObject(output, object);
+            }
+            bytes.writeTo(out);
+        }
+
+        long[] section(ResultOutputStream out, String name, Object... objects) throws IOException {
+            long start = out.position();
+            write(out, objects);
+            return out.section(name, start);
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+            KryoPool.free(kryo);
+        }
+    }
+
+    /**
+     * Reads a result written in the columnar format. Only the summaries and the pathways counters are read
+     * here, the found elements of each pathway and the not found identifiers are read when needed
+     *
+     * @param fileName the result file
+     * @return the result (the file is kept mapped until the result is garbage collected)
+     */
+    @SuppressWarnings("unchecked")
+    public static AnalysisStoredResult read(String fileName) throws IOException {
+        Path path = Paths.get(fileName);
+        if (!Files.exists(path)) throw new FileNotFoundException(fileName + " (No such file or directory)");
+        MappedResult file = new MappedResult(path);
+
+        Object[] summary = file.readKryo(SUMMARY, 4);
+        ExpressionSummary expression = (ExpressionSummary) file.readKryo(EXPRESSION, 1)[0];
+
+        ByteBuffer buffer = file.section(SPECIES);
+        SpeciesNode[] species = new SpeciesNode[buffer.getInt()];
+        for (int i = 0; i < species.length; i++) {
+            Long id = buffer.getLong();
+            String taxId = buffer.get() != 0 ? readUTF(buffer) : null;
+            species[i] = SpeciesNodeFactory.getSpeciesNode(id, taxId, readUTF(buffer));
+        }
+
+        buffer = file.section(PATHWAYS);
+        int n = buffer.getInt();
+        long[] dbIds = new long[n];
+        for (int i = 0; i < n; i++) dbIds[i] = buffer.getLong();
+        int[] speciesIdx = new int[n];
+        for (int i = 0; i < n; i++) speciesIdx[i] = buffer.getInt();
+        byte[] flags = new byte[n];
+        buffer.get(flags);
+        int[] first = new int[n + 1];
+        for (int i = 0; i <= n; i++) first[i] = buffer.getInt();
+        long[] found = new long[n + 1];
+        for (int i = 0; i <= n; i++) found[i] = buffer.getLong();
+        String[] stIds = new String[n];
+        for (int i = 0; i < n; i++) stIds[i] = readUTF(buffer);
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) names[i] = readUTF(buffer);
+        file.found = found;
+
+        Counters counters = Counters.read(file.section(COUNTERS));
+
+        List<PathwayNodeSummary> pathways = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            PathwayNodeData data = new PathwayNodeData();
+            for (int row = first[i]; row < first[i + 1]; row++) counters.set(row, data);
+            final int pathway = i;
+            data.setLazyLoader(() -> file.readFound(pathway));
+            boolean llp = (flags[i] & 1) != 0;
+            boolean isInDisease = (flags[i] & 2) != 0;
+            pathways.add(new PathwayNodeSummary(stIds[i], dbIds[i], names[i], species[speciesIdx[i]], llp, isInDisease, data));
+        }
+
+        Supplier<Set<AnalysisIdentifier>> notFound = new Supplier<Set<AnalysisIdentifier>>() {
+            private Set<AnalysisIdentifier> notFound;
+
+            @Override
+            public synchronized Set<AnalysisIdentifier> get() {
+                if (notFound == null) notFound = (Set<AnalysisIdentifier>) file.readKryo(NOT_FOUND, 1)[0];
+                return notFound;
+            }
+        };
+
+        return new AnalysisStoredResult(
+                (AnalysisSummary) summary[0],
+                pathways,
+                notFound,
+                expression,
+                (List<ResourceSummary>) summary[1],
+                (List<SpeciesSummary>) summary[2],
+                (List<String>) summary[3]);
+    }
+
+    //Same encoding as DataOutputStream.writeUTF for the strings used in the result (no null characters)
+    private static String readUTF(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class MappedResult {
+        private final ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+        private long[] found;
+
+        //Each section is mapped on its own (see ResultOutputStream.section), so the file can be bigger than 2GB
+        MappedResult(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer header = channel.size() < HEADER ? null : channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+                if (header == null || header.getInt(0) != MAGIC) {
+                    throw new IOException(String.format("%s is not a valid result file", path));
+                }
+                if (header.getInt(Integer.BYTES) != VERSION || header.getInt(2 * Integer.BYTES) != SECTIONS) {
+                    throw new IOException(String.format("%s was written by a previous version and is not supported, the analysis has to be run again", path));
+                }
+                for (int i = 0; i < SECTIONS; i++) {
+                    int pos = 3 * Integer.BYTES + i * 2 * Long.BYTES;
+                    sections[i] = channel.map(FileChannel.MapMode.READ_ONLY, header.getLong(pos), header.getLong(pos + Long.BYTES));
+                }
+            }
+        }
+
+        ByteBuffer section(int section) {
+            return sections[section].duplicate();
+        }
+
+        //The offsets within a section fit in an int since the sections are smaller than 2GB
+        private ByteBuffer slice(int section, long offset, long length) {
+            ByteBuffer rtn = section(section);
+            rtn.position((int) offset);
+            rtn.limit((int) (offset + length));
+            return rtn.slice();
+        }
+
+        //The sections are read from duplicates of the mapped buffers, so they can be read concurrently
+        Object[] readKryo(int section, int objects) {
+            Input input = input(section(section));
+            return KryoPool.run(kryo -> {
+                Object[] rtn = new Object[objects];
+                for (int i = 0; i < objects; i++) rtn[i] = kryo.readClassAndObject(input);
+                return rtn;
+            });
+        }
+
+        PathwayNodeData readFound(int pathway) {
+            ByteBuffer blob = slice(FOUND, found[pathway], found[pathway + 1] - found[pathway]);
+            return KryoPool.run(kryo -> (PathwayNodeData) kryo.readClassAndObject(input(blob)));
+        }
+
+        private Input input(ByteBuffer blob) {
+            return new Input(new InflaterInputStream(new ByteBufferInputStream(blob)), 4096);
+        }
+    }
+
+    /**
+     * The columns of the counters of all the pathways: for each pathway the combined, the importable
+     * and one row per main resource
+     */
+    private static class Counters {
+        private final Map<String, Integer> resources = new LinkedHashMap<>();
+        private MainResource[] mainResources;
+        private int rows = 0;
+        private int[] resource = new int[1024];
+        private int[] counts = new int[1024 * COUNTS];
+        private double[] ratios = new double[1024 * RATIOS];
+        private byte[] nulls = new byte[1024];
+        private int[] exp = new int[1025];
+        private double[] values = new double[1024];
+
+        void add(PathwayNodeData data) {
+            add(COMBINED,
+                    new Integer[]{data.getEntitiesCount(false), data.getEntitiesFound(false), data.getInteractorsCount(false), data.getInteractorsFound(false),
+                            data.getEntitiesAndInteractorsCount(false), data.getEntitiesAndInteractorsFound(false), data.getReactionsCount(false), data.getReactionsFound(false)},
+                    new Double[]{data.getEntitiesRatio(false), data.getEntitiesPValue(false), data.getEntitiesFDR(false), data.getInteractorsRatio(false), data.getReactionsRatio(false)},
+                    data.getExpValuesAvg(false));
+            add(IMPORTABLE,
+                    new Integer[]{data.getEntitiesCount(true), data.getEntitiesFound(true), data.getInteractorsCount(true), data.getInteractorsFound(true),
+                            data.getEntitiesAndInteractorsCount(true), data.getEntitiesAndInteractorsFound(true), data.getReactionsCount(true), data.getReactionsFound(true)},
+                    new Double[]{data.getEntitiesRatio(true), data.getEntitiesPValue(true), data.getEntitiesFDR(true), data.getInteractorsRatio(true), data.getReactionsRatio(true)},
+                    data.getExpValuesAvg(true));
+            for (MainResource r : data.getResources()) {
+                Integer idx = resources.computeIfAbsent(r.getName(), k -> resources.size());
+                add(idx,
+                        new Integer[]{data.getEntitiesCount(r), data.getEntitiesFound(r), data.getInteractorsCount(r), data.getInteractorsFound(r),
+                                data.getEntitiesAndInteractorsCount(r), data.getEntitiesAndInteractorsFound(r), data.getReactionsCount(r), data.getReactionsFound(r)},
+                        new Double[]{data.getEntitiesRatio(r), data.getEntitiesPValue(r), data.getEntitiesFDR(r), data.getInteractorsRatio(r), data.getReactionsRatio(r)},
+                        data.getExpValuesAvg(r));
+            }
+        }
+
+        private void add(int r, Integer[] c, Double[] d, double[] e) {
+            if (rows == resource.length) {
+                int size = rows * 2;
+                resource = Arrays.copyOf(resource, size);
+                counts = Arrays.copyOf(counts, size * COUNTS);
+                ratios = Arrays.copyOf(ratios, size * RATIOS);
+                nulls = Arrays.copyOf(nulls, size);
+                exp = Arrays.copyOf(exp, size + 1);
+            }
+            resource[rows] = r;
+            for (int i = 0; i < COUNTS; i++) counts[rows * COUNTS + i] = c[i] == null ? 0 : c[i];
+            byte mask = 0;
+            for (int i = 0; i < RATIOS; i++) {
+                if (d[i] == null) mask |= 1 << i;
+                ratios[rows * RATIOS + i] = d[i] == null ? 0.0 : d[i];
+            }
+            if (e == null) {
+                mask |= NO_EXP;
+                e = new double[0];
+            }
+            nulls[rows] = mask;
+            int from = exp[rows];
+            if (from + e.length > values.length) values = Arrays.copyOf(values, Math.max(values.length * 2, from + e.length));
+            System.arraycopy(e, 0, values, from, e.length);
+            exp[++rows] = from + e.length;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(resources.size());
+            for (String name : resources.keySet()) out.writeUTF(name);
+            out.writeInt(rows);
+            for (int i = 0; i < rows; i++) out.writeInt(resource[i]);
+            for (int i = 0; i < rows * COUNTS; i++) out.writeInt(counts[i]);
+            for (int i = 0; i < rows * RATIOS; i++) out.writeDouble(ratios[i]);
+            out.write(nulls, 0, rows);
+            for (int i = 0; i <= rows; i++) out.writeInt(exp[i]);
+            for (int i = 0; i < exp[rows]; i++) out.writeDouble(values[i]);
+        }
+
+        static Counters read(ByteBuffer buffer) {
+            Counters rtn = new Counters();
+            rtn.mainResources = new MainResource[buffer.getInt()];
+            for (int i = 0; i < rtn.mainResources.length; i++) {
+                String name = readUTF(buffer);
+                rtn.resources.put(name, i);
+                rtn.mainResources[i] = (MainResource) ResourceFactory.getResource(name);
+            }
+            int rows = rtn.rows = buffer.getInt();
+            rtn.resource = new int[rows];
+            for (int i = 0; i < rows; i++) rtn.resource[i] = buffer.getInt();
+            rtn.counts = new int[rows * COUNTS];
+            buffer.asIntBuffer().get(rtn.counts);
+            buffer.position(buffer.position() + rows * COUNTS * Integer.BYTES);
+            rtn.ratios = new double[rows * RATIOS];
+            buffer.asDoubleBuffer().get(rtn.ratios);
+            buffer.position(buffer.position() + rows * RATIOS * Double.BYTES);
+            rtn.nulls = new byte[rows];
+            buffer.get(rtn.nulls);
+            rtn.exp = new int[rows + 1];
+            buffer.asIntBuffer().get(rtn.exp);
+            buffer.position(buffer.position() + (rows + 1) * Integer.BYTES);
+            rtn.values = new double[rtn.exp[rows]];
+            buffer.asDoubleBuffer().get(rtn.values);
+            return rtn;
+        }
+
+        void set(int row, PathwayNodeData data) {
+            int[] c = Arrays.copyOfRange(counts, row * COUNTS, (row + 1) * COUNTS);
+            Double[] d = new Double[RATIOS];
+            for (int i = 0; i < RATIOS; i++) {
+                if ((nulls[row] & (1 << i)) == 0) d[i] = ratios[row * RATIOS + i];
+            }
+            double[] e = (nulls[row] & NO_EXP) == 0 ? Arrays.copyOfRange(values, exp[row], exp[row + 1]) : null;
+            int r = resource[row];
+            MainResource mr = r >= 0 ? mainResources[r] : null;
+            data.setStoredCounter(mr, r == IMPORTABLE, c, d, e);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.reactome.server.analysis.core.result.utils;
+
+import org.reactome.server.analysis.core.result.AnalysisStoredResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes the analysis results to disk in the background so the request that performed the analysis does
+ * not wait for the result file to be written.
+ * <p>
+ * The results waiting to be written are kept in memory and served from there (see get) so a token can be
+ * used straight away. Once the file is complete the result is moved to the AnalysisResultCache.
+ * <p>
+ * The queue is bounded: when it is full (or the writers have been shut down) the result is written by the thread
+ * that submits it, which slows down the producers instead of accumulating results in memory
+ * <p>
+ * *** IMPORTANT ***
+ * The results passed to save cannot be modified afterwards (pass a copy, see AnalysisStoredResult copy constructor)
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public abstract class ResultWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger("tokenLogger");
+
+    private static int writers = 2;
+    private static int queueSize = 64;
+    private static boolean sync = true;
+
+    private static final Map<String, AnalysisStoredResult> pending = new ConcurrentHashMap<>();
+    private static volatile ThreadPoolExecutor executor = null;
+
+    //Metrics
+    private static final LongAdder written = new LongAdder();
+    private static final LongAdder failed = new LongAdder();
+
+    /**
+     * Queues the result to be written to the file. Until the file is complete the result is served by get
+     *
+     * @param fileName the file where the result is stored
+     * @param result   the result to be saved (it cannot be modified afterwards)
+     */
+    public static void save(String fileName, AnalysisStoredResult result) {
+        pending.put(fileName, result);
+        getExecutor().execute(() -> write(fileName, result));
+    }
+
+    /**
+     * Returns a copy of the result when it is still waiting to be written or null otherwise
+     *
+     * @param fileName the file where the result is stored
+     * @return a copy of the result waiting to be written or null if there is not such result
+     */
+    public static AnalysisStoredResult get(String fileName) {
+        AnalysisStoredResult result = pending.get(fileName);
+        return result != null ? new AnalysisStoredResult(result) : null;
+    }
+
+    private static void write(String fileName, AnalysisStoredResult result) {
+        if (ResultDataUtils.resultFileSerialisation(result, fileName, sync)) {
+            //Cached before removing it from pending so there is no gap where the result has to be read from disk
+            AnalysisResultCache.put(fileName, result);
+            written.increment();
+        } else {
+            failed.increment();
+        }
+        pending.remove(fileName, result);
+    }
+
+    private static ThreadPoolExecutor getExecutor() {
+        ThreadPoolExecutor rtn = executor;
+        if (rtn == null) {
+            synchronized (pending) {
+                rtn = executor;
+                if (rtn == null) {
+                    AtomicInteger count = new AtomicInteger();
+                    rtn = new ThreadPoolExecutor(writers, writers, 0L, TimeUnit.MILLISECONDS,
+                            new ArrayBlockingQueue<>(queueSize),
+                            r -> {
+                                Thread thread = new Thread(r, "ResultWriter-" + count.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            },
+                            //Unlike CallerRunsPolicy, it also runs the task when the executor has been shut down
+                            (task, e) -> task.run());
+                    Runtime.getRuntime().addShutdownHook(new Thread(ResultWriter::shutdown, "ResultWriterShutdown"));
+                    executor = rtn;
+                }
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Waits for the queued results to be written and stops the writer threads
+     */
+    public static void shutdown() {
+        ThreadPoolExecutor executor = ResultWriter.executor;
+        if (executor == null) return;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.error(String.format("%d analysis results could not be written before stopping", pending.size()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sets the number of threads writing the results. Please note this has to be set before the first result is saved
+     *
+     * @param writers the number of threads writing the results
+     */
+    public static void setWriters(int writers) {
+        ResultWriter.writers = Math.max(1, writers);
+    }
+
+    /**
+     * Sets the maximum number of results waiting to be written. Please note this has to be set before the first
+     * result is saved
+     *
+     * @param queueSize the maximum number of results waiting to be written
+     */
+    public static void setQueueSize(int queueSize) {
+        ResultWriter.queueSize = Math.max(1, queueSize);
+    }
+
+    /**
+     * Sets whether the content of the result files is forced to the storage device before they are made visible
+     *
+     * @param sync true (default) to force the content of the files to the storage device
+     */
+    public static void setSync(boolean sync) {
+        ResultWriter.sync = sync;
+    }
+
+    public static int getPending() {
+        return pending.size();
+    }
+
+    public static long getWritten() {
+        return written.sum();
+    }
+
+    public static long getFailed() {
+        return failed.sum();
+    }
+
+    public static String getStatistics() {
+        return String.format("pending: %d, written: %d, failed: %d", getPending(), getWritten(), getFailed());
+    }
+}
@@ -0,0 +1,249 @@
+package org.reactome.server.analysis.core.result.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Bidirectional index (key to token and token to key) used to reuse the token of an analysis that has already
+ * been performed. It is safe to be used by concurrent requests, it keeps a maximum number of entries (the oldest
+ * ones are evicted first) and the entries expire after the given time to live.
+ * <p>
+ * When a file is provided, the changes are appended to it and replayed when the index is created, so the tokens
+ * survive a restart. The file is compacted (only the live entries are kept) when it is loaded and whenever it
+ * holds more than twice as many lines as live entries
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+class TokenIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger("tokenizerLogger");
+
+    private static final String ADD = "+";
+    private static final String REMOVE = "-";
+    private static final String SEPARATOR = "\t";
+    private static final int MIN_COMPACTION_LINES = 1_000; //Small files are not worth compacting
+
+    private final Map<String, Entry> byKey = new ConcurrentHashMap<>();
+    private final Map<String, Entry> byToken = new ConcurrentHashMap<>();
+    private final Queue<Entry> order = new ConcurrentLinkedQueue<>(); //Insertion order (oldest first)
+
+    private final int maxSize;
+    private final long timeToLive;
+    private final Path file;
+    private Writer log;
+    private int lines; //Lines in the file (guarded by this, like the log)
+
+    TokenIndex(int maxSize, long timeToLive, String fileName) {
+        this.maxSize = Math.max(1, maxSize);
+        this.timeToLive = timeToLive;
+        this.file = fileName != null ? Paths.get(fileName) : null;
+        if (file != null) {
+            replay();
+            open();
+        }
+    }
+
+    String getOrCreate(String key, Supplier<String> tokenSupplier) {
+        return getOrCreate(key, tokenSupplier, null);
+    }
+
+    /**
+     * @param created (optional) set to true only for the call that creates the entry, so callers can tell whether
+     *                the token already existed without checking it beforehand (check-then-act)
+     */
+    String getOrCreate(String key, Supplier<String> tokenSupplier, AtomicBoolean created) {
+        Entry entry = byKey.get(key);
+        if (entry != null && isExpired(entry)) {
+            remove(entry);
+            entry = null;
+        }
+        if (entry == null) {
+            boolean[] isNew = {false}; //Only the thread that creates the entry registers it
+            entry = byKey.computeIfAbsent(key, k -> {
+                isNew[0] = true;
+                return new Entry(k, tokenSupplier.get(), System.currentTimeMillis());
+            });
+            if (isNew[0]) {
+                if (created != null) created.set(true);
+                byToken.put(entry.token, entry);
+                order.add(entry);
+                append(ADD, entry.key, entry.token, Long.toString(entry.created));
+                evict();
+            }
+        }
+        return entry.token;
+    }
+
+    String get(String key) {
+        Entry entry = byKey.get(key);
+        return entry != null && !isExpired(entry) ? entry.token : null;
+    }
+
+    /**
+     * Associates the key to an existing token, replacing any previous association of the key or the token
+     */
+    synchronized void put(String key, String token) {
+        Entry previous = byToken.get(token);
+        if (previous != null) remove(previous);
+        previous = byKey.get(key);
+        if (previous != null) remove(previous);
+        Entry entry = new Entry(key, token, System.currentTimeMillis());
+        byKey.put(key, entry);
+        byToken.put(token, entry);
+        order.add(entry);
+        append(ADD, entry.key, entry.token, Long.toString(entry.created));
+        evict();
+    }
+
+    boolean contains(String key) {
+        Entry entry = byKey.get(key);
+        return entry != null && !isExpired(entry);
+    }
+
+    boolean removeToken(String token) {
+        Entry entry = byToken.get(token);
+        return entry != null && remove(entry);
+    }
+
+    int size() {
+        return byKey.size();
+    }
+
+    synchronized void close() {
+        if (log == null) return;
+        try {
+            log.close();
+        } catch (IOException e) {
+            logger.warn(String.format("The token index %s could not be closed", file), e);
+        }
+        log = null;
+    }
+
+    private boolean remove(Entry entry) {
+        boolean removed = byKey.remove(entry.key, entry);
+        byToken.remove(entry.token, entry);
+        if (removed) append(REMOVE, entry.token);
+        return removed;
+    }
+
+    //The queue keeps the insertion order so the expired entries and the oldest ones (when full) are at its head
+    private void evict() {
+        Entry head;
+        while ((head = order.peek()) != null && (byKey.size() > maxSize || isExpired(head) || byKey.get(head.key) != head)) {
+            if (order.remove(head)) remove(head);
+        }
+    }
+
+    private boolean isExpired(Entry entry) {
+        return System.currentTimeMillis() - entry.created > timeToLive;
+    }
+
+    private void replay() {
+        if (!Files.exists(file)) return;
+        long start = System.currentTimeMillis();
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                String[] fields = line.split(SEPARATOR);
+                if (fields.length == 4 && fields[0].equals(ADD)) {
+                    Entry entry = new Entry(fields[1], fields[2], Long.parseLong(fields[3]));
+                    if (isExpired(entry)) continue;
+                    Entry previous = byKey.put(entry.key, entry);
+                    if (previous != null) byToken.remove(previous.token, previous);
+                    byToken.put(entry.token, entry);
+                    order.add(entry);
+                } else if (fields.length == 2 && fields[0].equals(REMOVE)) {
+                    Entry entry = byToken.remove(fields[1]);
+                    if (entry != null) byKey.remove(entry.key, entry);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            //The entries read so far are kept (the last line might have not been completely written)
+            logger.warn(String.format("The token index %s could not be completely read", file), e);
+        }
+        order.removeIf(entry -> byKey.get(entry.key) != entry);
+        while (byKey.size() > maxSize) {
+            Entry head = order.poll();
+            byKey.remove(head.key, head);
+            byToken.remove(head.token, head);
+        }
+        this.lines = lines;
+        if (lines > byKey.size()) compact();
+        long end = System.currentTimeMillis();
+        logger.info(String.format("%d tokens loaded from %s in %d ms", byKey.size(), file, end - start));
+    }
+
+    //The entries added or removed while compacting are appended afterwards (an entry added twice is replayed once)
+    private synchronized void compact() {
+        try {
+            Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            int written = 0;
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Entry entry : order) {
+                    if (byKey.get(entry.key) != entry) continue; //Already removed but not evicted from the queue yet
+                    writer.write(line(ADD, entry.key, entry.token, Long.toString(entry.created)));
+                    written++;
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lines = written;
+        } catch (IOException e) {
+            lines = 0; //It is tried again once the threshold is exceeded again
+            logger.warn(String.format("The token index %s could not be compacted", file), e);
+        }
+    }
+
+    private void open() {
+        try {
+            log = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.error(String.format("The token index %s cannot be written. Tokens will not be kept after a restart", file), e);
+        }
+    }
+
+    private void append(String... fields) {
+        synchronized (this) {
+            if (log == null) return;
+            try {
+                log.write(line(fields));
+                log.flush();
+            } catch (IOException e) {
+                logger.error(String.format("The token index %s cannot be written", file), e);
+                return;
+            }
+            if (++lines > Math.max(MIN_COMPACTION_LINES, 2 * byKey.size())) {
+                close();
+                compact();
+                open();
+            }
+        }
+    }
+
+    private static String line(String... fields) {
+        return String.join(SEPARATOR, fields) + "\n";
+    }
+
+    private static class Entry {
+        private final String key;
+        private final String token;
+        private final long created;
+
+        Entry(String key, String token, long created) {
+            this.key = key;
+            this.token = token;
+            this.created = created;
+        }
+    }
+}
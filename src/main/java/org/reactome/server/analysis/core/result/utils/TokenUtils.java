@@ -2,6 +2,7 @@ package org.reactome.server.analysis.core.result.utils;
 
 import org.reactome.server.analysis.core.model.AnalysisType;
 import org.reactome.server.analysis.core.model.SpeciesNode;
+import org.reactome.server.analysis.core.model.UserData;
 import org.reactome.server.analysis.core.result.AnalysisStoredResult;
 import org.reactome.server.analysis.core.result.exception.ResourceGoneException;
 import org.reactome.server.analysis.core.result.exception.ResourceNotFoundException;
@@ -10,6 +11,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 
 /**
@@ -26,18 +28,93 @@ public class TokenUtils {
     }
 
     public TokenUtils(String pathDirectory) {
-        this.pathDirectory = pathDirectory;
+        setPathDirectory(pathDirectory);
     }
 
     public void setPathDirectory(String pathDirectory) {
         this.pathDirectory = pathDirectory;
+        //The tokens of the analysis performed are persisted next to the results so they can be reused after a restart
+        Tokenizer.setDirectory(pathDirectory);
+    }
+
+    /**
+     * Sets the maximum number of tokens kept to reuse the results of the analysis already performed
+     *
+     * @param size the maximum number of tokens kept (the oldest ones are discarded first)
+     */
+    @SuppressWarnings("unused")
+    public void setTokenIndexSize(int size) {
+        Tokenizer.setIndexSize(size);
+    }
+
+    /**
+     * Sets the maximum size (estimated in bytes) of the analysis results kept in memory (0 disables the cache)
+     *
+     * @param maxSize the maximum size of the cached results in bytes
+     */
+    @SuppressWarnings("unused")
+    public void setResultCacheMaxSize(long maxSize) {
+        AnalysisResultCache.setMaxWeight(maxSize);
+    }
+
+    /**
+     * Sets the time after which a cached analysis result that has not been accessed is evicted
+     *
+     * @param maxIdle the maximum idle time in milliseconds
+     */
+    @SuppressWarnings("unused")
+    public void setResultCacheMaxIdle(long maxIdle) {
+        AnalysisResultCache.setMaxIdle(maxIdle);
+    }
+
+    /**
+     * Sets the number of threads writing the analysis results to disk in the background
+     *
+     * @param writers the number of threads writing the results
+     */
+    @SuppressWarnings("unused")
+    public void setResultWriters(int writers) {
+        ResultWriter.setWriters(writers);
+    }
+
+    /**
+     * Sets the maximum number of analysis results waiting to be written to disk
+     *
+     * @param queueSize the maximum number of results waiting to be written
+     */
+    @SuppressWarnings("unused")
+    public void setResultWriterQueueSize(int queueSize) {
+        ResultWriter.setQueueSize(queueSize);
+    }
+
+    /**
+     * Sets whether the result files are forced to the storage device before being made visible
+     *
+     * @param sync true (default) to force the result files to the storage device
+     */
+    @SuppressWarnings("unused")
+    public void setResultWriterSync(boolean sync) {
+        ResultWriter.setSync(sync);
     }
 
     public AnalysisStoredResult getFromToken(String token) {
         String fileName = getFileName(token);
         if (fileName != null) {
+            //Results that are still being written are served from memory
+            AnalysisStoredResult pending = ResultWriter.get(fileName);
+            if (pending != null) return pending;
+            File file = new File(fileName);
+            if (file.exists()) { //Results removed from disk (expired) cannot be served from the cache
+                AnalysisStoredResult cached = AnalysisResultCache.get(fileName);
+                if (cached != null) return cached;
+            } else {
+                AnalysisResultCache.remove(fileName);
+            }
             try {
-                return ResultDataUtils.getAnalysisResult(fileName);
+                AnalysisStoredResult result = ResultDataUtils.getAnalysisResult(fileName);
+                //The loaded object is cached, so a copy is returned (filtering modifies the result)
+                AnalysisResultCache.put(fileName, result);
+                return new AnalysisStoredResult(result);
             } catch (FileNotFoundException e) {
                 //should be alive is only true when the token follows the rule and the resulting date is in the last 7 days
                 if (Tokenizer.shouldBeAlive(token)) {
@@ -48,6 +125,29 @@ public class TokenUtils {
         throw new ResourceNotFoundException();
     }
 
+    /**
+     * Returns the result of a previous analysis of the same content (see UserData.getContentKey) with the same
+     * options, so the analysis does not need to be performed again. The warnings are the ones of the given data.
+     * Only the results saved with their user data are found (see saveResult(AnalysisStoredResult, UserData))
+     *
+     * @param userData           the parsed user data
+     * @param toHuman            whether the identifiers are projected to human
+     * @param includeInteractors whether the interactors are included
+     * @return the stored result or null if the content has not been analysed (or its result has expired)
+     */
+    public AnalysisStoredResult getExistingResult(UserData userData, boolean toHuman, boolean includeInteractors) {
+        String token = Tokenizer.getContentToken(userData, toHuman, includeInteractors);
+        if (token == null) return null;
+        try {
+            AnalysisStoredResult result = getFromToken(token);
+            result.setWarnings(userData.getWarningMessages());
+            return result;
+        } catch (ResourceNotFoundException | ResourceGoneException e) {
+            logger.trace(String.format("The result for '%s' is not available anymore", token));
+            return null;
+        }
+    }
+
     public AnalysisSummary getAnalysisSummary(String token, Boolean projection, Boolean interactors, String sampleName,
                                               AnalysisType type, String userFileName, String serverName, boolean includeDisease) {
         if (userFileName != null && !userFileName.isEmpty()) {
@@ -68,7 +168,23 @@ public class TokenUtils {
 
     public void saveResult(final AnalysisStoredResult result) {
         String fileName = getFileName(result.getSummary().getToken());
-        ResultDataUtils.kryoSerialisation(result, fileName);
+        //The result is written in the background, so a copy is passed (the caller might filter the result)
+        ResultWriter.save(fileName, new AnalysisStoredResult(result));
+    }
+
+    /**
+     * Same as saveResult(result) but the parsed content of the user data is also associated to the token of the
+     * result, so later analysis of the same content with the same options reuse it (see getExistingResult)
+     *
+     * @param result   the result to be saved
+     * @param userData the parsed user data the result has been obtained from
+     */
+    public void saveResult(final AnalysisStoredResult result, UserData userData) {
+        saveResult(result);
+        AnalysisSummary summary = result.getSummary();
+        boolean toHuman = Boolean.TRUE.equals(summary.isProjection());
+        boolean includeInteractors = Boolean.TRUE.equals(summary.isInteractors());
+        Tokenizer.setContentToken(userData, toHuman, includeInteractors, summary.getToken());
     }
 
 }
@@ -2,6 +2,7 @@ package org.reactome.server.analysis.core.result.utils;
 
 import org.joda.time.DateTime;
 import org.joda.time.Days;
+import org.reactome.server.analysis.core.model.UserData;
 import org.reactome.server.analysis.core.result.exception.ResourceNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,8 +14,9 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Base64;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,25 +27,118 @@ public abstract class Tokenizer {
 
     private static final Logger logger = LoggerFactory.getLogger("tokenizerLogger");
 
-    private static Map<String, String> md5ToToken = new HashMap<String, String>();
-
     private static Long lastToken = 1L;
 
     private static final int DAYS_TO_LIVE = 7;
 
+    private static final String INDEX_FILE = "tokens.idx";
+    private static final String CONTENT_INDEX_FILE = "contents.idx";
+    private static final String CONTENT_PREFIX = "content:"; //Keys of the parsed content can never match an input md5
+    private static final int DEFAULT_INDEX_SIZE = 100_000;
+
+    private static int indexSize = DEFAULT_INDEX_SIZE;
+    private static String directory = null;
+    //The indexes are kept in memory until the directory where they are persisted is set (see setDirectory)
+    private static volatile TokenIndex md5ToToken = createIndex(INDEX_FILE);
+    //The parsed content of the stored results (see setContentToken). Kept apart because a token has a single key per index
+    private static volatile TokenIndex contentToToken = createIndex(CONTENT_INDEX_FILE);
+
     private static final String DATE_PATTERN = "yyyyMMddHHmmss";
 
+    //The tokens are only reused for results of the same data version (set once the data container is loaded)
+    private static volatile Integer databaseVersion = null;
+
     public static String getOrCreateToken(String md5, boolean toHuman, boolean includeInteractors){
-        String token = md5ToToken.get(md5 + toHuman + includeInteractors);
-        if(token==null){
-            token = getToken();
-            md5ToToken.put(md5 + toHuman + includeInteractors, token);
-        }
-        return token;
+        return md5ToToken.getOrCreate(getKey(md5, toHuman, includeInteractors), Tokenizer::getToken);
+    }
+
+    /**
+     * Same as getOrCreateToken in a single atomic operation that also tells whether the token has been created
+     *
+     * @param created set to true when the token did not exist and has been created by this call
+     */
+    public static String getOrCreateToken(String md5, boolean toHuman, boolean includeInteractors, AtomicBoolean created){
+        return md5ToToken.getOrCreate(getKey(md5, toHuman, includeInteractors), Tokenizer::getToken, created);
     }
 
     public static boolean hasToken(String md5, boolean toHuman, boolean includeInteractors){
-        return md5ToToken.containsKey(md5 + toHuman + includeInteractors);
+        return md5ToToken.contains(getKey(md5, toHuman, includeInteractors));
+    }
+
+    /**
+     * Returns the token of a stored result whose user data has the same parsed content (see UserData.getContentKey),
+     * so inputs that only differ in the format get the same token
+     *
+     * @return the token of the stored result or null if the content has not been analysed with this data version
+     */
+    public static String getContentToken(UserData userData, boolean toHuman, boolean includeInteractors){
+        return contentToToken.get(getContentKey(userData, toHuman, includeInteractors));
+    }
+
+    /**
+     * Associates the parsed content of the user data to the token of its stored result (see getContentToken)
+     */
+    public static void setContentToken(UserData userData, boolean toHuman, boolean includeInteractors, String token){
+        contentToToken.put(getContentKey(userData, toHuman, includeInteractors), token);
+    }
+
+    /**
+     * Sets the directory where the tokens are persisted (they are replayed from there when it is first set)
+     *
+     * @param directory the directory where the tokens are persisted (usually the one containing the results)
+     */
+    public static synchronized void setDirectory(String directory) {
+        if (!Objects.equals(directory, Tokenizer.directory)) {
+            Tokenizer.directory = directory;
+            replaceIndex();
+        }
+    }
+
+    /**
+     * Sets the version of the data used for the analysis. The tokens of the results obtained with a different
+     * version are not reused (they expire as usual), so a new release never serves the results of the previous one
+     *
+     * @param version the version of the data used for the analysis (see DatabaseInfo)
+     */
+    public static void setDatabaseVersion(Integer version) {
+        databaseVersion = version;
+    }
+
+    /**
+     * Sets the maximum number of tokens kept to be reused (the oldest ones are discarded first)
+     *
+     * @param size the maximum number of tokens kept to be reused
+     */
+    public static synchronized void setIndexSize(int size) {
+        if (size != indexSize) {
+            indexSize = size;
+            replaceIndex();
+        }
+    }
+
+    private static void replaceIndex() {
+        TokenIndex previous = md5ToToken;
+        md5ToToken = createIndex(INDEX_FILE);
+        previous.close();
+        previous = contentToToken;
+        contentToToken = createIndex(CONTENT_INDEX_FILE);
+        previous.close();
+    }
+
+    //No md5 (hexadecimal), faked md5 (see TokenUtils.getFakedMD5) or content key starts with "v<number>:" so the
+    //versioned keys cannot match the unversioned ones
+    private static String getKey(String md5, boolean toHuman, boolean includeInteractors) {
+        Integer version = databaseVersion;
+        return (version == null ? "" : "v" + version + ":") + md5 + toHuman + includeInteractors;
+    }
+
+    private static String getContentKey(UserData userData, boolean toHuman, boolean includeInteractors) {
+        return getKey(CONTENT_PREFIX + userData.getContentKey(), toHuman, includeInteractors);
+    }
+
+    private static TokenIndex createIndex(String fileName) {
+        String file = directory == null ? null : String.format("%s/%s", directory, fileName);
+        return new TokenIndex(indexSize, TimeUnit.DAYS.toMillis(DAYS_TO_LIVE), file);
     }
 
     public static String getName(String token){
@@ -73,12 +168,12 @@ public abstract class Tokenizer {
         }
 
         if(token!=null){
-            for (String md5 : md5ToToken.keySet()) {
-                if(md5ToToken.get(md5).equals(token)){
-                    md5ToToken.remove(md5);
-                    logger.info(String.format("'%s' has been deleted from the map", token));
-                    return true;
-                }
+            //The file name contains the decoded token (see TokenUtils.getFileName)
+            token = encode(token);
+            //The content of the result is not associated to its token anymore either
+            if(token != null && (contentToToken.removeToken(token) | md5ToToken.removeToken(token))){
+                logger.info(String.format("'%s' has been deleted from the map", token));
+                return true;
             }
             logger.trace(String.format("'%s' not found in the map... (it could be because the server was restarted)", token));
         }else{
@@ -101,8 +196,11 @@ public abstract class Tokenizer {
     private static synchronized String getToken(){
         SimpleDateFormat sdf = new SimpleDateFormat(DATE_PATTERN);
         String current = sdf.format(System.currentTimeMillis());
-        String token = current + "_" + lastToken++;
-        token = Base64.getEncoder().encodeToString(token.getBytes());
+        return encode(current + "_" + lastToken++);
+    }
+
+    private static String encode(String name){
+        String token = Base64.getEncoder().encodeToString(name.getBytes());
         try {
             return URLEncoder.encode(token, "UTF-8");
         } catch (UnsupportedEncodingException e) {
@@ -0,0 +1,116 @@
+package org.reactome.server.analysis.core.util;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Helpers for the expression values, which are kept as primitive arrays where a missing
+ * value is represented by NaN.
+ * <p>
+ * *** IMPORTANT ***
+ * The arrays are shared by reference between the submitted identifier, its mappings and the
+ * result summaries, so they must NOT be modified once created
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public abstract class ExpressionValues {
+
+    public static final double[] EMPTY = new double[0];
+
+    /**
+     * Converts a list of values (where null means missing) to the primitive representation
+     *
+     * @param values the list of values (it can be null)
+     * @return the primitive representation of the values
+     */
+    public static double[] toArray(List<Double> values) {
+        if (values == null || values.isEmpty()) return EMPTY;
+        if (values instanceof ListView) return ((ListView) values).values;
+        double[] rtn = new double[values.size()];
+        int i = 0;
+        for (Double value : values) {
+            rtn[i++] = value == null ? Double.NaN : value;
+        }
+        return rtn;
+    }
+
+    /**
+     * Returns a read only list view of the values (where the missing ones are null). The array is NOT copied
+     *
+     * @param values the primitive representation of the values
+     * @return a read only list view of the values
+     */
+    public static List<Double> asList(double[] values) {
+        return new ListView(values == null ? EMPTY : values);
+    }
+
+    /**
+     * Calculates the average of each column (the missing values are skipped and a column without
+     * values results in a missing value)
+     *
+     * @param rows the expression values of the different identifiers
+     * @return the average of each column
+     */
+    public static double[] average(Collection<double[]> rows) {
+        int columns = 0;
+        for (double[] row : rows) columns = Math.max(columns, row.length);
+        if (columns == 0) return EMPTY;
+        Accumulator accumulator = new Accumulator(columns);
+        for (double[] row : rows) accumulator.add(row);
+        return accumulator.getAverage();
+    }
+
+    /**
+     * Keeps the sum and the number of (non missing) values per column so the averages can be
+     * calculated in one pass over the expression values
+     */
+    public static class Accumulator {
+        private final double[] sum;
+        private final int[] count;
+
+        public Accumulator(int columns) {
+            this.sum = new double[columns];
+            this.count = new int[columns];
+        }
+
+        public void add(double[] row) {
+            int n = Math.min(row.length, sum.length);
+            //No branches in the loop so it can be vectorised (v != v only for NaN)
+            for (int i = 0; i < n; i++) {
+                double v = row[i];
+                boolean present = v == v;
+                sum[i] += present ? v : 0.0;
+                count[i] += present ? 1 : 0;
+            }
+        }
+
+        public double[] getAverage() {
+            double[] avg = new double[sum.length];
+            for (int i = 0; i < avg.length; i++) {
+                avg[i] = count[i] > 0 ? sum[i] / count[i] : Double.NaN;
+            }
+            return avg;
+        }
+    }
+
+    private static class ListView extends AbstractList<Double> implements RandomAccess {
+        private final double[] values;
+
+        ListView(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Double get(int index) {
+            double value = values[index];
+            return Double.isNaN(value) ? null : value;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+}
@@ -12,8 +12,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.DigestUtils;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -34,8 +40,29 @@ public abstract class InputUtils {
         return processData(input, md5);
     }
 
+    /**
+     * Parses the content of the stream while it is read, so the whole content is never kept in memory.
+     * The MD5 is calculated incrementally over the decoded content encoded back with the default charset, so it
+     * matches the one of getUserData(String) (input.getBytes()) even when the input is not valid in that charset
+     */
     public static UserData getUserData(InputStream is) throws IOException, ParserException {
-        return getUserData(IOUtils.toString(is));
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 algorithm not available", e);
+        }
+        InputFormat parser = new InputFormat();
+        //Same charset used by IOUtils.toString(is) and String.getBytes()
+        DigestReader reader = new DigestReader(new InputStreamReader(is, Charset.defaultCharset()), digest);
+        parser.parseData(reader);
+        reader.finish();
+
+        StringBuilder md5 = new StringBuilder(32);
+        for (byte b : digest.digest()) {
+            md5.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return new UserData(parser.getHeaderColumnNames(), parser.getAnalysisIdentifierSet(), md5.toString(), parser.getWarningResponses());
     }
 
     public static ExternalAnalysisResult getExternalAnalysisResult(String input) throws IOException {
@@ -64,14 +91,15 @@ public abstract class InputUtils {
         if(line==null || line.isEmpty()) return rtn;
         String[] data = line.split("\\t");
         if(data.length>0){
-            rtn = new AnalysisIdentifier(data[0].trim());
+            double[] exp = new double[data.length - 1];
             for(int i=1; i<data.length; ++i){
                 try{
-                    rtn.add(Double.valueOf(data[i].trim()));
+                    exp[i - 1] = Double.parseDouble(data[i].trim());
                 }catch (NumberFormatException nfe){
-                    rtn.add(null); //null won't be taken into account for the AVG
+                    exp[i - 1] = Double.NaN; //missing values won't be taken into account for the AVG
                 }
             }
+            rtn = new AnalysisIdentifier(data[0].trim(), exp);
         }
         return rtn;
     }
@@ -82,4 +110,81 @@ public abstract class InputUtils {
 
         return new UserData(parser.getHeaderColumnNames(), parser.getAnalysisIdentifierSet(), md5, parser.getWarningResponses());
     }
+
+    /**
+     * Updates the digest with the read characters encoded in the default charset the same way String.getBytes()
+     * does (unmappable characters are replaced). A high surrogate at the end of a read is kept until the next one
+     */
+    private static class DigestReader extends FilterReader {
+
+        private final MessageDigest digest;
+        private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes = ByteBuffer.allocate(8192);
+        private CharBuffer chars = CharBuffer.allocate(8192);
+        private boolean finished = false;
+
+        DigestReader(Reader in, MessageDigest digest) {
+            super(in);
+            this.digest = digest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            char[] c = new char[1];
+            int n = read(c, 0, 1);
+            return n == -1 ? -1 : c[0];
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int n = in.read(cbuf, off, len);
+            if (n > 0) {
+                if (chars.remaining() < n) {
+                    CharBuffer aux = CharBuffer.allocate(chars.position() + n);
+                    chars.flip();
+                    chars = aux.put(chars);
+                }
+                chars.put(cbuf, off, n);
+                encode(false);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            throw new UnsupportedOperationException("Skipped characters would not be digested");
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        //Digests the rest of the content (the parser might not read it all, i.e. after a header error)
+        void finish() throws IOException {
+            if (finished) return;
+            char[] buffer = new char[8192];
+            //noinspection StatementWithEmptyBody
+            while (read(buffer, 0, buffer.length) != -1) ;
+            encode(true);
+            while (encoder.flush(bytes).isOverflow()) update();
+            update();
+            finished = true;
+        }
+
+        private void encode(boolean endOfInput) {
+            chars.flip();
+            while (encoder.encode(chars, bytes, endOfInput).isOverflow()) update();
+            update();
+            chars.compact();
+        }
+
+        private void update() {
+            bytes.flip();
+            digest.update(bytes);
+            bytes.clear();
+        }
+    }
 }
@@ -0,0 +1,324 @@
+package org.reactome.server.analysis.core.util;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import com.esotericsoftware.kryo.util.Pool;
+import com.googlecode.concurrenttrees.radix.node.util.AtomicReferenceArrayListAdapter;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.reactome.server.analysis.core.model.*;
+import org.reactome.server.analysis.core.model.identifier.Identifier;
+import org.reactome.server.analysis.core.model.identifier.InteractorIdentifier;
+import org.reactome.server.analysis.core.model.identifier.MainIdentifier;
+import org.reactome.server.analysis.core.model.identifier.OtherIdentifier;
+import org.reactome.server.analysis.core.model.resource.MainResource;
+import org.reactome.server.analysis.core.model.resource.Resource;
+import org.reactome.server.analysis.core.model.resource.ResourceFactory;
+import org.reactome.server.analysis.core.result.AnalysisStoredResult;
+import org.reactome.server.analysis.core.result.PathwayNodeSummary;
+import org.reactome.server.analysis.core.result.model.AnalysisSummary;
+import org.reactome.server.analysis.core.result.model.ExpressionSummary;
+import org.reactome.server.analysis.core.result.model.ResourceSummary;
+import org.reactome.server.analysis.core.result.model.SpeciesSummary;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Shared pool of configured Kryo instances (and their Input/Output buffers) used for the data container,
+ * the hierarchies cloning and the analysis results, so the Kryo set up is not paid on every call.
+ * <p>
+ * The classes of the model are registered with fixed ids so they are written as an id instead of their name.
+ * Result files written before the registration (class written by name) can still be read.
+ * <p>
+ * The hot classes of the model implement KryoSerializable (compact hand written serialisation) and the resources
+ * and species are written by name/id and resolved to the shared instances of their factories when read. Result
+ * files written before that have to be read with the LEGACY configuration (every class serialised field by field,
+ * and the classes whose fields changed since then read through the LegacySerializers). Data files written before
+ * that are not supported and have to be regenerated (see AnalysisDataUtils)
+ * <p>
+ * *** IMPORTANT ***
+ * The ids are written in the binary and result files, so the list of registered classes can only be extended
+ * at the END and a registered class can never be removed (replace it by a placeholder instead)
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public abstract class KryoPool {
+
+    private static final int FIRST_ID = 100; //Far from the ids used by Kryo for its default registrations
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Class<?>[] REGISTERED = {
+            //java.util
+            ArrayList.class, LinkedList.class, HashMap.class, LinkedHashMap.class, TreeMap.class,
+            HashSet.class, LinkedHashSet.class, TreeSet.class,
+            //Model
+            MapSet.class, SpeciesNode.class, AnalysisType.class, AnalysisIdentifier.class, AnalysisReaction.class,
+            Identifier.class, MainIdentifier.class, InteractorIdentifier.class, OtherIdentifier.class,
+            Resource.class, MainResource.class, PathwayNodeData.class, PathwayNode.class, PathwayRoot.class,
+            PathwayHierarchy.class, HierarchiesData.class, EntityNode.class, InteractorNode.class, Modification.class,
+            PsiModNode.class, EntitiesContainer.class, IdentifiersMap.class, DatabaseInfo.class, DataContainer.class,
+            double[].class, int[].class, long[].class,
+            //Results
+            AnalysisStoredResult.class, PathwayNodeSummary.class, AnalysisSummary.class, ExpressionSummary.class,
+            ResourceSummary.class, SpeciesSummary.class
+    };
+
+    private static final Pool<Kryo> kryoPool = new Pool<Kryo>(true, true) {
+        @Override
+        protected Kryo create() {
+            return KryoPool.create(false);
+        }
+    };
+
+    private static final Pool<Kryo> legacyPool = new Pool<Kryo>(true, true) {
+        @Override
+        protected Kryo create() {
+            return KryoPool.create(true);
+        }
+    };
+
+    private static final Pool<Output> outputPool = new Pool<Output>(true, true) {
+        @Override
+        protected Output create() {
+            return new Output(BUFFER_SIZE, -1);
+        }
+    };
+
+    private static final Pool<Input> inputPool = new Pool<Input>(true, true) {
+        @Override
+        protected Input create() {
+            return new Input(BUFFER_SIZE);
+        }
+    };
+
+    private static Kryo create(boolean legacy) {
+        Kryo kryo = new Kryo();
+        kryo.setRegistrationRequired(false);
+        kryo.setReferences(true);
+        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        // Kryo's default registration for AtomicReferenceArrayListAdapter is CollectionSerializer(it implements List).
+        // CollectionSerializer doesn't know how to create a valid new instance of AtomicReferenceArrayListAdapter.
+        // Overrides Kryo's default registration and tells it to use FieldSerializer instead of CollectionSerializer.
+        kryo.register(AtomicReferenceArrayListAdapter.class, new FieldSerializer<>(kryo, AtomicReferenceArrayListAdapter.class));
+        if (legacy) {
+            //Takes precedence over Kryo's default serializer for KryoSerializable
+            kryo.addDefaultSerializer(KryoSerializable.class, FieldSerializer.class);
+            LegacySerializers.addDefaultSerializers(kryo);
+        }
+        for (int i = 0; i < REGISTERED.length; i++) {
+            Serializer serializer = legacy ? getLegacySerializer(kryo, REGISTERED[i]) : getSerializer(REGISTERED[i]);
+            if (serializer == null) {
+                kryo.register(REGISTERED[i], FIRST_ID + i);
+            } else {
+                kryo.register(REGISTERED[i], serializer, FIRST_ID + i);
+            }
+        }
+        return kryo;
+    }
+
+    private static Serializer getSerializer(Class<?> clazz) {
+        if (Resource.class.isAssignableFrom(clazz)) return new ResourceSerializer();
+        if (SpeciesNode.class.equals(clazz)) return new SpeciesNodeSerializer();
+        return null;
+    }
+
+    private static Serializer getLegacySerializer(Kryo kryo, Class<?> clazz) {
+        if (AnalysisIdentifier.class.equals(clazz)) return LegacySerializers.getAnalysisIdentifierSerializer(kryo);
+        return null;
+    }
+
+    /**
+     * Runs the action with a Kryo instance taken from the pool (it cannot be used after the action finishes)
+     *
+     * @param action what has to be done with the Kryo instance
+     * @return the value returned by the action
+     */
+    public static <R> R run(Function<Kryo, R> action) {
+        return run(action, false);
+    }
+
+    /**
+     * Runs the action with a Kryo instance taken from the pool (it cannot be used after the action finishes)
+     *
+     * @param action what has to be done with the Kryo instance
+     * @param legacy true to use the configuration for the files written before the compact serialisation
+     * @return the value returned by the action
+     */
+    public static <R> R run(Function<Kryo, R> action, boolean legacy) {
+        Pool<Kryo> pool = legacy ? legacyPool : kryoPool;
+        Kryo kryo = pool.obtain();
+        try {
+            return action.apply(kryo);
+        } finally {
+            pool.free(kryo);
+        }
+    }
+
+    /**
+     * Creates a Kryo instance with the configuration of the pool that is NOT taken from it (e.g. to compare the
+     * cost of configuring an instance per call with the pooled ones)
+     *
+     * @param legacy true to use the configuration for the files written before the compact serialisation
+     * @return a new Kryo instance
+     */
+    public static Kryo newInstance(boolean legacy) {
+        return create(legacy);
+    }
+
+    public static Kryo obtain() {
+        return kryoPool.obtain();
+    }
+
+    public static void free(Kryo kryo) {
+        kryoPool.free(kryo);
+    }
+
+    public static <T> T copy(T object) {
+        //KryoSerializable does not support copying so the field by field (legacy) configuration is used instead
+        return run(kryo -> kryo.copy(object), true);
+    }
+
+    /**
+     * Writes the object (and its class) to the stream. The stream is flushed but not closed
+     *
+     * @param stream where the object is written
+     * @param object the object to be written
+     */
+    public static void write(OutputStream stream, Object object) {
+        write(stream, object, false);
+    }
+
+    /**
+     * Writes the object (and its class) to the stream. The stream is flushed but not closed
+     *
+     * @param stream where the object is written
+     * @param object the object to be written
+     * @param legacy true to use the configuration for the files written before the compact serialisation
+     */
+    public static void write(OutputStream stream, Object object, boolean legacy) {
+        Output output = outputPool.obtain();
+        try {
+            output.setOutputStream(stream);
+            run(kryo -> {
+                kryo.writeClassAndObject(output, object);
+                return null;
+            }, legacy);
+            output.flush();
+        } finally {
+            output.setOutputStream(null);
+            outputPool.free(output);
+        }
+    }
+
+    /**
+     * Reads an object (and its class) from the stream. The stream is not closed
+     *
+     * @param stream where the object is read from
+     * @return the object read from the stream
+     */
+    public static Object read(InputStream stream) {
+        return read(stream, false);
+    }
+
+    /**
+     * Reads an object (and its class) from the stream. The stream is not closed
+     *
+     * @param stream where the object is read from
+     * @param legacy true to use the configuration for the files written before the compact serialisation
+     * @return the object read from the stream
+     */
+    public static Object read(InputStream stream, boolean legacy) {
+        Input input = inputPool.obtain();
+        try {
+            input.setInputStream(stream);
+            return run(kryo -> kryo.readClassAndObject(input), legacy);
+        } finally {
+            input.setInputStream(null);
+            inputPool.free(input);
+        }
+    }
+
+    /**
+     * Reads an object (and its class) from the buffer (e.g. a section of a memory mapped file)
+     *
+     * @param buffer where the object is read from (its position is not modified)
+     * @return the object read from the buffer
+     */
+    public static Object read(ByteBuffer buffer) {
+        return run(kryo -> kryo.readClassAndObject(new ByteBufferInput(buffer.duplicate())));
+    }
+
+    //Helpers for the KryoSerializable implementations of the model (nullable wrappers without class tags)
+
+    public static void writeInteger(Output output, Integer value) {
+        output.writeBoolean(value != null);
+        if (value != null) output.writeVarInt(value, true);
+    }
+
+    public static Integer readInteger(Input input) {
+        return input.readBoolean() ? input.readVarInt(true) : null;
+    }
+
+    public static void writeLong(Output output, Long value) {
+        output.writeBoolean(value != null);
+        if (value != null) output.writeVarLong(value, true);
+    }
+
+    public static Long readLong(Input input) {
+        return input.readBoolean() ? input.readVarLong(true) : null;
+    }
+
+    public static void writeDouble(Output output, Double value) {
+        output.writeBoolean(value != null);
+        if (value != null) output.writeDouble(value);
+    }
+
+    public static Double readDouble(Input input) {
+        return input.readBoolean() ? input.readDouble() : null;
+    }
+
+    //The resources are written by name and resolved to the shared instance kept by the ResourceFactory
+    private static class ResourceSerializer extends Serializer<Resource> {
+        ResourceSerializer() {
+            setImmutable(true);
+        }
+
+        @Override
+        public void write(Kryo kryo, Output output, Resource resource) {
+            output.writeString(resource.getName());
+        }
+
+        @Override
+        public Resource read(Kryo kryo, Input input, Class<? extends Resource> type) {
+            return ResourceFactory.getResource(input.readString());
+        }
+    }
+
+    //The species are written by id and resolved to the shared instance kept by the SpeciesNodeFactory
+    private static class SpeciesNodeSerializer extends Serializer<SpeciesNode> {
+        SpeciesNodeSerializer() {
+            setImmutable(true);
+        }
+
+        @Override
+        public void write(Kryo kryo, Output output, SpeciesNode species) {
+            writeLong(output, species.getSpeciesID());
+            output.writeString(species.getTaxID());
+            output.writeString(species.getName());
+        }
+
+        @Override
+        public SpeciesNode read(Kryo kryo, Input input, Class<? extends SpeciesNode> type) {
+            return SpeciesNodeFactory.getSpeciesNode(readLong(input), input.readString(), input.readString());
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package org.reactome.server.analysis.core.util;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import java.io.Serializable;
 import java.util.*;
 import java.util.stream.Stream;
@@ -7,7 +12,7 @@ import java.util.stream.Stream;
 /**
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
  */
-public class MapSet<S,T> implements Serializable {
+public class MapSet<S,T> implements Serializable, KryoSerializable {
 
     protected Map<S, Set<T>> map = new HashMap<>();
 
@@ -68,4 +73,76 @@ public class MapSet<S,T> implements Serializable {
     public Stream<Map.Entry<S, Set<T>>> stream() {
         return map.entrySet().stream();
     }
+
+    /*
+     * Keys and elements are usually all of the same class, so in that case the class is written once
+     * (for the keys and for each set) instead of once per element
+     */
+    @Override
+    public void write(Kryo kryo, Output output) {
+        output.writeVarInt(map.size(), true);
+        Class<?> keyClass = getUniqueClass(map.keySet());
+        kryo.writeClass(output, keyClass);
+        for (Map.Entry<S, Set<T>> entry : map.entrySet()) {
+            write(kryo, output, keyClass, entry.getKey());
+            Set<T> set = entry.getValue();
+            output.writeVarInt(set.size(), true);
+            Class<?> elemClass = getUniqueClass(set);
+            kryo.writeClass(output, elemClass);
+            for (T elem : set) {
+                write(kryo, output, elemClass, elem);
+            }
+        }
+    }
+
+    @Override
+    public void read(Kryo kryo, Input input) {
+        int size = input.readVarInt(true);
+        this.map = new HashMap<>(capacity(size));
+        Class<?> keyClass = getType(kryo.readClass(input));
+        for (int i = 0; i < size; i++) {
+            S key = read(kryo, input, keyClass);
+            int n = input.readVarInt(true);
+            Set<T> set = new HashSet<>(capacity(n));
+            Class<?> elemClass = getType(kryo.readClass(input));
+            for (int j = 0; j < n; j++) {
+                set.add(read(kryo, input, elemClass));
+            }
+            map.put(key, set);
+        }
+    }
+
+    private static Class<?> getUniqueClass(Collection<?> elements) {
+        Class<?> rtn = null;
+        for (Object element : elements) {
+            if (element == null) return null;
+            if (rtn == null) {
+                rtn = element.getClass();
+            } else if (!rtn.equals(element.getClass())) {
+                return null;
+            }
+        }
+        return rtn;
+    }
+
+    private static void write(Kryo kryo, Output output, Class<?> clazz, Object object) {
+        if (clazz != null) {
+            kryo.writeObject(output, object);
+        } else {
+            kryo.writeClassAndObject(output, object);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> E read(Kryo kryo, Input input, Class<?> clazz) {
+        return clazz != null ? (E) kryo.readObject(input, clazz) : (E) kryo.readClassAndObject(input);
+    }
+
+    private static Class<?> getType(Registration registration) {
+        return registration != null ? registration.getType() : null;
+    }
+
+    private static int capacity(int size) {
+        return Math.max(16, (int) (size / 0.75f) + 1);
+    }
 }
@@ -1,23 +1,170 @@
 package org.reactome.server.analysis.core.util;
 
-import cern.jet.random.Binomial;
-import cern.jet.random.engine.DRand;
-import cern.jet.random.engine.RandomEngine;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
+ * Thread-safe binomial p-value calculation. The upper tail of the binomial distribution is calculated
+ * directly with the regularized incomplete beta function, so there is no need to create a distribution
+ * object (neither a shared random engine) per call.
+ * <p>
+ * Within the same analysis, the same (sampleSize, ratio, success) triples are calculated many times
+ * (different pathways with the same ratio and found elements) so the results are kept in a fixed-size
+ * lock-free cache where a slot is simply overwritten in case of collision.
+ *
  * @author Antonio Fabregat <fabregat@ebi.ac.uk>
  */
 public class MathUtilities {
 
-    private static RandomEngine randomEngine = new DRand();
+    private static final int CACHE_SIZE = 1 << 14; //Has to be a power of two
+    private static final AtomicReferenceArray<PValue> cache = new AtomicReferenceArray<>(CACHE_SIZE);
 
+    //Log-factorials are cached up to this number. Bigger ones are calculated with the Lanczos approximation
+    private static final int MAX_CACHED_FACTORIAL = 1 << 20;
+    private static volatile double[] logFactorials = new double[]{0d, 0d};
+
+    //Continued fraction parameters
+    private static final int MAX_ITERATIONS = 1000;
+    private static final double EPSILON = 1e-15;
+    private static final double FPMIN = Double.MIN_VALUE / EPSILON;
+
+    private static final double[] LANCZOS = {
+            0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+            -176.61502916214059, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6,
+            1.5056327351493116e-7
+    };
+
+    /**
+     * Calculates the probability of getting at least 'success' hits in 'sampleSize' trials when each
+     * trial has 'ratio' probability of being a hit (upper tail of the binomial distribution)
+     *
+     * @param ratio      the probability of a single trial being a hit
+     * @param sampleSize the number of trials
+     * @param success    the number of hits
+     * @return the probability of getting 'success' or more hits
+     */
     public static double calculatePValue(double ratio, int sampleSize, int success) {
-        if(ratio==1.d) return 0d;
-        Binomial binomial = new Binomial(sampleSize, ratio, randomEngine);
-        if(success == 0){ // To avoid unreasonable value
+        if (ratio == 1.d) return 0d;
+        if (success == 0) { // To avoid unreasonable value
             success = 1;
         }
-        return 1.0d - binomial.cdf(success - 1);
+        if (success > sampleSize) return 0d;
+
+        int slot = slot(ratio, sampleSize, success);
+        PValue pValue = cache.get(slot);
+        if (pValue != null && pValue.matches(ratio, sampleSize, success)) return pValue.value;
+
+        double value = binomialUpperTail(ratio, sampleSize, success);
+        cache.set(slot, new PValue(ratio, sampleSize, success, value));
+        return value;
+    }
+
+    /**
+     * P(X >= k) for X ~ Binomial(n, p) which corresponds to the regularized incomplete beta I_p(k, n - k + 1)
+     */
+    private static double binomialUpperTail(double p, int n, int k) {
+        if (p <= 0d) return 0d;
+        if (k == 1) return -Math.expm1(n * Math.log1p(-p)); // 1 - (1-p)^n without losing precision
+        return regularizedIncompleteBeta(p, k, n - k + 1);
+    }
+
+    /**
+     * Regularized incomplete beta function I_x(a, b) for positive integer a and b, evaluated with
+     * the modified Lentz's method on the continued fraction
+     */
+    private static double regularizedIncompleteBeta(double x, int a, int b) {
+        if (x <= 0d) return 0d;
+        if (x >= 1d) return 1d;
+        //The continued fraction converges rapidly for x < (a + 1) / (a + b + 2), otherwise the symmetry is used
+        if (x > (a + 1d) / (a + b + 2d)) {
+            return 1d - regularizedIncompleteBeta(1d - x, b, a);
+        }
+        //ln(B(a,b)) = lnGamma(a) + lnGamma(b) - lnGamma(a+b) and lnGamma(m) = ln((m-1)!)
+        double logBeta = logFactorial(a - 1) + logFactorial(b - 1) - logFactorial(a + b - 1);
+        double front = Math.exp(a * Math.log(x) + b * Math.log1p(-x) - logBeta) / a;
+
+        double c = 1d;
+        double d = 1d - (a + b) * x / (a + 1d);
+        if (Math.abs(d) < FPMIN) d = FPMIN;
+        d = 1d / d;
+        double h = d;
+        for (int m = 1; m <= MAX_ITERATIONS; m++) {
+            int m2 = 2 * m;
+            //Even step
+            double aa = m * (b - (double) m) * x / ((a + m2 - 1d) * (a + m2));
+            d = 1d + aa * d;
+            if (Math.abs(d) < FPMIN) d = FPMIN;
+            c = 1d + aa / c;
+            if (Math.abs(c) < FPMIN) c = FPMIN;
+            d = 1d / d;
+            h *= d * c;
+            //Odd step
+            aa = -(a + (double) m) * (a + b + (double) m) * x / ((a + m2) * (a + m2 + 1d));
+            d = 1d + aa * d;
+            if (Math.abs(d) < FPMIN) d = FPMIN;
+            c = 1d + aa / c;
+            if (Math.abs(c) < FPMIN) c = FPMIN;
+            d = 1d / d;
+            double del = d * c;
+            h *= del;
+            if (Math.abs(del - 1d) < EPSILON) break;
+        }
+        return front * h;
+    }
+
+    private static double logFactorial(int n) {
+        double[] table = logFactorials;
+        if (n < table.length) return table[n];
+        if (n >= MAX_CACHED_FACTORIAL) return logGamma(n + 1d);
+        return growLogFactorials(n)[n];
     }
 
+    private static synchronized double[] growLogFactorials(int n) {
+        double[] table = logFactorials;
+        if (n < table.length) return table;
+        int length = Math.min(MAX_CACHED_FACTORIAL, Math.max(n + 1, table.length * 2));
+        double[] aux = new double[length];
+        System.arraycopy(table, 0, aux, 0, table.length);
+        for (int i = table.length; i < length; i++) {
+            aux[i] = aux[i - 1] + Math.log(i);
+        }
+        return logFactorials = aux;
+    }
+
+    //Lanczos approximation (g = 7) of ln(Gamma(x)) for x > 0.5
+    private static double logGamma(double x) {
+        x -= 1d;
+        double sum = LANCZOS[0];
+        double t = x + 7.5;
+        for (int i = 1; i < LANCZOS.length; i++) {
+            sum += LANCZOS[i] / (x + i);
+        }
+        return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+    }
+
+    private static int slot(double ratio, int sampleSize, int success) {
+        long bits = Double.doubleToLongBits(ratio);
+        int h = (int) (bits ^ (bits >>> 32));
+        h = 31 * (31 * h + sampleSize) + success;
+        h *= 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (CACHE_SIZE - 1);
+    }
+
+    private static final class PValue {
+        final double ratio;
+        final int sampleSize;
+        final int success;
+        final double value;
+
+        PValue(double ratio, int sampleSize, int success, double value) {
+            this.ratio = ratio;
+            this.sampleSize = sampleSize;
+            this.success = success;
+            this.value = value;
+        }
+
+        boolean matches(double ratio, int sampleSize, int success) {
+            return this.sampleSize == sampleSize && this.success == success
+                    && Double.doubleToLongBits(this.ratio) == Double.doubleToLongBits(ratio);
+        }
+    }
 }
@@ -0,0 +1,120 @@
+package org.reactome.server.analysis.core.util;
+
+import java.util.Arrays;
+
+/**
+ * A compact set of non-negative integers stored as 64-bit words in an open-addressing hash table
+ * (word index -> word). Only the words containing at least one bit are allocated, so sets of a few
+ * elements spread over a large range of ids remain small. The cardinality is kept updated on every
+ * insertion, so counting is a constant time operation.
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public class SparseBitSet {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private long[] words;
+    private int used = 0;
+    private int cardinality = 0;
+
+    public SparseBitSet() {
+        this(4);
+    }
+
+    public SparseBitSet(int expectedWords) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedWords) * 2 - 1) << 1;
+        this.keys = new int[capacity];
+        this.words = new long[capacity];
+        Arrays.fill(this.keys, EMPTY);
+    }
+
+    /**
+     * Adds a bit to the set
+     *
+     * @param bit the bit to be added (non-negative)
+     * @return true if the bit was not previously set
+     */
+    public boolean add(int bit) {
+        if (bit < 0) throw new IllegalArgumentException("Only non-negative values can be stored: " + bit);
+        int key = bit >>> 6;
+        long mask = 1L << bit; //Only the six lowest-order bits are taken into account for the shift
+        int slot = slot(key);
+        if (keys[slot] == EMPTY) {
+            if ((used + 1) * 4 > keys.length * 3) {
+                rehash();
+                slot = slot(key);
+            }
+            keys[slot] = key;
+            used++;
+        }
+        if ((words[slot] & mask) != 0) return false;
+        words[slot] |= mask;
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * Adds all the bits set in the other set (union)
+     *
+     * @param other the set whose bits are added to this one
+     */
+    public void or(SparseBitSet other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            int key = other.keys[i];
+            if (key == EMPTY) continue;
+            int slot = slot(key);
+            if (keys[slot] == EMPTY) {
+                if ((used + 1) * 4 > keys.length * 3) {
+                    rehash();
+                    slot = slot(key);
+                }
+                keys[slot] = key;
+                used++;
+            }
+            long word = words[slot] | other.words[i];
+            cardinality += Long.bitCount(word) - Long.bitCount(words[slot]);
+            words[slot] = word;
+        }
+    }
+
+    public boolean contains(int bit) {
+        if (bit < 0) return false;
+        int slot = slot(bit >>> 6);
+        return keys[slot] != EMPTY && (words[slot] & (1L << bit)) != 0;
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int h = key * 0x9E3779B9;
+        int i = (h ^ (h >>> 16)) & mask;
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void rehash() {
+        int[] oldKeys = this.keys;
+        long[] oldWords = this.words;
+        this.keys = new int[oldKeys.length << 1];
+        this.words = new long[oldWords.length << 1];
+        Arrays.fill(this.keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                words[slot] = oldWords[i];
+            }
+        }
+    }
+}
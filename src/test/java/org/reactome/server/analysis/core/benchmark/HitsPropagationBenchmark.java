@@ -0,0 +1,62 @@
+package org.reactome.server.analysis.core.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reactome.server.analysis.core.data.AnalysisData;
+import org.reactome.server.analysis.core.methods.EnrichmentAnalysis;
+import org.reactome.server.analysis.core.model.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the bottom-up propagation of the hits (aggregated once per analysis) against adding them to every
+ * ancestor of the hit pathways per identifier, analysing a full genome submission (all the human identifiers)
+ * <p>
+ * It needs the analysis data file, passed with -Danalysis.data.file=/path/to/analysis.bin
+ * Run through its main method with the test classpath
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class HitsPropagationBenchmark {
+
+    @Param({"true", "false"})
+    private boolean bottomUp;
+
+    private EnrichmentAnalysis enrichmentAnalysis;
+    private Set<AnalysisIdentifier> submission;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        AnalysisData analysisData = new AnalysisData();
+        analysisData.setFileName(System.getProperty("analysis.data.file"));
+        if (!analysisData.waitForContainer()) throw new IllegalStateException("The analysis data file could not be loaded");
+        HierarchiesData.setBottomUpPropagation(bottomUp);
+        enrichmentAnalysis = new EnrichmentAnalysis(analysisData);
+        submission = new HashSet<>();
+        EntitiesContainer entities = analysisData.getPhysicalEntityContainer();
+        for (EntityNode node : entities.getSpeciesNodes(SpeciesNodeFactory.getHumanNode())) {
+            if (node.getIdentifier() != null) submission.add(node.getIdentifier().getValue());
+        }
+    }
+
+    @Benchmark
+    public HierarchiesData fullGenome() {
+        HierarchiesData data = enrichmentAnalysis.overRepresentation(submission, null, false);
+        data.getUniqueHitPathways(null); //The hits are propagated when the result is read
+        return data;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HitsPropagationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
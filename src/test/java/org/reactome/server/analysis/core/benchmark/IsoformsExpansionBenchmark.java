@@ -0,0 +1,103 @@
+package org.reactome.server.analysis.core.benchmark;
+
+import com.googlecode.concurrenttrees.radix.ConcurrentRadixTree;
+import com.googlecode.concurrenttrees.radix.RadixTree;
+import com.googlecode.concurrenttrees.radix.node.concrete.DefaultCharSequenceNodeFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reactome.server.analysis.core.model.AnalysisIdentifier;
+import org.reactome.server.analysis.core.model.IdentifiersMap;
+import org.reactome.server.analysis.core.model.resource.Resource;
+import org.reactome.server.analysis.core.model.resource.ResourceFactory;
+import org.reactome.server.analysis.core.util.MapSet;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking up a submission of UniProt accessions with the isoforms side table and the accession recognizer
+ * (IdentifiersMap.get) against the previous approach: matching the UniProt regular expression for every identifier
+ * followed by a prefix scan of the radix tree
+ * <p>
+ * Run through its main method with the test classpath
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IsoformsExpansionBenchmark {
+
+    private static final String UNIPROT = "[OPQ][0-9][A-Z0-9]{3}[0-9]|[A-NR-Z][0-9]([A-Z][A-Z0-9]{2}[0-9]){1,2}";
+
+    @Param({"20000"})
+    private int submissionSize;
+
+    private IdentifiersMap<Integer> map;
+    private RadixTree<MapSet<Resource, Integer>> tree;
+    private List<AnalysisIdentifier> submission;
+
+    @Setup
+    public void setUp() {
+        Resource uniprot = ResourceFactory.getResource("UniProt");
+        Random random = new Random(42);
+        map = new IdentifiersMap<>();
+        tree = new ConcurrentRadixTree<>(new DefaultCharSequenceNodeFactory());
+        List<String> accessions = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            String accession = String.format("%c%05d", i % 2 == 0 ? 'P' : 'Q', i);
+            accessions.add(accession);
+            add(accession, uniprot, i);
+            int isoforms = random.nextInt(10) == 0 ? 1 + random.nextInt(3) : 0;
+            for (int j = 2; j < isoforms + 2; j++) add(accession + "-" + j, uniprot, i);
+        }
+        Collections.shuffle(accessions, random);
+        submission = new ArrayList<>();
+        for (String accession : accessions.subList(0, submissionSize)) {
+            submission.add(new AnalysisIdentifier(accession));
+        }
+    }
+
+    private void add(String identifier, Resource resource, Integer node) {
+        map.add(identifier, resource, node);
+        MapSet<Resource, Integer> aux = tree.getValueForExactKey(identifier);
+        if (aux == null) tree.put(identifier, aux = new MapSet<>());
+        aux.add(resource, node);
+    }
+
+    @Benchmark
+    public void sideTable(Blackhole blackhole) {
+        for (AnalysisIdentifier identifier : submission) {
+            blackhole.consume(map.get(identifier));
+        }
+    }
+
+    @Benchmark
+    public void regexAndPrefixScan(Blackhole blackhole) {
+        for (AnalysisIdentifier identifier : submission) {
+            Set<String> identifiers = new HashSet<>();
+            identifiers.add(identifier.getId());
+            if (identifier.getId().matches(UNIPROT)) {
+                for (CharSequence key : tree.getKeysStartingWith(identifier.getId() + "-")) {
+                    identifiers.add(key.toString());
+                }
+            }
+            MapSet<Resource, Integer> rtn = new MapSet<>();
+            for (String id : identifiers) {
+                MapSet<Resource, Integer> res = tree.getValueForExactKey(id.toUpperCase());
+                if (res != null) rtn.addAll(res);
+            }
+            blackhole.consume(rtn);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(IsoformsExpansionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
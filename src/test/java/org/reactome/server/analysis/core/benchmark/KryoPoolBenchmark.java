@@ -0,0 +1,116 @@
+package org.reactome.server.analysis.core.benchmark;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reactome.server.analysis.core.data.AnalysisData;
+import org.reactome.server.analysis.core.methods.EnrichmentAnalysis;
+import org.reactome.server.analysis.core.model.*;
+import org.reactome.server.analysis.core.result.AnalysisStoredResult;
+import org.reactome.server.analysis.core.result.model.AnalysisSummary;
+import org.reactome.server.analysis.core.util.KryoPool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures saving, loading and cloning the result of a full genome submission (all the human identifiers) with
+ * the shared Kryo instances (and buffers) of the KryoPool against configuring a new Kryo instance (and buffers) per
+ * call as it was done before the pool, for both the compact and the legacy configurations
+ * <p>
+ * It needs the analysis data file, passed with -Danalysis.data.file=/path/to/analysis.bin
+ * Run through its main method with the test classpath
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class KryoPoolBenchmark {
+
+    @Param({"false", "true"})
+    private boolean legacy;
+
+    private AnalysisStoredResult result;
+    private byte[] serialised;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        result = getFullGenomeResult(getAnalysisData());
+        serialised = save();
+    }
+
+    //The analysis data file passed with -Danalysis.data.file
+    static AnalysisData getAnalysisData() throws InterruptedException {
+        AnalysisData analysisData = new AnalysisData();
+        analysisData.setFileName(System.getProperty("analysis.data.file"));
+        if (!analysisData.waitForContainer()) throw new IllegalStateException("The analysis data file could not be loaded");
+        return analysisData;
+    }
+
+    //The result of the over representation analysis of all the human identifiers
+    static AnalysisStoredResult getFullGenomeResult(AnalysisData analysisData) {
+        Set<AnalysisIdentifier> submission = new HashSet<>();
+        EntitiesContainer entities = analysisData.getPhysicalEntityContainer();
+        for (EntityNode node : entities.getSpeciesNodes(SpeciesNodeFactory.getHumanNode())) {
+            if (node.getIdentifier() != null) submission.add(node.getIdentifier().getValue());
+        }
+        HierarchiesData data = new EnrichmentAnalysis(analysisData).overRepresentation(submission, null, false);
+        UserData userData = new UserData(Collections.singletonList(""), submission, "benchmark");
+        AnalysisStoredResult result = new AnalysisStoredResult(userData, data);
+        result.setHitPathways(data.getUniqueHitPathways(null));
+        result.setSummary(new AnalysisSummary("benchmark", false, false, userData.getSampleName(), AnalysisType.OVERREPRESENTATION, false, "benchmark", true));
+        return result;
+    }
+
+    @Benchmark
+    public byte[] save() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        KryoPool.write(out, result, legacy);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public Object load() {
+        return KryoPool.read(new ByteArrayInputStream(serialised), legacy);
+    }
+
+    @Benchmark
+    public AnalysisStoredResult copy() {
+        return KryoPool.copy(result);
+    }
+
+    @Benchmark
+    public byte[] saveNewKryo() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Output output = new Output(out);
+        KryoPool.newInstance(legacy).writeClassAndObject(output, result);
+        output.flush();
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public Object loadNewKryo() {
+        return KryoPool.newInstance(legacy).readClassAndObject(new Input(new ByteArrayInputStream(serialised)));
+    }
+
+    @Benchmark
+    public AnalysisStoredResult copyNewKryo() {
+        //Copying always uses the legacy configuration (see KryoPool.copy)
+        return KryoPool.newInstance(true).copy(result);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(KryoPoolBenchmark.class.getSimpleName()).build()).run();
+    }
+}
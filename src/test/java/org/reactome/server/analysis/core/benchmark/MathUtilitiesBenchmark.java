@@ -0,0 +1,81 @@
+package org.reactome.server.analysis.core.benchmark;
+
+import cern.jet.random.Binomial;
+import cern.jet.random.engine.DRand;
+import cern.jet.random.engine.RandomEngine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reactome.server.analysis.core.util.MathUtilities;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the binomial p-values calculated by MathUtilities against the previous implementation with Colt (a
+ * Binomial distribution created per call with a shared random engine and 1 - cdf) for the same set of
+ * (ratio, sampleSize, success) triples. With a few distinct triples MathUtilities serves them from its cache,
+ * with many of them (more than its cache slots) most of them are calculated
+ * <p>
+ * Run through its main method with the test classpath
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MathUtilitiesBenchmark {
+
+    @Param({"100", "100000"})
+    private int triples;
+
+    private final RandomEngine randomEngine = new DRand();
+
+    private double[] ratios;
+    private int[] sampleSizes;
+    private int[] successes;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        ratios = new double[triples];
+        sampleSizes = new int[triples];
+        successes = new int[triples];
+        for (int i = 0; i < triples; i++) {
+            //Pathway sizes over the genome and submissions from a handful of identifiers to a full genome
+            ratios[i] = (1 + random.nextInt(2000)) / 11000d;
+            sampleSizes[i] = 1 + random.nextInt(random.nextBoolean() ? 100 : 20000);
+            successes[i] = random.nextInt(Math.min(sampleSizes[i], 500) + 1);
+        }
+    }
+
+    @Benchmark
+    public void mathUtilities(Blackhole blackhole) {
+        for (int i = 0; i < triples; i++) {
+            blackhole.consume(MathUtilities.calculatePValue(ratios[i], sampleSizes[i], successes[i]));
+        }
+    }
+
+    @Benchmark
+    public void colt(Blackhole blackhole) {
+        for (int i = 0; i < triples; i++) {
+            blackhole.consume(coltPValue(ratios[i], sampleSizes[i], successes[i]));
+        }
+    }
+
+    private double coltPValue(double ratio, int sampleSize, int success) {
+        if (ratio == 1.d) return 0d;
+        Binomial binomial = new Binomial(sampleSize, ratio, randomEngine);
+        if (success == 0) success = 1;
+        return 1.0d - binomial.cdf(success - 1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MathUtilitiesBenchmark.class.getSimpleName()).build()).run();
+    }
+}
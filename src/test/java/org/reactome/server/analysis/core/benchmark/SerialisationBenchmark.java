@@ -0,0 +1,74 @@
+package org.reactome.server.analysis.core.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reactome.server.analysis.core.data.AnalysisData;
+import org.reactome.server.analysis.core.model.DataContainer;
+import org.reactome.server.analysis.core.model.HierarchiesData;
+import org.reactome.server.analysis.core.util.KryoPool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the compact Kryo configuration against the legacy one (every class serialised field by field, as the
+ * files were written before the compact serialisation) for the data container and for the result of a full
+ * genome submission (all the human identifiers). The time to write and read them is measured by the benchmarks
+ * and the size of the serialised bytes is printed when each trial is set up
+ * <p>
+ * It needs the analysis data file, passed with -Danalysis.data.file=/path/to/analysis.bin
+ * Run through its main method with the test classpath
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class SerialisationBenchmark {
+
+    @Param({"container", "result"})
+    private String content;
+
+    @Param({"false", "true"})
+    private boolean legacy;
+
+    private Object object;
+    private byte[] serialised;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        AnalysisData analysisData = KryoPoolBenchmark.getAnalysisData();
+        if (content.equals("container")) {
+            //The shared hierarchies (overlay is the default) of the loaded data container
+            HierarchiesData data = analysisData.getHierarchiesData();
+            object = new DataContainer(analysisData.getDatabaseInfo(), data.getPathwayHierarchies(), data.getPathwayLocation(),
+                    analysisData.getPhysicalEntityContainer(), analysisData.getEntitiesMap(), analysisData.getInteractorsMap());
+        } else {
+            object = KryoPoolBenchmark.getFullGenomeResult(analysisData);
+        }
+        serialised = write();
+        System.out.printf("%n%s serialised with the %s configuration: %,d bytes%n", content, legacy ? "legacy" : "compact", serialised.length);
+    }
+
+    @Benchmark
+    public byte[] write() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        KryoPool.write(out, object, legacy);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public Object read() {
+        return KryoPool.read(new ByteArrayInputStream(serialised), legacy);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SerialisationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,69 @@
+package org.reactome.server.analysis.core.model;
+
+import junit.framework.TestCase;
+import org.reactome.server.analysis.core.model.resource.Resource;
+import org.reactome.server.analysis.core.model.resource.ResourceFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public class IdentifiersMapTest extends TestCase {
+
+    //The regular expression previously used to recognise the UniProt accessions
+    private static final Pattern UNIPROT = Pattern.compile("[OPQ][0-9][A-Z0-9]{3}[0-9]|[A-NR-Z][0-9]([A-Z][A-Z0-9]{2}[0-9]){1,2}");
+
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ-_";
+
+    public void testAccessionRecognizerAgreesWithTheRegex() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1_000_000; i++) {
+            String candidate = randomCandidate(random);
+            assertEquals(candidate, UNIPROT.matcher(candidate).matches(), IdentifiersMap.isUniProtAccession(candidate));
+        }
+        for (String accession : new String[]{"P12345", "Q9H0H5", "O00141", "A0A024RBG1", "A2BC19", "A0A022YWF9"}) {
+            assertTrue(accession, IdentifiersMap.isUniProtAccession(accession));
+        }
+        for (String other : new String[]{"", "P1234", "P123456", "12345P", "A0A024RBG", "ENSG00000139618", "CHEBI:15377"}) {
+            assertFalse(other, IdentifiersMap.isUniProtAccession(other));
+        }
+    }
+
+    public void testIsoformsExpansion() {
+        Resource uniprot = ResourceFactory.getResource("UniProt");
+        IdentifiersMap<String> map = new IdentifiersMap<>();
+        map.add("P12345", uniprot, "canonical");
+        map.add("P12345-2", uniprot, "isoform 2");
+        map.add("P12345-3", uniprot, "isoform 3");
+        map.add("P123456-2", uniprot, "not an accession");
+        map.add("Q99999", uniprot, "other");
+
+        assertEquals(setOf("P12345-2", "P12345-3"), map.getIsoforms().getElements("P12345"));
+        assertNull(map.getIsoforms().getElements("Q99999"));
+
+        Set<String> found = map.get(new AnalysisIdentifier("p12345")).values();
+        assertEquals(setOf("canonical", "isoform 2", "isoform 3"), found);
+        //An isoform is not expanded to the rest of isoforms
+        assertEquals(setOf("isoform 2"), map.get(new AnalysisIdentifier("P12345-2")).values());
+    }
+
+    private static Set<String> setOf(String... values) {
+        return Arrays.stream(values).collect(Collectors.toSet());
+    }
+
+    //Biased to produce strings with the shape of an accession so both branches of the regex are exercised
+    private static String randomCandidate(Random random) {
+        int length = random.nextInt(4) == 0 ? random.nextInt(12) : (random.nextBoolean() ? 6 : 10);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            boolean digit = (i == 1 || i == 5 || i == 9) && random.nextInt(4) != 0;
+            sb.append(digit ? (char) ('0' + random.nextInt(10)) : ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,215 @@
+package org.reactome.server.analysis.core.model;
+
+import junit.framework.TestCase;
+import org.reactome.server.analysis.core.model.identifier.MainIdentifier;
+import org.reactome.server.analysis.core.model.identifier.OtherIdentifier;
+import org.reactome.server.analysis.core.model.resource.MainResource;
+import org.reactome.server.analysis.core.model.resource.ResourceFactory;
+import org.reactome.server.analysis.core.result.AnalysisStoredResult;
+import org.reactome.server.analysis.core.result.PathwayNodeSummary;
+import org.reactome.server.analysis.core.result.model.AnalysisSummary;
+import org.reactome.server.analysis.core.result.utils.ResultDataUtils;
+import org.reactome.server.analysis.core.util.KryoPool;
+import org.reactome.server.analysis.core.util.MapSet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Writes and reads the data container and the analysis results with both KryoPool configurations (the compact
+ * one and the legacy one used for the files written before it) and checks the content and the shared references
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public class SerialisationTest extends TestCase {
+
+    private static final MainResource UNIPROT = ResourceFactory.getMainResource("UniProt");
+    private static final SpeciesNode HUMAN = SpeciesNodeFactory.getHumanNode();
+    private static final SpeciesNode MOUSE = SpeciesNodeFactory.getSpeciesNode(48892L, "10090", "Mus musculus");
+
+    public void testDataContainerCompact() {
+        checkDataContainer(roundTrip(createDataContainer(), false));
+    }
+
+    public void testDataContainerLegacy() {
+        checkDataContainer(roundTrip(createDataContainer(), true));
+    }
+
+    public void testAnalysisStoredResultCompact() {
+        AnalysisStoredResult expected = createResult(createDataContainer());
+        checkResult(expected, roundTrip(expected, false));
+    }
+
+    public void testAnalysisStoredResultLegacy() {
+        AnalysisStoredResult expected = createResult(createDataContainer());
+        checkResult(expected, roundTrip(expected, true));
+    }
+
+    public void testResultFiles() throws IOException {
+        AnalysisStoredResult expected = createResult(createDataContainer());
+        File file = File.createTempFile("result", ".bin");
+        try {
+            ResultDataUtils.kryoSerialisation(expected, file.getPath());
+            checkResult(expected, ResultDataUtils.getAnalysisResult(file.getPath()));
+
+            assertTrue(ResultDataUtils.resultFileSerialisation(expected, file.getPath(), false));
+            checkResult(expected, ResultDataUtils.getAnalysisResult(file.getPath()));
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T object, boolean legacy) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        KryoPool.write(out, object, legacy);
+        return (T) KryoPool.read(new ByteArrayInputStream(out.toByteArray()), legacy);
+    }
+
+    //A human top level pathway (R-HSA-1) with a lower level pathway (R-HSA-2) containing two proteins, one of
+    //them inferred to mouse and interacting with a third protein
+    private static DataContainer createDataContainer() {
+        PathwayHierarchy hierarchy = new PathwayHierarchy(HUMAN);
+        PathwayRoot root = new PathwayRoot(hierarchy, "R-HSA-1", 1L, "Top level pathway", true, false, 0, "TopLevelPathway");
+        hierarchy.getChildren().add(root);
+        PathwayNode child = new PathwayNode(root, "R-HSA-2", 2L, "Lower level pathway", false, false, 0, "Pathway");
+        root.getChildren().add(child);
+        child.setLowerLevelPathway(true);
+
+        Map<SpeciesNode, PathwayHierarchy> hierarchies = new HashMap<>();
+        hierarchies.put(HUMAN, hierarchy);
+        MapSet<Long, PathwayNode> location = new MapSet<>();
+        location.add(1L, root);
+        location.add(2L, child);
+
+        MapSet<Long, AnalysisReaction> reactions = new MapSet<>();
+        reactions.add(2L, new AnalysisReaction(10L, "R-HSA-10"));
+
+        EntitiesContainer entities = new EntitiesContainer();
+        IdentifiersMap<EntityNode> entitiesMap = new IdentifiersMap<>();
+        for (String accession : new String[]{"P12345", "Q67890"}) {
+            EntityNode node = entities.add(new EntityNode(HUMAN, UNIPROT, accession, new ArrayList<>()));
+            node.addPathwayReactions(reactions);
+            entitiesMap.add(accession, UNIPROT, node);
+            child.process(node.getIdentifier(), node.getReactions(2L));
+        }
+        EntityNode protein = getEntity(entitiesMap, "P12345");
+        EntityNode ortholog = entities.add(new EntityNode(MOUSE, UNIPROT, "Q00001", new ArrayList<>()));
+        protein.addInferredTo(ortholog);
+        ortholog.addInferredFrom(protein);
+        hierarchy.setCountersAndCleanUp();
+
+        IdentifiersMap<InteractorNode> interactorsMap = new IdentifiersMap<>();
+        InteractorNode interactor = new InteractorNode("Q99999");
+        interactor.addInteractsWith(2L, protein.getIdentifier());
+        interactor.addPathwayReactions(reactions);
+        interactorsMap.add("Q99999", UNIPROT, interactor);
+
+        DataContainer container = new DataContainer(new DatabaseInfo("reactome", 90, 1234L), hierarchies, location, entities, entitiesMap, interactorsMap);
+        container.initialize();
+        return container;
+    }
+
+    private static void checkDataContainer(DataContainer container) {
+        container.initialize();
+
+        DatabaseInfo info = container.getDatabaseInfo();
+        assertEquals("reactome", info.getName());
+        assertEquals(Integer.valueOf(90), info.getVersion());
+        assertEquals(Long.valueOf(1234L), info.getChecksum());
+
+        PathwayHierarchy hierarchy = container.pathwayHierarchies.get(HUMAN);
+        assertNotNull(hierarchy);
+        assertEquals(1, hierarchy.getChildren().size());
+        PathwayRoot root = hierarchy.getChildren().iterator().next();
+        assertEquals("R-HSA-1", root.getStId());
+        assertSame(hierarchy, root.getPathwayHierarchy());
+        assertEquals(1, root.getChildren().size());
+        PathwayNode child = root.getChildren().iterator().next();
+        assertEquals("R-HSA-2", child.getStId());
+        assertTrue(child.isLowerLevelPathway());
+        assertSame(root, child.getParent());
+        //The location map and the hierarchies share the nodes
+        assertSame(root, container.pathwayLocation.getElements(1L).iterator().next());
+        assertSame(child, container.pathwayLocation.getElements(2L).iterator().next());
+        assertEquals(Integer.valueOf(2), child.getPathwayNodeData().getEntitiesCount());
+        assertEquals(Integer.valueOf(2), hierarchy.getData().getEntitiesCount());
+
+        //The entities map and the entities container share the nodes
+        EntityNode protein = getEntity(container.getEntitiesMap(), "P12345");
+        Set<EntityNode> nodes = container.getEntitiesContainer().getNodes(protein.getIdentifier());
+        assertEquals(1, nodes.size());
+        assertSame(protein, nodes.iterator().next());
+        assertEquals(Collections.singleton(2L), protein.getPathwayIds());
+        assertEquals("R-HSA-10", protein.getReactions(2L).iterator().next().getStId());
+
+        EntityNode ortholog = protein.getProjection(MOUSE);
+        assertNotNull(ortholog);
+        assertEquals("Q00001", ortholog.getIdentifier().getValue().getId());
+        assertSame(protein, ortholog.getInferredFrom().get(HUMAN));
+        assertNull(getEntity(container.getEntitiesMap(), "Q67890").getProjection(MOUSE));
+
+        InteractorNode interactor = container.getInteractorsMap().get("Q99999").values().iterator().next();
+        assertEquals("Q99999", interactor.getAccession());
+        assertEquals(protein.getIdentifier(), interactor.getInteractsWith(2L).iterator().next());
+    }
+
+    private static AnalysisStoredResult createResult(DataContainer container) {
+        HierarchiesData data = container.getHierarchiesData();
+        PathwayNode child = data.getPathwayLocation().getElements(2L).iterator().next();
+        AnalysisIdentifier submitted = new AnalysisIdentifier("P12345", new double[]{1.5, 2.0});
+        EntityNode protein = getEntity(container.getEntitiesMap(), "P12345");
+        MainIdentifier mainIdentifier = new MainIdentifier(UNIPROT, new AnalysisIdentifier("P12345", submitted.getExpValues()));
+        data.process(child, new OtherIdentifier(UNIPROT, submitted), mainIdentifier, protein.getReactions(2L));
+        AnalysisIdentifier notFound = new AnalysisIdentifier("NOTFOUND", new double[]{3.0, 4.0});
+        data.addNotFound(notFound);
+        data.setResultStatistics(Collections.singletonMap(UNIPROT, 1), data.getNotFound().size(), false);
+
+        Set<AnalysisIdentifier> identifiers = new LinkedHashSet<>(Arrays.asList(submitted, notFound));
+        UserData userData = new UserData(Arrays.asList("", "sample1", "sample2"), identifiers, "md5");
+        AnalysisStoredResult result = new AnalysisStoredResult(userData, data);
+        result.setHitPathways(data.getUniqueHitPathways(null));
+        result.setSummary(new AnalysisSummary("token", false, false, userData.getSampleName(), AnalysisType.EXPRESSION, false, "server", true));
+        return result;
+    }
+
+    private static void checkResult(AnalysisStoredResult expected, AnalysisStoredResult actual) {
+        assertEquals(expected.getSummary().getToken(), actual.getSummary().getToken());
+        assertEquals(expected.getSummary().getType(), actual.getSummary().getType());
+        assertEquals(expected.getExpressionSummary().getColumnNames(), actual.getExpressionSummary().getColumnNames());
+
+        List<PathwayNodeSummary> pathways = actual.getPathways();
+        assertEquals(expected.getPathways().size(), pathways.size());
+        for (PathwayNodeSummary pathway : expected.getPathways()) {
+            PathwayNodeSummary aux = actual.getPathway(pathway.getStId());
+            assertNotNull(pathway.getStId(), aux);
+            assertEquals(pathway.getPathwayId(), aux.getPathwayId());
+            assertEquals(pathway.getName(), aux.getName());
+            assertEquals(pathway.isLlp(), aux.isLlp());
+            assertEquals(pathway.getData().getEntitiesFound(), aux.getData().getEntitiesFound());
+            assertEquals(pathway.getData().getEntitiesCount(), aux.getData().getEntitiesCount());
+            assertEquals(pathway.getData().getEntitiesPValue(), aux.getData().getEntitiesPValue());
+            assertEquals(pathway.getData().getEntitiesFDR(), aux.getData().getEntitiesFDR());
+            assertTrue(Arrays.equals(pathway.getData().getExpValuesAvg(), aux.getData().getExpValuesAvg()));
+            assertEquals(describe(pathway.getData().getFoundEntities()), describe(aux.getData().getFoundEntities()));
+        }
+        assertEquals(describe(expected.getNotFound()), describe(actual.getNotFound()));
+    }
+
+    private static EntityNode getEntity(IdentifiersMap<EntityNode> map, String identifier) {
+        return map.get(identifier).values().iterator().next();
+    }
+
+    //The identifiers with their expression values in a comparable form
+    private static Set<String> describe(Set<AnalysisIdentifier> identifiers) {
+        Set<String> rtn = new TreeSet<>();
+        for (AnalysisIdentifier identifier : identifiers) {
+            rtn.add(identifier.getId() + "=" + identifier.getExp());
+        }
+        return rtn;
+    }
+}
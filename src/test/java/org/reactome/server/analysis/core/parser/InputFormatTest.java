@@ -0,0 +1,212 @@
+package org.reactome.server.analysis.core.parser;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.reactome.server.analysis.core.model.AnalysisIdentifier;
+import org.reactome.server.analysis.core.model.UserData;
+import org.reactome.server.analysis.core.parser.exception.ParserException;
+import org.reactome.server.analysis.core.util.InputUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Checks that the streaming parser is equivalent to the previous one (ReferenceInputFormat): same headers,
+ * identifiers (with their values), warnings and errors for both parseData(String) and parseData(Reader)
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public class InputFormatTest extends TestCase {
+
+    private static final String[] CORNER_CASES = {
+            "",
+            "   \n\t\n",
+            "P12345",
+            "P12345\n",
+            "\n\nP12345\n\n",
+            "P12345 Q9H0H5,O00141;A0A024RBG1\tP12345",
+            "#P12345 Q9H0H5",
+            "//P12345",
+            "P12345\nQ9H0H5",
+            "P12345\r\nQ9H0H5\r\n",
+            "P12345\r\nQ9H0H5\r\n\r\n",
+            "P12345\rQ9H0H5",
+            "P12345\n\nQ9H0H5\n\n\n",
+            "\n\n#id\tsample1\tsample2\nP12345\t1.5\t2\nQ9H0H5\t-0.0\t1e22\n",
+            "#id\tsample1\r\nP12345\t1.5\r\n\r\nQ9H0H5\t3\r\n",
+            "//id,sample1;sample2\nP12345 1 2\nQ9H0H5,3;4\n",
+            "# id \t sample 1 \t \"quoted\"\\\nP12345\t1\t2\nQ9H0H5\t3\t4",
+            "#id\tsample1\nP12345\t1.5\t2\nQ9H0H5\t3\n",
+            "#id\tsample1\nP12345\tabc\nQ9H0H5\t3\n",
+            "#id\tsample1\nP12345\t1\nP12345\t2\n",
+            "id sample1 sample2\nP12345 1 2\nQ9H0H5 3 4\n",
+            "id 1 sample2\nP12345 1 2\n",
+            "P12345 1 2\nQ9H0H5 3 4\n",
+            "P12345 1 2\nQ9H0H5 3\n",
+            "P12345 1.5\nQ9H0H5 -0.0\nO00141 1e22\nA0A024RBG1 123456789012345\nA2BC19 1e-5\n",
+            "P12345 NaN\nQ9H0H5 Infinity\nO00141 -Infinity\nA0A024RBG1 0x1p3\nA2BC19 1d\nA0A022YWF9 1f\n",
+            "P12345 .5\nQ9H0H5 5.\nO00141 +1\nA0A024RBG1 1E5\nA2BC19 00012.500\nA0A022YWF9 -\n",
+            "P12345 0.1\nQ9H0H5 0.30000000000000004\nO00141 2.2250738585072014E-308\nA0A024RBG1 4.9e-324\nA2BC19 1.7976931348623157e308\n",
+            "P12345 12345678901234567890\nQ9H0H5 1.00000000000000000001\nO00141 9007199254740993\nA0A024RBG1 1e400\nA2BC19 1e-400\n",
+            "  P12345 1  \n\tQ9H0H5\t2\t\n",
+            "#\nP12345\n",
+            "#id\n\n\n",
+            "\uD83D\uDE00 1\nP12345 2\n"
+    };
+
+    public void testCornerCases() throws IOException {
+        for (String input : CORNER_CASES) {
+            assertEquivalent(input);
+        }
+    }
+
+    public void testRandomInputs() throws IOException {
+        Random random = new Random(42);
+        for (int i = 0; i < 5_000; i++) {
+            assertEquivalent(randomInput(random));
+        }
+    }
+
+    public void testMd5MatchesTheStringVersion() throws IOException, ParserException {
+        StringBuilder sb = new StringBuilder("#id\tsample1\n");
+        for (int i = 0; i < 5000; i++) {
+            //The emoji (a surrogate pair) ends up split between two reads of the underlying reader
+            sb.append("P").append(10000 + i).append(i % 3 == 0 ? "\uD83D\uDE00" : "").append("\t").append(i).append("\n");
+        }
+        String input = sb.toString();
+        UserData expected = InputUtils.getUserData(input);
+        UserData actual = InputUtils.getUserData(new ByteArrayInputStream(input.getBytes()));
+        assertEquals(expected.getInputMD5(), actual.getInputMD5());
+        assertEquals(expected.getIdentifiers().size(), actual.getIdentifiers().size());
+    }
+
+    public void testMd5OfInputNotValidInTheDefaultCharset() throws IOException, ParserException {
+        Charset charset = Charset.defaultCharset();
+        byte[][] inputs = {
+                {'P', '1', '2', '3', '4', '5', '\n', (byte) 0xC3, '(', '\n', 'Q', '1'},
+                {'P', '1', (byte) 0xFF, (byte) 0xFE, '\n', 'Q', '9', '\n'},
+                {'P', '1', '2', '\n', (byte) 0xF0, (byte) 0x9F, (byte) 0x98}
+        };
+        for (byte[] input : inputs) {
+            //This is what the previous version of getUserData(InputStream) did
+            String decoded = IOUtils.toString(new ByteArrayInputStream(input), charset);
+            UserData expected = InputUtils.getUserData(decoded);
+            UserData actual = InputUtils.getUserData(new ByteArrayInputStream(input));
+            assertEquals(expected.getInputMD5(), actual.getInputMD5());
+        }
+    }
+
+    private static void assertEquivalent(String input) throws IOException {
+        Result expected = Result.reference(input);
+        assertEquals(describe(input), expected, Result.parse(input, null));
+        assertEquals(describe(input), expected, Result.parse(input, new StringReader(input)));
+        for (int chunk : new int[]{1, 2, 3, 7}) {
+            assertEquals(describe(input), expected, Result.parse(input, new ChunkedReader(input, chunk)));
+        }
+    }
+
+    private static String randomInput(Random random) {
+        String[] tokens = {"P12345", "Q9H0H5", "O00141", "id", "sample", "1", "-2.5", "1e3", "NaN", "abc", "0x10", ".5", "1.", ""};
+        String[] separators = {" ", "\t", ",", ";", "  ", " ,"};
+        String[] lineEnds = {"\n", "\r\n", "\n\n", " \n", "\r"};
+        StringBuilder sb = new StringBuilder();
+        if (random.nextInt(3) == 0) sb.append(random.nextBoolean() ? "#" : "//");
+        int lines = random.nextInt(6);
+        int columns = 1 + random.nextInt(3);
+        for (int i = 0; i < lines; i++) {
+            int cols = random.nextInt(8) == 0 ? 1 + random.nextInt(4) : columns;
+            for (int j = 0; j < cols; j++) {
+                if (j > 0) sb.append(separators[random.nextInt(separators.length)]);
+                sb.append(tokens[random.nextInt(tokens.length)]);
+            }
+            if (i < lines - 1 || random.nextBoolean()) sb.append(lineEnds[random.nextInt(lineEnds.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static String describe(String input) {
+        return "Input: \"" + input.replace("\r", "\\r").replace("\n", "\\n").replace("\t", "\\t") + "\"";
+    }
+
+    //Returns at most "chunk" chars per read so lines (and \r\n) are split between reads
+    private static class ChunkedReader extends StringReader {
+
+        private final int chunk;
+
+        ChunkedReader(String s, int chunk) {
+            super(s);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return super.read(cbuf, off, Math.min(len, chunk));
+        }
+    }
+
+    private static class Result {
+        private final List<String> headers;
+        private final List<String> identifiers = new ArrayList<>();
+        private final List<String> warnings;
+        private final List<String> errors;
+
+        private Result(List<String> headers, Set<AnalysisIdentifier> identifiers, List<String> warnings, List<String> errors) {
+            this.headers = new ArrayList<>(headers);
+            for (AnalysisIdentifier identifier : identifiers) {
+                //Double.toString distinguishes -0.0 and keeps every bit of the parsed value
+                this.identifiers.add(identifier.getId() + "=" + identifier.getExp());
+            }
+            this.warnings = new ArrayList<>(warnings);
+            this.errors = new ArrayList<>(errors);
+        }
+
+        static Result reference(String input) {
+            ReferenceInputFormat parser = new ReferenceInputFormat();
+            List<String> errors = Collections.emptyList();
+            try {
+                parser.parseData(input);
+            } catch (ParserException e) {
+                errors = e.getErrorMessages();
+            }
+            return new Result(parser.getHeaderColumnNames(), parser.getAnalysisIdentifierSet(), parser.getWarningResponses(), errors);
+        }
+
+        static Result parse(String input, Reader reader) throws IOException {
+            InputFormat parser = new InputFormat();
+            List<String> errors = Collections.emptyList();
+            try {
+                if (reader == null) {
+                    parser.parseData(input);
+                } else {
+                    parser.parseData(reader);
+                }
+            } catch (ParserException e) {
+                errors = e.getErrorMessages();
+            }
+            return new Result(parser.getHeaderColumnNames(), parser.getAnalysisIdentifierSet(), parser.getWarningResponses(), errors);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Result result = (Result) o;
+            return headers.equals(result.headers) && identifiers.equals(result.identifiers) &&
+                    warnings.equals(result.warnings) && errors.equals(result.errors);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(headers, identifiers, warnings, errors);
+        }
+
+        @Override
+        public String toString() {
+            return "headers=" + headers + ", identifiers=" + identifiers + ", warnings=" + warnings + ", errors=" + errors;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.reactome.server.analysis.core.result.utils;
+
+import junit.framework.TestCase;
+import org.reactome.server.analysis.core.model.PathwayNodeData;
+import org.reactome.server.analysis.core.model.SpeciesNodeFactory;
+import org.reactome.server.analysis.core.result.AnalysisStoredResult;
+import org.reactome.server.analysis.core.result.PathwayNodeSummary;
+import org.reactome.server.analysis.core.result.model.ResourceSummary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the eviction of the cached results (by weight, by idle time and in least recently used order) and that
+ * the cached results are never modified through the copies handed out by get
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public class AnalysisResultCacheTest extends TestCase {
+
+    private static final int PATHWAYS = 2;
+
+    private long resultWeight;
+
+    @Override
+    protected void setUp() {
+        AnalysisResultCache.clear();
+        resultWeight = createResult().getEstimatedSize();
+        AnalysisResultCache.setMaxWeight(3 * resultWeight);
+        AnalysisResultCache.setMaxIdle(TimeUnit.MINUTES.toMillis(30));
+    }
+
+    @Override
+    protected void tearDown() {
+        //Back to the defaults
+        AnalysisResultCache.clear();
+        AnalysisResultCache.setMaxWeight(512L * 1024 * 1024);
+        AnalysisResultCache.setMaxIdle(TimeUnit.MINUTES.toMillis(30));
+    }
+
+    public void testWeightEviction() {
+        assertTrue(resultWeight > 0);
+        for (String file : new String[]{"a", "b", "c"}) AnalysisResultCache.put(file, createResult());
+        assertEquals(3, AnalysisResultCache.size());
+        assertEquals(3 * resultWeight, AnalysisResultCache.getWeight());
+
+        long evictions = AnalysisResultCache.getEvictions();
+        AnalysisResultCache.put("d", createResult());
+        assertEquals(3, AnalysisResultCache.size());
+        assertEquals(3 * resultWeight, AnalysisResultCache.getWeight());
+        assertEquals(evictions + 1, AnalysisResultCache.getEvictions());
+        assertNull(AnalysisResultCache.get("a"));
+
+        //Replacing a result does not count its weight twice
+        AnalysisResultCache.put("d", createResult());
+        assertEquals(3 * resultWeight, AnalysisResultCache.getWeight());
+
+        //A result heavier than the maximum is not cached (and does not evict the others)
+        AnalysisResultCache.put("e", createResult(4 * PATHWAYS));
+        assertNull(AnalysisResultCache.get("e"));
+        assertEquals(3, AnalysisResultCache.size());
+
+        AnalysisResultCache.setMaxWeight(resultWeight);
+        assertEquals(1, AnalysisResultCache.size());
+        assertEquals(resultWeight, AnalysisResultCache.getWeight());
+        assertNotNull(AnalysisResultCache.get("d"));
+    }
+
+    public void testIdleEviction() throws InterruptedException {
+        AnalysisResultCache.setMaxIdle(200);
+        AnalysisResultCache.put("a", createResult());
+        AnalysisResultCache.put("b", createResult());
+        Thread.sleep(120);
+        assertNotNull(AnalysisResultCache.get("a")); //Accessing a result keeps it in the cache
+        Thread.sleep(120);
+
+        long evictions = AnalysisResultCache.getEvictions();
+        assertNull(AnalysisResultCache.get("b"));
+        assertNotNull(AnalysisResultCache.get("a"));
+        assertEquals(1, AnalysisResultCache.size());
+        assertEquals(resultWeight, AnalysisResultCache.getWeight());
+        assertEquals(evictions + 1, AnalysisResultCache.getEvictions());
+    }
+
+    public void testLeastRecentlyUsedOrder() {
+        for (String file : new String[]{"a", "b", "c"}) AnalysisResultCache.put(file, createResult());
+        assertNotNull(AnalysisResultCache.get("a"));
+
+        AnalysisResultCache.put("d", createResult());
+        assertNull(AnalysisResultCache.get("b"));
+
+        AnalysisResultCache.put("e", createResult());
+        assertNull(AnalysisResultCache.get("c"));
+
+        for (String file : new String[]{"a", "d", "e"}) assertNotNull(file, AnalysisResultCache.get(file));
+    }
+
+    public void testGetReturnsIsolatedCopies() {
+        AnalysisStoredResult cached = createResult();
+        AnalysisResultCache.put("a", cached);
+
+        AnalysisStoredResult copy = AnalysisResultCache.get("a");
+        assertNotNull(copy);
+        assertNotSame(cached, copy);
+        //None of the pathways has data for a main resource that is not auxiliary, so all of them are filtered out
+        copy.filterPathwaysImportableOnly(true);
+        assertTrue(copy.getPathways().isEmpty());
+        assertEquals(Integer.valueOf(0), copy.getResourceSummary().get(0).getFiltered());
+
+        AnalysisStoredResult other = AnalysisResultCache.get("a");
+        assertNotSame(copy, other);
+        assertEquals(PATHWAYS, other.getPathways().size());
+        assertEquals(Integer.valueOf(PATHWAYS), other.getResourceSummary().get(0).getFiltered());
+        assertEquals(PATHWAYS, cached.getPathways().size());
+        assertEquals(Integer.valueOf(PATHWAYS), cached.getResourceSummary().get(0).getFiltered());
+    }
+
+    private static AnalysisStoredResult createResult() {
+        return createResult(PATHWAYS);
+    }
+
+    //A result with the given number of pathways (without found elements) so its estimated size is known
+    private static AnalysisStoredResult createResult(int n) {
+        List<PathwayNodeSummary> pathways = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            pathways.add(new PathwayNodeSummary("R-HSA-" + i, (long) i, "Pathway " + i, SpeciesNodeFactory.getHumanNode(), true, false, new PathwayNodeData()));
+        }
+        List<ResourceSummary> resources = new ArrayList<>();
+        resources.add(new ResourceSummary("TOTAL", n));
+        return new AnalysisStoredResult(null, pathways, Collections::emptySet, null, resources, new ArrayList<>(), new ArrayList<>());
+    }
+}
@@ -0,0 +1,89 @@
+package org.reactome.server.analysis.core.result.utils;
+
+import junit.framework.TestCase;
+import org.reactome.server.analysis.core.model.UserData;
+import org.reactome.server.analysis.core.parser.exception.ParserException;
+import org.reactome.server.analysis.core.util.InputUtils;
+
+import java.io.IOException;
+
+/**
+ * Checks that the results are associated to the parsed content of the user data (see TokenUtils.saveResult), so
+ * inputs that only differ in the format get the token of the stored result, but only for the same data version
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public class TokenizerTest extends TestCase {
+
+    private static final String[] SAME_IDENTIFIERS = {
+            "P12345\nQ9H0H5\nO00141\n",
+            "\n\nO00141\r\n  P12345\n\nQ9H0H5 ",
+            "Q9H0H5,P12345;O00141",
+            "Q9H0H5\tP12345 O00141\n"
+    };
+
+    private static final String[] SAME_EXPRESSION = {
+            "#id\tsample\nP12345\t1.5\nQ9H0H5\t2\n",
+            "#id,sample\r\nQ9H0H5 2.0\r\n\r\nP12345 1.50\r\n",
+            "//id;sample\nQ9H0H5;2e0\nP12345,1.5"
+    };
+
+    @Override
+    protected void tearDown() {
+        Tokenizer.setDatabaseVersion(null);
+    }
+
+    public void testSameIdentifiersGetTheSameToken() throws IOException, ParserException {
+        assertSameToken(SAME_IDENTIFIERS);
+    }
+
+    public void testSameExpressionValuesGetTheSameToken() throws IOException, ParserException {
+        assertSameToken(SAME_EXPRESSION);
+    }
+
+    public void testDifferentContentOrOptionsDoNotGetTheToken() throws IOException, ParserException {
+        Tokenizer.setDatabaseVersion(90);
+        String token = store(InputUtils.getUserData("#id\tsample\nA0A024RBG1\t1.5\nA2BC19\t2\n"), false, false);
+
+        assertNull(Tokenizer.getContentToken(InputUtils.getUserData("#id\tsample\nA0A024RBG1\t1.5\nA2BC19\t2.5\n"), false, false));
+        assertNull(Tokenizer.getContentToken(InputUtils.getUserData("#id\tother\nA0A024RBG1\t1.5\nA2BC19\t2\n"), false, false));
+        assertNull(Tokenizer.getContentToken(InputUtils.getUserData("#id\tsample\nA0A024RBG1\t1.5\n"), false, false));
+        UserData same = InputUtils.getUserData("#id;sample\nA2BC19 2\nA0A024RBG1 1.5\n");
+        assertNull(Tokenizer.getContentToken(same, true, false));
+        assertNull(Tokenizer.getContentToken(same, false, true));
+        assertEquals(token, Tokenizer.getContentToken(same, false, false));
+    }
+
+    public void testDifferentDataVersionDoesNotGetTheToken() throws IOException, ParserException {
+        Tokenizer.setDatabaseVersion(90);
+        String token = store(InputUtils.getUserData(SAME_IDENTIFIERS[0]), true, false);
+        UserData same = InputUtils.getUserData(SAME_IDENTIFIERS[1]);
+        assertEquals(token, Tokenizer.getContentToken(same, true, false));
+
+        Tokenizer.setDatabaseVersion(91);
+        assertNull(Tokenizer.getContentToken(same, true, false));
+
+        Tokenizer.setDatabaseVersion(90);
+        assertEquals(token, Tokenizer.getContentToken(same, true, false));
+    }
+
+    private static void assertSameToken(String[] inputs) throws IOException, ParserException {
+        Tokenizer.setDatabaseVersion(90);
+        UserData first = InputUtils.getUserData(inputs[0]);
+        assertNull(Tokenizer.getContentToken(first, false, true));
+        String token = store(first, false, true);
+        for (String input : inputs) {
+            UserData userData = InputUtils.getUserData(input);
+            //The raw inputs differ, so only the content key can match them
+            if (!input.equals(inputs[0])) assertFalse(input, first.getInputMD5().equals(userData.getInputMD5()));
+            assertEquals(input, token, Tokenizer.getContentToken(userData, false, true));
+        }
+    }
+
+    //Same as TokenUtils.saveResult(result, userData) without writing the result
+    private static String store(UserData userData, boolean toHuman, boolean includeInteractors) {
+        String token = Tokenizer.getOrCreateToken(userData.getInputMD5(), toHuman, includeInteractors);
+        Tokenizer.setContentToken(userData, toHuman, includeInteractors, token);
+        return token;
+    }
+}
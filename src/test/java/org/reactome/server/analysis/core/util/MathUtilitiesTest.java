@@ -0,0 +1,62 @@
+package org.reactome.server.analysis.core.util;
+
+import cern.jet.random.Binomial;
+import cern.jet.random.engine.DRand;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Compares the p-values calculated by MathUtilities with the ones previously calculated with Colt (1 - cdf)
+ *
+ * @author Antonio Fabregat <fabregat@ebi.ac.uk>
+ */
+public class MathUtilitiesTest extends TestCase {
+
+    private static final int[] SAMPLE_SIZES = {1, 2, 5, 10, 50, 100, 500, 1000, 5000, 20000};
+    private static final double[] RATIOS = {1e-6, 1e-4, 0.001, 0.01, 0.05, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99};
+
+    //Colt calculates 1 - cdf, so its absolute error is around the double precision of 1
+    private static final double ABSOLUTE_ERROR = 1e-12;
+    private static final double RELATIVE_ERROR = 1e-8;
+
+    public void testAgainstColt() {
+        DRand engine = new DRand();
+        for (int n : SAMPLE_SIZES) {
+            for (double p : RATIOS) {
+                Binomial binomial = new Binomial(n, p, engine);
+                for (int k : successes(n)) {
+                    double expected = 1.0d - binomial.cdf(Math.max(k, 1) - 1);
+                    double actual = MathUtilities.calculatePValue(p, n, k);
+                    double tolerance = ABSOLUTE_ERROR + RELATIVE_ERROR * Math.abs(expected);
+                    assertEquals(String.format("n=%d, p=%s, k=%d", n, p, k), expected, actual, tolerance);
+                }
+            }
+        }
+    }
+
+    public void testCachedValuesAreTheSame() {
+        double first = MathUtilities.calculatePValue(0.01, 1000, 15);
+        double second = MathUtilities.calculatePValue(0.01, 1000, 15);
+        assertEquals(first, second, 0d);
+    }
+
+    public void testTinyPValuesAreKept() {
+        //1 - cdf rounds these to 0 but the upper tail is calculated directly
+        double pValue = MathUtilities.calculatePValue(0.001, 1000, 100);
+        assertTrue(pValue > 0d);
+        assertTrue(pValue < 1e-100);
+    }
+
+    public void testLimits() {
+        assertEquals(0d, MathUtilities.calculatePValue(1d, 100, 10), 0d);
+        assertEquals(0d, MathUtilities.calculatePValue(0.5, 10, 11), 0d);
+        //No success is calculated as one success
+        assertEquals(MathUtilities.calculatePValue(0.1, 100, 1), MathUtilities.calculatePValue(0.1, 100, 0), 0d);
+    }
+
+    private static int[] successes(int n) {
+        int[] candidates = {0, 1, 2, 3, n / 100, n / 20, n / 10, n / 4, n / 2, 3 * n / 4, n - 1, n};
+        return Arrays.stream(candidates).filter(k -> k >= 0 && k <= n).distinct().toArray();
+    }
+}